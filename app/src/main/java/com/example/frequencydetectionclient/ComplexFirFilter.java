@@ -1,6 +1,7 @@
 package com.example.frequencydetectionclient;
 
 import com.example.frequencydetectionclient.bean.SamplePacket;
+import com.example.frequencydetectionclient.utils.OverlapSaveFilter;
 import com.orhanobut.logger.Logger;
 
 /**
@@ -43,6 +44,7 @@ public class ComplexFirFilter {
 	private float highCutOffFrequency;
 	private float transitionWidth;
 	private float attenuation;
+	private OverlapSaveFilter fastFilter;	// FFT based implementation of filter() for long filters (null = direct form)
 	private static final String LOGTAG = "ComplexFirFilter";
 
 	/**
@@ -73,6 +75,8 @@ public class ComplexFirFilter {
 		this.highCutOffFrequency = highCutOffFrequency;
 		this.transitionWidth = transitionWidth;
 		this.attenuation = attenuation;
+		if (OverlapSaveFilter.isWorthwhile(tapsReal.length, decimation))
+			this.fastFilter = new OverlapSaveFilter(tapsReal, tapsImag, decimation);
 	}
 
 	/**
@@ -113,6 +117,7 @@ public class ComplexFirFilter {
 	/**
 	 * Filters the samples from the input sample packet and appends filter output to the output
 	 * sample packet. Stops automatically if output sample packet is full.
+	 * Long filters (see OverlapSaveFilter.isWorthwhile()) are computed with FFT based fast convolution.
 	 * @param in		input sample packet
 	 * @param out		output sample packet
 	 * @param offset	offset to use as start index for the input packet
@@ -120,6 +125,9 @@ public class ComplexFirFilter {
 	 * @return number of samples consumed from the input packet
 	 */
 	public int filter(SamplePacket in, SamplePacket out, int offset, int length) {
+		if (fastFilter != null)
+			return fastFilter.filter(in, out, offset, length);
+
 		int index;
 		int indexOut = out.size();
 		int outputCapacity = out.capacity();
@@ -11,10 +11,17 @@ import com.example.frequencydetectionclient.dialog.ScanDialog
 import com.example.frequencydetectionclient.hackrf.HackrfSource
 import com.example.frequencydetectionclient.iq.IQSourceInterface
 import com.example.frequencydetectionclient.iq.RFControlInterface
+import com.example.frequencydetectionclient.iq.RetuneGate
 import com.example.frequencydetectionclient.manager.SpManager
 import com.example.frequencydetectionclient.thread.AnalyzerProcessingLoop
 import com.example.frequencydetectionclient.thread.Demodulator
 import com.example.frequencydetectionclient.thread.Scheduler
+import com.example.frequencydetectionclient.utils.FFT
+import com.example.frequencydetectionclient.utils.PanoramaSpectrum
+import com.example.frequencydetectionclient.utils.PolyphaseChannelizer
+import com.example.frequencydetectionclient.utils.RationalResampler
+import com.example.frequencydetectionclient.utils.SamplePacketPool
+import com.example.frequencydetectionclient.utils.WelchEstimator
 import com.example.frequencydetectionclient.view.AnalyzerSurface
 import com.lxj.xpopup.XPopup
 import com.lxj.xpopup.enums.PopupAnimation
@@ -49,6 +56,7 @@ class MainActivity : AppCompatActivity(), IQSourceInterface.Callback, RFControlI
         const val SP_HACK_RF_AMPLIFIER_KEY = "sp_hack_rf_amplifier_key"
         const val SP_HACK_RF_ANTENNA_POWER_KEY = "sp_hack_rf_antenna_power_key"
         const val SP_HACK_RF_FREQUENCY_OFFSET_KEY = "sp_hack_rf_frequency_offset_key"
+        const val SP_SETTLE_TIME_KEY = "sp_settle_time_key"            // 调谐后丢弃数据包的时间（ms）
 
 
         const val SOURCE_FILE_VALUE = 0
@@ -56,17 +64,29 @@ class MainActivity : AppCompatActivity(), IQSourceInterface.Callback, RFControlI
         const val SOURCE_RTL_SDR_VALUE = 2
 
         const val SP_FFT_SIZE_KEY = "sp_fft_size_key"
+        const val SP_FFT_ENGINE_KEY = "sp_fft_engine_key"
+        const val SP_FFT_WINDOW_KEY = "sp_fft_window_key"
+        const val SP_WELCH_SEGMENTS_KEY = "sp_welch_segments_key"
+        const val SP_WELCH_OVERLAP_KEY = "sp_welch_overlap_key"
+        const val SP_PFB_TAPS_KEY = "sp_pfb_taps_key"
+        const val SP_FAST_FM_KEY = "sp_fast_fm_key"
         const val SP_FRAME_RATE_KEY = "sp_frame_rate_key"
         const val SP_DYNAMIC_FRAME_RATE = "sp_dynamic_rate_key"
+        const val SP_ADAPTIVE_REVISIT_KEY = "sp_adaptive_revisit_key"
 
         // bundle
         const val STATE_SAVE_RUNNING = "save_state_running"
         const val STATE_SAVE_DEMODULATOR_MODE = "save_state_demodulator_mode"
 
         /**
-         * 采集的频段
+         * 采集的频段：START_FREQUENCY-SAMPLE_RATE/2 .. END_FREQUENCY+SAMPLE_RATE/2 的全景频谱（基线），
+         * 分辨率与4096点FFT的bin相同
          */
-        var collectQueue: MutableMap<Long, FloatArray> = mutableMapOf()
+        val panorama = PanoramaSpectrum(
+            START_FREQUENCY - SAMPLE_RATE / 2,
+            END_FREQUENCY + SAMPLE_RATE / 2,
+            SAMPLE_RATE.toDouble() / PANORAMA_BINS_PER_HOP
+        )
 
         /**
          * 扫描实时频段
@@ -76,6 +96,7 @@ class MainActivity : AppCompatActivity(), IQSourceInterface.Callback, RFControlI
         const val START_FREQUENCY = 40 * 1000 * 1000L      // 起始频率 40MHZ
         const val END_FREQUENCY = 3000 * 1000 * 1000L      // 结束频率
         const val SAMPLE_RATE = 20 * 1000 * 1000         // 采样率 20mhz
+        const val PANORAMA_BINS_PER_HOP = 4096            // 全景频谱每个采样带宽的bin数
 
     }
 
@@ -157,7 +178,7 @@ class MainActivity : AppCompatActivity(), IQSourceInterface.Callback, RFControlI
                 it.frequency = START_FREQUENCY           // 设置频率
                 it.sampleRate = SAMPLE_RATE             // 设置采样率
             }
-            if (collectQueue.isNotEmpty()) {
+            if (!panorama.isEmpty) {
                 workStatus = AnalyzerProcessingLoop.WORK_STATUS_SCAN
                 analyzerProcessingLoop?.setWorkStatus(workStatus)
                 Logger.i("进入侦测页面")
@@ -213,6 +234,17 @@ class MainActivity : AppCompatActivity(), IQSourceInterface.Callback, RFControlI
                 ScanDialog.SCAN_STATUS_STOP -> {
                     stopAnalyzer()
                 }
+
+                ScanDialog.SCAN_STATUS_MONITOR -> {
+                    // 只监视最后找到的异常频率
+                    workStatus = AnalyzerProcessingLoop.WORK_STATUS_MONITOR
+                    analyzerProcessingLoop?.setWorkStatus(workStatus)
+                }
+
+                ScanDialog.SCAN_STATUS_SCAN -> {
+                    workStatus = AnalyzerProcessingLoop.WORK_STATUS_SCAN
+                    analyzerProcessingLoop?.setWorkStatus(workStatus)
+                }
             }
         }
         // 过滤Wi-Fi
@@ -271,6 +303,7 @@ class MainActivity : AppCompatActivity(), IQSourceInterface.Callback, RFControlI
         }
         source = HackrfSource()
         source?.let {
+            source?.settleTime = SpManager.getInt(SP_SETTLE_TIME_KEY, RetuneGate.DEFAULT_SETTLE_TIME)
             source?.frequency = frequency
             source?.sampleRate = sampleRate
         }
@@ -349,6 +382,12 @@ class MainActivity : AppCompatActivity(), IQSourceInterface.Callback, RFControlI
             }
         }
 
+        // 所有线程都已停止：把调度器的缓冲区放回缓冲池（统计未归还的缓冲区），然后把空闲的缓冲区和重采样器的系数缓存交给GC
+        scheduler?.releaseBuffers()
+        Logger.i(SamplePacketPool.getInstance().statistics)
+        SamplePacketPool.getInstance().trim()
+        RationalResampler.clearCache()
+
         running = false
 
         // 允许屏幕再次关闭
@@ -363,9 +402,16 @@ class MainActivity : AppCompatActivity(), IQSourceInterface.Callback, RFControlI
         Logger.i("启动频率分析器")
         //
         val fftSize = SpManager.getInt(SP_FFT_SIZE_KEY, 4096)
+        val fftEngine = SpManager.getInt(SP_FFT_ENGINE_KEY, FFT.ENGINE_RADIX4)
+        val fftWindow = SpManager.getInt(SP_FFT_WINDOW_KEY, FFT.WINDOW_BLACKMAN)
+        // Welch平均的分段数（1 = 关闭）和重叠百分比
+        val welchSegments = SpManager.getInt(SP_WELCH_SEGMENTS_KEY, 1)
+        val welchOverlap = SpManager.getInt(SP_WELCH_OVERLAP_KEY, 50)
+        // 多相滤波器组每个分支的抽头数（0 = 关闭，使用普通加窗FFT）
+        val pfbTaps = SpManager.getInt(SP_PFB_TAPS_KEY, 0)
         val frameRate = SpManager.getInt(SP_FRAME_RATE_KEY, 10)
         val dynamicFrameRate = SpManager.getBoolean(SP_DYNAMIC_FRAME_RATE, true)
-        Logger.i("fftSize:$fftSize;--frameRate:$frameRate;--dynamicFrameRate:$dynamicFrameRate")
+        Logger.i("fftSize:$fftSize;--fftEngine:$fftEngine;--fftWindow:$fftWindow;--frameRate:$frameRate;--dynamicFrameRate:$dynamicFrameRate")
         running = true
 
         if (source == null) {
@@ -387,7 +433,11 @@ class MainActivity : AppCompatActivity(), IQSourceInterface.Callback, RFControlI
         }
 
         // 创建scheduler 和processingLoop的新实例
-        scheduler = Scheduler(fftSize, source)
+        var dwellSamples = WelchEstimator.getRequiredSamples(fftSize, welchSegments.coerceAtLeast(1), welchOverlap)
+        if (pfbTaps >= 2) {
+            dwellSamples = maxOf(dwellSamples, PolyphaseChannelizer.getRequiredSamples(fftSize, pfbTaps))
+        }
+        scheduler = Scheduler(fftSize, dwellSamples, source)
         analyzerProcessingLoop = AnalyzerProcessingLoop(
             analyzerSurface!!,          // 分析仪绘制实时数据曲线的view
             fftSize,                    // 快速傅里叶变换采样数
@@ -395,6 +445,7 @@ class MainActivity : AppCompatActivity(), IQSourceInterface.Callback, RFControlI
             scheduler?.fftInputQueue,   // 对缓冲池返回队列的引用
             source!!
         )
+        analyzerProcessingLoop?.scheduler = scheduler
 
         if (dynamicFrameRate) {
             analyzerProcessingLoop?.isDynamicFrameRate = true
@@ -402,6 +453,11 @@ class MainActivity : AppCompatActivity(), IQSourceInterface.Callback, RFControlI
             analyzerProcessingLoop?.isDynamicFrameRate = false
             analyzerProcessingLoop?.frameRate = frameRate
         }
+        analyzerProcessingLoop?.setFftEngine(fftEngine)
+        analyzerProcessingLoop?.setFftWindow(fftWindow)
+        analyzerProcessingLoop?.setWelch(welchSegments, welchOverlap)
+        analyzerProcessingLoop?.setChannelizer(pfbTaps)
+        analyzerProcessingLoop?.setAdaptiveRevisit(SpManager.getBoolean(SP_ADAPTIVE_REVISIT_KEY, true))
         analyzerProcessingLoop?.setWorkStatus(workStatus)
         //启动两个线程
         scheduler?.start()
@@ -416,6 +472,7 @@ class MainActivity : AppCompatActivity(), IQSourceInterface.Callback, RFControlI
                 scheduler?.demodInputQueue,
                 source!!.packetSize
             )
+        demodulator?.isFastFmDiscriminator = SpManager.getBoolean(SP_FAST_FM_KEY, true)
         demodulator?.start()
 
         // 设置解调器模式（将正确配置解调器）
@@ -438,35 +495,22 @@ class MainActivity : AppCompatActivity(), IQSourceInterface.Callback, RFControlI
         if (mMode == Demodulator.DEMODULATION_OFF) {
             scheduler?.isDemodulationActivated = false
         } else {
-            if (recordingFile != null && source?.sampleRate != Demodulator.INPUT_RATE) {
-                //我们现在正在以不兼容的采样率进行记录。
-                Logger.i("setDemodulationMode：录制正在运行 " + source?.sampleRate + " Sps。无法启动解调。")
-                runOnUiThread {
-                    Toast.makeText(
-                        this,
-                        "正在以不兼容的采样率运行录制以进行解调！",
-                        Toast.LENGTH_SHORT
-                    ).show()
-                }
-                return
-            }
-
-            // 调整源的采样率
-            source?.sampleRate = Demodulator.INPUT_RATE
-
-            // 验证源是否支持采样率
-            if (source?.sampleRate != Demodulator.INPUT_RATE) {
-                Logger.e("setDemodulationMode:无法调整源采样率")
+            // 解调器的抽取级联会按源的当前采样率自动规划（见DecimationCascade），无需调整源的采样率。
+            // 只有当源的采样率低于解调所需的正交采样率时才无法解调：
+            val rate = source?.sampleRate ?: 0
+            if (rate < Demodulator.getQuadratureRate(mMode)) {
+                Logger.e("setDemodulationMode:源采样率过低：$rate")
                 Toast.makeText(
                     this,
-                    "源不支持解调所需的采样率（:${Demodulator.INPUT_RATE / 1000000} Msps",
+                    "源采样率过低，无法解调（至少${Demodulator.getQuadratureRate(mMode) / 1000} ksps）",
                     Toast.LENGTH_SHORT
                 ).show()
                 scheduler?.isDemodulationActivated = false
                 mMode = Demodulator.DEMODULATION_OFF    // 停用解调。。。
             } else {
+                // 源采样率足够高时，在转换/混频的同时进行第一级2倍抽取（之后仍至少保留2倍正交采样率）:
+                scheduler?.isDemodulationPreDecimation = rate >= 4 * Demodulator.getQuadratureRate(mMode)
                 scheduler?.isDemodulationActivated = true
-
             }
         }
 
@@ -0,0 +1,243 @@
+package com.example.frequencydetectionclient.bean;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Module:      DirectSamplePacket.java
+ * Description: SamplePacket的堆外版本：复数样本交错存放（re0 im0 re1 im1 ...）在一个direct、本机字节序的FloatBuffer中，
+ * 可以不经复制直接交给本地代码（JNI的GetDirectBufferAddress）。每个复数样本（8字节）都要对齐：
+ * Java层无法得到缓冲区的地址（alignmentOffset()/alignedSlice()要API 33，compileSdk是31），
+ * 所以依赖ART的DirectByteBuffer（MemoryRef多分配7字节并把地址向上取整到8字节）。
+ * 元数据（size/capacity/frequency/sampleRate/epoch/window）与SamplePacket相同。
+ * 这只是迁移用的数据类型：目前还没有处理阶段使用它，已有的滤波器仍然使用SamplePacket，
+ * 用copyTo() / copyFrom()在两种布局之间转换。
+ */
+public class DirectSamplePacket {
+	private final ByteBuffer bytes;		// direct buffer, native byte order
+	private final FloatBuffer data;		// interleaved re/im view of bytes
+	private final int capacity;			// max. number of complex samples
+	private long frequency;				// center frequency
+	private int sampleRate;				// sample rate
+	private int size;					// number of samples in this packet
+	private int epoch;					// retune epoch of the source (see SamplePacket.getEpoch())
+	private float[] window;				// window applied while filling (see SamplePacket.getWindow()) or null
+	private float[] scratch = null;		// interleaved copy for the bulk transfers of copyTo() / copyFrom()
+
+	/**
+	 * Constructor. This constructor allocates a fresh direct buffer
+	 *
+	 * @param capacity	Number of complex samples that fit into this packet
+	 */
+	public DirectSamplePacket(int capacity) {
+		this.capacity = capacity;
+		this.bytes = ByteBuffer.allocateDirect(capacity * 2 * 4).order(ByteOrder.nativeOrder());	// 8-byte aligned by ART
+		this.data = bytes.asFloatBuffer();
+		this.frequency = 0;
+		this.sampleRate = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * @return the direct byte buffer with the interleaved samples (for native code, not a copy)
+	 */
+	public ByteBuffer getByteBuffer() {
+		return bytes;
+	}
+
+	/**
+	 * @return view of the interleaved samples (index 2*i: real part, 2*i+1: imaginary part of sample i).
+	 * The view shares the memory with this packet and has its own position / limit.
+	 */
+	public FloatBuffer getBuffer() {
+		return data.duplicate();
+	}
+
+	/**
+	 * Returns a view of some of the samples (no copy)
+	 *
+	 * @param offset	index of the first sample
+	 * @param length	number of samples
+	 * @return interleaved view of the samples offset .. offset+length-1
+	 */
+	public FloatBuffer view(int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > capacity)
+			throw new IndexOutOfBoundsException("offset=" + offset + " length=" + length + " capacity=" + capacity);
+		FloatBuffer view = data.duplicate();
+		view.position(2 * offset);
+		view.limit(2 * (offset + length));
+		return view.slice();
+	}
+
+	/**
+	 * Returns the real part at the specified index
+	 *
+	 * @param i		index
+	 * @return real part of the sample with the given index
+	 */
+	public float re(int i) {
+		return data.get(2 * i);
+	}
+
+	/**
+	 * Returns the imaginary part at the specified index
+	 *
+	 * @param i		index
+	 * @return imaginary part of the sample with the given index
+	 */
+	public float im(int i) {
+		return data.get(2 * i + 1);
+	}
+
+	/**
+	 * Sets the sample at the specified index
+	 *
+	 * @param i		index
+	 * @param re	real part
+	 * @param im	imaginary part
+	 */
+	public void set(int i, float re, float im) {
+		data.put(2 * i, re);
+		data.put(2 * i + 1, im);
+	}
+
+	/**
+	 * @return max. number of samples in this packet
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return number of samples in this packet
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Sets a new size (number of samples in this packet)
+	 * @param size	number of (valid) samples in this packet
+	 */
+	public void setSize(int size) {
+		this.size = Math.min(size, capacity);
+	}
+
+	/**
+	 * @return center frequency at which these samples where recorded
+	 */
+	public long getFrequency() {
+		return frequency;
+	}
+
+	/**
+	 * Sets the center frequency for this sample packet
+	 * @param frequency		center frequency at which these samples were recorded
+	 */
+	public void setFrequency(long frequency) {
+		this.frequency = frequency;
+	}
+
+	/**
+	 * @return sample rate at which these samples were recorded
+	 */
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * Sets the sample rate for this sample packet
+	 * @param sampleRate		sample rate at which these samples were recorded
+	 */
+	public void setSampleRate(int sampleRate) {
+		this.sampleRate = sampleRate;
+	}
+
+	/**
+	 * @return retune epoch of the source at which these samples were recorded
+	 */
+	public int getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * Sets the retune epoch for this sample packet
+	 * @param epoch		retune epoch of the source at which these samples were recorded
+	 */
+	public void setEpoch(int epoch) {
+		this.epoch = epoch;
+	}
+
+	/**
+	 * @return window that was applied to the samples while filling the packet or null if the samples are raw
+	 */
+	public float[] getWindow() {
+		return window;
+	}
+
+	/**
+	 * Sets the window that was applied to the samples (see SamplePacket.setWindow())
+	 * @param window	window coefficients (length == capacity()) or null for raw samples
+	 */
+	public void setWindow(float[] window) {
+		this.window = window;
+	}
+
+	/**
+	 * Adapter for the filters that still use SamplePacket: appends the samples of this packet to the
+	 * end of dest (de-interleaving) and copies frequency, sample rate, epoch and window.
+	 *
+	 * @param dest	packet in the planar layout
+	 * @return number of copied samples (limited by the free space in dest)
+	 */
+	public int copyTo(SamplePacket dest) {
+		int start = dest.size();
+		int count = Math.min(size, dest.capacity() - start);
+		float[] tmp = getScratch(count);
+		FloatBuffer src = data.duplicate();
+		src.get(tmp, 0, 2 * count);	// bulk copy out of the direct buffer
+		float[] re = dest.re(), im = dest.im();
+		for (int i = 0; i < count; i++) {
+			re[start + i] = tmp[2 * i];
+			im[start + i] = tmp[2 * i + 1];
+		}
+		dest.setSize(start + count);
+		dest.setFrequency(frequency);
+		dest.setSampleRate(sampleRate);
+		dest.setEpoch(epoch);
+		dest.setWindow(window);
+		return count;
+	}
+
+	/**
+	 * Adapter for the filters that still use SamplePacket: replaces the content of this packet with
+	 * the samples of src (interleaving) and copies frequency, sample rate, epoch and window.
+	 *
+	 * @param src	packet in the planar layout
+	 * @return number of copied samples (limited by the capacity of this packet)
+	 */
+	public int copyFrom(SamplePacket src) {
+		int count = Math.min(src.size(), capacity);
+		float[] tmp = getScratch(count);
+		float[] re = src.re(), im = src.im();
+		for (int i = 0; i < count; i++) {
+			tmp[2 * i] = re[i];
+			tmp[2 * i + 1] = im[i];
+		}
+		FloatBuffer dest = data.duplicate();
+		dest.put(tmp, 0, 2 * count);	// bulk copy into the direct buffer
+		this.size = count;
+		this.frequency = src.getFrequency();
+		this.sampleRate = src.getSampleRate();
+		this.epoch = src.getEpoch();
+		this.window = src.getWindow();
+		return count;
+	}
+
+	private float[] getScratch(int samples) {
+		if (scratch == null || scratch.length < 2 * samples)
+			scratch = new float[2 * capacity];
+		return scratch;
+	}
+}
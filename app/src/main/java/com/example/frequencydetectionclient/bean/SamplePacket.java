@@ -10,6 +10,10 @@ public class SamplePacket {
 	private long frequency;		// center frequency
 	private int sampleRate;		// sample rate
 	private int size;			// number of samples in this packet
+	private float[] window;		// window that the converter applies while filling the packet (null: raw samples)
+	private int epoch;			// retune epoch of the source at which these samples were recorded
+	private volatile String holder;		// stage that currently works on the packet (SamplePacketPool tracking, null: in a queue)
+	private volatile long holdSince;	// timestamp (ms) when holder took the packet
 
 	/**
 	 * Constructor. This constructor wraps existing arrays and set the number of
@@ -144,4 +148,59 @@ public class SamplePacket {
 	public void setSampleRate(int sampleRate) {
 		this.sampleRate = sampleRate;
 	}
+
+	/**
+	 * @return window that was applied to the samples while filling the packet or null if the samples are raw
+	 */
+	public float[] getWindow() {
+		return window;
+	}
+
+	/**
+	 * Sets the window that the IQConverter multiplies to the samples while filling this packet (sample at
+	 * index i with window[i], no separate windowing pass before the FFT). Must be set before the packet is filled.
+	 * @param window	window coefficients (length == capacity()) or null for raw samples
+	 */
+	public void setWindow(float[] window) {
+		this.window = window;
+	}
+
+	/**
+	 * @return retune epoch of the source (IQSourceInterface.getRetuneEpoch()) at which these samples were recorded
+	 */
+	public int getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * Sets the retune epoch for this sample packet
+	 * @param epoch		retune epoch of the source at which these samples were recorded
+	 */
+	public void setEpoch(int epoch) {
+		this.epoch = epoch;
+	}
+
+	/**
+	 * @return stage that currently holds the packet (see SamplePacketPool.hold()) or null
+	 */
+	public String getHolder() {
+		return holder;
+	}
+
+	/**
+	 * @return timestamp (ms) of the last setHolder()
+	 */
+	public long getHoldSince() {
+		return holdSince;
+	}
+
+	/**
+	 * Records which stage works on the packet (used by SamplePacketPool, no locking)
+	 * @param holder	name of the stage or null if the packet is put into a queue
+	 * @param since		timestamp (ms)
+	 */
+	public void setHolder(String holder, long since) {
+		this.holdSince = since;
+		this.holder = holder;
+	}
 }
@@ -23,6 +23,7 @@ class ScanDialog(context: Context) : CenterPopupView(context) {
     private val btClear: ShapeButton by lazy { findViewById(R.id.bt_clear) }
     private val btPause: ShapeButton by lazy { findViewById(R.id.bt_pause) }
     private val btStop: ShapeButton by lazy { findViewById(R.id.bt_stop) }
+    private val btMonitor: ShapeButton by lazy { findViewById(R.id.bt_monitor) }
 
     private val cbWifi: CheckBox by lazy { findViewById(R.id.cb_wifi) }
     private val cbDisorder: CheckBox by lazy { findViewById(R.id.cb_disorder) }
@@ -36,6 +37,9 @@ class ScanDialog(context: Context) : CenterPopupView(context) {
         const val SCAN_STATUS_PAUSE = 2
         const val SCAN_STATUS_STOP = 3
         const val SCAN_STATUS_WORK = 4
+        // 只监视找到的异常频率（AnalyzerProcessingLoop.WORK_STATUS_MONITOR）/ 回到扫频
+        const val SCAN_STATUS_MONITOR = 5
+        const val SCAN_STATUS_SCAN = 6
 
         const val SCAN_FILTER_WIFI_KEY = "scan_filter_wifi_key"
 
@@ -64,6 +68,9 @@ class ScanDialog(context: Context) : CenterPopupView(context) {
     // 2.6g信号
     private var filterOtherEnable = false
 
+    // 最后找到的异常频率（0：还没有）
+    private var alarmFrequency = 0L
+
     override fun getImplLayoutId(): Int = R.layout.dialog_center_scan
 
     override fun onCreate() {
@@ -75,7 +82,11 @@ class ScanDialog(context: Context) : CenterPopupView(context) {
                 refreshLogView()
             }
         }
-
+        MyApp.appViewModel.alarmFrequencyData.observe(this) {
+            it?.let {
+                alarmFrequency = it
+            }
+        }
 
     }
 
@@ -118,6 +129,23 @@ class ScanDialog(context: Context) : CenterPopupView(context) {
             }
         }
 
+        btMonitor.setOnClickListener {
+            if (btMonitor.text.toString() == "监视异常频率") {
+                if (alarmFrequency <= 0) {
+                    tvScan.text = tvScan.text.toString() + "\n还没有找到异常频率"
+                    refreshLogView()
+                    return@setOnClickListener
+                }
+                MyApp.appViewModel.scanStatusData.postValue(SCAN_STATUS_MONITOR)
+                btMonitor.text = "继续扫描"
+                tvTitle.text = "监视${alarmFrequency / 1000 / 1000f}Mhz中..."
+            } else {
+                MyApp.appViewModel.scanStatusData.postValue(SCAN_STATUS_SCAN)
+                btMonitor.text = "监视异常频率"
+                tvTitle.text = "频段侦测中..."
+            }
+        }
+
         btStop.setOnClickListener {
             MyApp.appViewModel.scanStatusData.postValue(SCAN_STATUS_STOP)
             dismiss()
@@ -5,6 +5,7 @@ import android.util.Log;
 
 import com.example.frequencydetectionclient.bean.SamplePacket;
 import com.example.frequencydetectionclient.iq.IQSourceInterface;
+import com.example.frequencydetectionclient.iq.RetuneGate;
 import com.example.frequencydetectionclient.utils.Signed8BitIQConverter;
 import com.example.frequencydetectionclient.iq.IQConverter;
 import com.mantz_it.hackrf_android.Hackrf;
@@ -35,6 +36,7 @@ public class HackrfSource implements IQSourceInterface, HackrfCallbackInterface
     private boolean antennaPower = false;
     private int frequencyOffset = 0;    // virtually offset the frequency according to an external up/down-converter
     private IQConverter iqConverter;
+    private final RetuneGate retuneGate = new RetuneGate();    // 调谐纪元和稳定时间（getPacket()丢弃调谐期间的数据包）
     //	private static final String LOGTAG = "HackRFSource";
     public static final long MIN_FREQUENCY = 1l;
     public static final long MAX_FREQUENCY = 7250000000l;
@@ -124,6 +126,7 @@ public class HackrfSource implements IQSourceInterface, HackrfCallbackInterface
     @Override
     public void setFrequency(long frequency) {
         long actualFrequency = frequency - frequencyOffset;
+        int epoch = retuneGate.beginRetune();
         // re-tune the hackrf:
         if (hackrf != null) {
             try {
@@ -131,6 +134,7 @@ public class HackrfSource implements IQSourceInterface, HackrfCallbackInterface
             } catch (HackrfUsbException e) {
                 Logger.e("setFrequency: Error while setting frequency: " + e.getMessage());
                 reportError("Error while setting frequency");
+                retuneGate.endRetune(epoch, getPacketDuration());
                 return;
             }
         }
@@ -141,6 +145,7 @@ public class HackrfSource implements IQSourceInterface, HackrfCallbackInterface
         // 存储新频率
         this.frequency = actualFrequency;
         this.iqConverter.setFrequency(frequency);
+        retuneGate.endRetune(epoch, getPacketDuration());
     }
 
     @Override
@@ -197,6 +202,7 @@ public class HackrfSource implements IQSourceInterface, HackrfCallbackInterface
             setBasebandFilterWidth((int) (sampleRate * 0.75));
 
         // 将hackrf设置为新的采样率：
+        int epoch = retuneGate.beginRetune();
         if (hackrf != null) {
             try {
                 hackrf.setSampleRate(sampleRate, 1);
@@ -204,6 +210,7 @@ public class HackrfSource implements IQSourceInterface, HackrfCallbackInterface
             } catch (HackrfUsbException e) {
                 Logger.e("setSampleRate: Error while setting sample rate: " + e.getMessage());
                 reportError("Error while setting sample rate");
+                retuneGate.endRetune(epoch, getPacketDuration());
                 return;
             }
         }
@@ -212,6 +219,7 @@ public class HackrfSource implements IQSourceInterface, HackrfCallbackInterface
         this.flushQueue();
         this.sampleRate = sampleRate;
         this.iqConverter.setSampleRate(sampleRate);
+        retuneGate.endRetune(epoch, getPacketDuration());
         Logger.i("设置的采样率：" + sampleRate / 1000 / 1000 + "Mhz");
     }
 
@@ -359,11 +367,39 @@ public class HackrfSource implements IQSourceInterface, HackrfCallbackInterface
         }
     }
 
+    @Override
+    public int getRetuneEpoch() {
+        return retuneGate.getEpoch();
+    }
+
+    @Override
+    public void setSettleTime(int settleTime) {
+        retuneGate.setSettleTime(settleTime);
+    }
+
+    @Override
+    public int getSettleTime() {
+        return retuneGate.getSettleTime();
+    }
+
+    /**
+     * @return duration of one packet in ns
+     */
+    private long getPacketDuration() {
+        return hackrf != null ? RetuneGate.getPacketDuration(hackrf.getPacketSize() / 2, sampleRate) : 0;
+    }
+
     @Override
     public byte[] getPacket(int timeout) {
         if (queue != null && hackrf != null) {
             try {
+                long deadline = System.currentTimeMillis() + timeout;
                 byte[] packet = queue.poll(timeout, TimeUnit.MILLISECONDS);
+                // 调谐完成和稳定时间之前采集的数据包直接还给缓冲池:
+                while (packet != null && retuneGate.isSettling()) {
+                    hackrf.returnBufferToBufferPool(packet);
+                    packet = queue.poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                }
                 if (packet == null && (hackrf.getTransceiverMode() != Hackrf.HACKRF_TRANSCEIVER_MODE_RECEIVE)) {
                     Logger.e("getPacket: HackRF is not in receiving mode!");
                     reportError("HackRF stopped receiving");
@@ -433,6 +469,11 @@ public class HackrfSource implements IQSourceInterface, HackrfCallbackInterface
         return this.iqConverter.mixPacketIntoSamplePacket(packet, samplePacket, channelFrequency);
     }
 
+    @Override
+    public int mixPacketIntoSamplePacketDecimated(byte[] packet, SamplePacket samplePacket, long channelFrequency) {
+        return this.iqConverter.mixPacketIntoSamplePacketDecimated(packet, samplePacket, channelFrequency);
+    }
+
     /**
      * 将清空队列
      */
@@ -9,6 +9,12 @@ import com.orhanobut.logger.Logger;
  */
 public class HalfBandLowPassFilter {
 
+	// Taps of the N=12 filter (pairs from the outside in; the middle tap is 1). Public for fused implementations
+	// (see IQConverter.mixPacketIntoSamplePacketDecimated()):
+	public static final float N12_TAP0 = 0.018032677037f;
+	public static final float N12_TAP1 = -0.114591559026f;
+	public static final float N12_TAP2 = 0.597385968973f;
+
 	private float[] taps;
 	private float[] delaysReal;
 	private float[] delaysImag;
@@ -37,7 +43,7 @@ public class HalfBandLowPassFilter {
 		switch (N) {
 			case 8:		taps = new float[] {-0.045567308121f, 0.550847429795f};
 						break;
-			case 12:	taps = new float[] {0.018032677037f, -0.114591559026f, 0.597385968973f};
+			case 12:	taps = new float[] {N12_TAP0, N12_TAP1, N12_TAP2};
 						break;
 			case 32:	taps = new float[] {-0.020465752391f, 0.021334704213f, -0.032646869627f, 0.048752407464f,
 											 -0.072961784639f, 0.113978914053f, -0.203982998267f, 0.633841612044f };
@@ -61,6 +67,7 @@ public class HalfBandLowPassFilter {
 	 */
 	public int filter(SamplePacket in, SamplePacket out, int offset, int length) {
 		int index1, index2;
+		float middleReal, middleImag;
 		int indexOut = out.size();
 		int outputCapacity = out.capacity();
 		float[] reIn = in.re(), imIn = in.im(), reOut = out.re(), imOut = out.im();
@@ -74,9 +81,11 @@ public class HalfBandLowPassFilter {
 				return i-offset;    // We return the number of consumed samples from the input buffers
 			}
 
-			// Insert samples in delay line:
+			// Insert samples in delay line (middle tap delay line is read before it is overwritten, see filterN8):
 			delaysReal[delayIndex] = reIn[i];
 			delaysImag[delayIndex] = imIn[i];
+			middleReal = delaysMiddleTapReal[delayMiddleTapIndex];
+			middleImag = delaysMiddleTapImag[delayMiddleTapIndex];
 			delaysMiddleTapReal[delayMiddleTapIndex] = reIn[i+1];
 			delaysMiddleTapImag[delayMiddleTapIndex] = imIn[i+1];
 
@@ -85,21 +94,25 @@ public class HalfBandLowPassFilter {
 			if(delayMiddleTapIndex >= delaysMiddleTapReal.length)
 				delayMiddleTapIndex = 0;
 
-			// Calculate the results:
-			reOut[indexOut] = 0;
-			imOut[indexOut] = 0;
+			// Calculate the results (symmetric pairs: newest/oldest, second newest/second oldest, ...):
+			reOut[indexOut] = middleReal;
+			imOut[indexOut] = middleImag;
 			index1 = delayIndex;
-			index2 = delayIndex+delaysReal.length-1;
+			index2 = delayIndex+1;
+			if(index2 >= delaysReal.length) index2 = 0;
 			for (float tap : taps) {
 				reOut[indexOut] += (delaysReal[index1] + delaysReal[index2]) * tap;
 				imOut[indexOut] += (delaysImag[index1] + delaysImag[index2]) * tap;
-				index1++;
-				index2--;
-				if(index1 > delaysReal.length)	index1 = 0;
-				if(index2 < 0) index2 = delaysReal.length -1;
+				index1--;
+				index2++;
+				if(index1 < 0) index1 = delaysReal.length - 1;
+				if(index2 >= delaysReal.length) index2 = 0;
 			}
-			reOut[indexOut] += delaysMiddleTapReal[delayMiddleTapIndex];
-			imOut[indexOut] += delaysMiddleTapImag[delayMiddleTapIndex];
+
+			// Update delay index so that it points to the oldest sample:
+			delayIndex++;
+			if(delayIndex >= delaysReal.length)
+				delayIndex = 0;
 			indexOut++;
 		}
 		out.setSize(indexOut);	// update size of output sample packet
@@ -124,6 +137,7 @@ public class HalfBandLowPassFilter {
 	public int filterN8(SamplePacket in, SamplePacket out, int offset, int length) {
 		int indexOut = out.size();
 		int outputCapacity = out.capacity();
+		float middleReal, middleImag;
 		float[] reIn = in.re(), imIn = in.im(), reOut = out.re(), imOut = out.im();
 
 		// insert each input sample into the delay line:
@@ -135,9 +149,12 @@ public class HalfBandLowPassFilter {
 				return i-offset;    // We return the number of consumed samples from the input buffers
 			}
 
-			// Insert samples in delay line:
+			// Insert samples in delay line. The middle tap delay line is read before it is overwritten,
+			// so that it delivers the odd sample in the center of the even samples in delaysReal/Imag:
 			delaysReal[delayIndex] = reIn[i];
 			delaysImag[delayIndex] = imIn[i];
+			middleReal = delaysMiddleTapReal[delayMiddleTapIndex];
+			middleImag = delaysMiddleTapImag[delayMiddleTapIndex];
 			delaysMiddleTapReal[delayMiddleTapIndex] = reIn[i+1];
 			delaysMiddleTapImag[delayMiddleTapIndex] = imIn[i+1];
 
@@ -146,43 +163,44 @@ public class HalfBandLowPassFilter {
 			if(delayMiddleTapIndex >= 2)
 				delayMiddleTapIndex = 0;
 
-			// Calculate the results:
+			// Calculate the results. The newest sample is at delayIndex, the oldest at delayIndex+1,
+			// so the symmetric pairs are (delayIndex-k, delayIndex+1+k):
 			// note that this is fast but not very elegant xD
 			switch (delayIndex) {
 				case 0:
-					reOut[indexOut] = (delaysReal[0] + delaysReal[3]) * -0.045567308121f
-									+ (delaysReal[1] + delaysReal[2]) * 0.550847429795f
-									+ delaysMiddleTapReal[delayMiddleTapIndex];
-					imOut[indexOut] = (delaysImag[0] + delaysImag[3]) * -0.045567308121f
-									+ (delaysImag[1] + delaysImag[2]) * 0.550847429795f
-									+ delaysMiddleTapImag[delayMiddleTapIndex];
+					reOut[indexOut] = (delaysReal[0] + delaysReal[1]) * -0.045567308121f
+									+ (delaysReal[3] + delaysReal[2]) * 0.550847429795f
+									+ middleReal;
+					imOut[indexOut] = (delaysImag[0] + delaysImag[1]) * -0.045567308121f
+									+ (delaysImag[3] + delaysImag[2]) * 0.550847429795f
+									+ middleImag;
 					delayIndex = 1;
 					break;
 				case 1:
-					reOut[indexOut] = (delaysReal[1] + delaysReal[0]) * -0.045567308121f
-									+ (delaysReal[2] + delaysReal[3]) * 0.550847429795f
-									+ delaysMiddleTapReal[delayMiddleTapIndex];
-					imOut[indexOut] = (delaysImag[1] + delaysImag[0]) * -0.045567308121f
-									+ (delaysImag[2] + delaysImag[3]) * 0.550847429795f
-									+ delaysMiddleTapImag[delayMiddleTapIndex];
+					reOut[indexOut] = (delaysReal[1] + delaysReal[2]) * -0.045567308121f
+									+ (delaysReal[0] + delaysReal[3]) * 0.550847429795f
+									+ middleReal;
+					imOut[indexOut] = (delaysImag[1] + delaysImag[2]) * -0.045567308121f
+									+ (delaysImag[0] + delaysImag[3]) * 0.550847429795f
+									+ middleImag;
 					delayIndex = 2;
 					break;
 				case 2:
-					reOut[indexOut] = (delaysReal[2] + delaysReal[1]) * -0.045567308121f
-									+ (delaysReal[3] + delaysReal[0]) * 0.550847429795f
-									+ delaysMiddleTapReal[delayMiddleTapIndex];
-					imOut[indexOut] = (delaysImag[2] + delaysImag[1]) * -0.045567308121f
-									+ (delaysImag[3] + delaysImag[0]) * 0.550847429795f
-									+ delaysMiddleTapImag[delayMiddleTapIndex];
+					reOut[indexOut] = (delaysReal[2] + delaysReal[3]) * -0.045567308121f
+									+ (delaysReal[1] + delaysReal[0]) * 0.550847429795f
+									+ middleReal;
+					imOut[indexOut] = (delaysImag[2] + delaysImag[3]) * -0.045567308121f
+									+ (delaysImag[1] + delaysImag[0]) * 0.550847429795f
+									+ middleImag;
 					delayIndex = 3;
 					break;
 				case 3:
-					reOut[indexOut] = (delaysReal[3] + delaysReal[2]) * -0.045567308121f
-									+ (delaysReal[0] + delaysReal[1]) * 0.550847429795f
-									+ delaysMiddleTapReal[delayMiddleTapIndex];
-					imOut[indexOut] = (delaysImag[3] + delaysImag[2]) * -0.045567308121f
-									+ (delaysImag[0] + delaysImag[1]) * 0.550847429795f
-									+ delaysMiddleTapImag[delayMiddleTapIndex];
+					reOut[indexOut] = (delaysReal[3] + delaysReal[0]) * -0.045567308121f
+									+ (delaysReal[2] + delaysReal[1]) * 0.550847429795f
+									+ middleReal;
+					imOut[indexOut] = (delaysImag[3] + delaysImag[0]) * -0.045567308121f
+									+ (delaysImag[2] + delaysImag[1]) * 0.550847429795f
+									+ middleImag;
 					delayIndex = 0;
 					break;
 				default:
@@ -212,6 +230,7 @@ public class HalfBandLowPassFilter {
 	public int filterN12(SamplePacket in, SamplePacket out, int offset, int length) {
 		int indexOut = out.size();
 		int outputCapacity = out.capacity();
+		float middleReal, middleImag;
 		float[] reIn = in.re(), imIn = in.im(), reOut = out.re(), imOut = out.im();
 
 		// insert each input sample into the delay line:
@@ -223,9 +242,12 @@ public class HalfBandLowPassFilter {
 				return i-offset;    // We return the number of consumed samples from the input buffers
 			}
 
-			// Insert samples in delay line:
+			// Insert samples in delay line. The middle tap delay line is read before it is overwritten,
+			// so that it delivers the odd sample in the center of the even samples in delaysReal/Imag:
 			delaysReal[delayIndex] = reIn[i];
 			delaysImag[delayIndex] = imIn[i];
+			middleReal = delaysMiddleTapReal[delayMiddleTapIndex];
+			middleImag = delaysMiddleTapImag[delayMiddleTapIndex];
 			delaysMiddleTapReal[delayMiddleTapIndex] = reIn[i+1];
 			delaysMiddleTapImag[delayMiddleTapIndex] = imIn[i+1];
 
@@ -234,73 +256,74 @@ public class HalfBandLowPassFilter {
 			if(delayMiddleTapIndex >= 3)
 				delayMiddleTapIndex = 0;
 
-			// Calculate the results:
+			// Calculate the results. The newest sample is at delayIndex, the oldest at delayIndex+1,
+			// so the symmetric pairs are (delayIndex-k, delayIndex+1+k):
 			// note that this is fast but not very elegant xD
 			switch (delayIndex) {
 				case 0:
-					reOut[indexOut] = (delaysReal[0] + delaysReal[5]) * 0.018032677037f
-									+ (delaysReal[1] + delaysReal[4]) * -0.114591559026f
-									+ (delaysReal[2] + delaysReal[3]) * 0.597385968973f
-									+ delaysMiddleTapReal[delayMiddleTapIndex];
-					imOut[indexOut] = (delaysImag[0] + delaysImag[5]) * 0.018032677037f
-									+ (delaysImag[1] + delaysImag[4]) * -0.114591559026f
-									+ (delaysImag[2] + delaysImag[3]) * 0.597385968973f
-									+ delaysMiddleTapImag[delayMiddleTapIndex];
+					reOut[indexOut] = (delaysReal[0] + delaysReal[1]) * 0.018032677037f
+									+ (delaysReal[5] + delaysReal[2]) * -0.114591559026f
+									+ (delaysReal[4] + delaysReal[3]) * 0.597385968973f
+									+ middleReal;
+					imOut[indexOut] = (delaysImag[0] + delaysImag[1]) * 0.018032677037f
+									+ (delaysImag[5] + delaysImag[2]) * -0.114591559026f
+									+ (delaysImag[4] + delaysImag[3]) * 0.597385968973f
+									+ middleImag;
 					delayIndex = 1;
 					break;
 				case 1:
-					reOut[indexOut] = (delaysReal[1] + delaysReal[0]) * 0.018032677037f
-									+ (delaysReal[2] + delaysReal[5]) * -0.114591559026f
-									+ (delaysReal[3] + delaysReal[4]) * 0.597385968973f
-									+ delaysMiddleTapReal[delayMiddleTapIndex];
-					imOut[indexOut] = (delaysImag[1] + delaysImag[0]) * 0.018032677037f
-									+ (delaysImag[2] + delaysImag[5]) * -0.114591559026f
-									+ (delaysImag[3] + delaysImag[4]) * 0.597385968973f
-									+ delaysMiddleTapImag[delayMiddleTapIndex];
+					reOut[indexOut] = (delaysReal[1] + delaysReal[2]) * 0.018032677037f
+									+ (delaysReal[0] + delaysReal[3]) * -0.114591559026f
+									+ (delaysReal[5] + delaysReal[4]) * 0.597385968973f
+									+ middleReal;
+					imOut[indexOut] = (delaysImag[1] + delaysImag[2]) * 0.018032677037f
+									+ (delaysImag[0] + delaysImag[3]) * -0.114591559026f
+									+ (delaysImag[5] + delaysImag[4]) * 0.597385968973f
+									+ middleImag;
 					delayIndex = 2;
 					break;
 				case 2:
-					reOut[indexOut] = (delaysReal[2] + delaysReal[1]) * 0.018032677037f
-									+ (delaysReal[3] + delaysReal[0]) * -0.114591559026f
-									+ (delaysReal[4] + delaysReal[5]) * 0.597385968973f
-									+ delaysMiddleTapReal[delayMiddleTapIndex];
-					imOut[indexOut] = (delaysImag[2] + delaysImag[1]) * 0.018032677037f
-									+ (delaysImag[3] + delaysImag[0]) * -0.114591559026f
-									+ (delaysImag[4] + delaysImag[5]) * 0.597385968973f
-									+ delaysMiddleTapImag[delayMiddleTapIndex];
+					reOut[indexOut] = (delaysReal[2] + delaysReal[3]) * 0.018032677037f
+									+ (delaysReal[1] + delaysReal[4]) * -0.114591559026f
+									+ (delaysReal[0] + delaysReal[5]) * 0.597385968973f
+									+ middleReal;
+					imOut[indexOut] = (delaysImag[2] + delaysImag[3]) * 0.018032677037f
+									+ (delaysImag[1] + delaysImag[4]) * -0.114591559026f
+									+ (delaysImag[0] + delaysImag[5]) * 0.597385968973f
+									+ middleImag;
 					delayIndex = 3;
 					break;
 				case 3:
-					reOut[indexOut] = (delaysReal[3] + delaysReal[2]) * 0.018032677037f
-									+ (delaysReal[4] + delaysReal[1]) * -0.114591559026f
-									+ (delaysReal[5] + delaysReal[0]) * 0.597385968973f
-									+ delaysMiddleTapReal[delayMiddleTapIndex];
-					imOut[indexOut] = (delaysImag[3] + delaysImag[2]) * 0.018032677037f
-									+ (delaysImag[4] + delaysImag[1]) * -0.114591559026f
-									+ (delaysImag[5] + delaysImag[0]) * 0.597385968973f
-									+ delaysMiddleTapImag[delayMiddleTapIndex];
+					reOut[indexOut] = (delaysReal[3] + delaysReal[4]) * 0.018032677037f
+									+ (delaysReal[2] + delaysReal[5]) * -0.114591559026f
+									+ (delaysReal[1] + delaysReal[0]) * 0.597385968973f
+									+ middleReal;
+					imOut[indexOut] = (delaysImag[3] + delaysImag[4]) * 0.018032677037f
+									+ (delaysImag[2] + delaysImag[5]) * -0.114591559026f
+									+ (delaysImag[1] + delaysImag[0]) * 0.597385968973f
+									+ middleImag;
 					delayIndex = 4;
 					break;
 				case 4:
-					reOut[indexOut] = (delaysReal[4] + delaysReal[3]) * 0.018032677037f
-									+ (delaysReal[5] + delaysReal[2]) * -0.114591559026f
-									+ (delaysReal[0] + delaysReal[1]) * 0.597385968973f
-									+ delaysMiddleTapReal[delayMiddleTapIndex];
-					imOut[indexOut] = (delaysImag[4] + delaysImag[3]) * 0.018032677037f
-									+ (delaysImag[5] + delaysImag[2]) * -0.114591559026f
-									+ (delaysImag[0] + delaysImag[1]) * 0.597385968973f
-									+ delaysMiddleTapImag[delayMiddleTapIndex];
+					reOut[indexOut] = (delaysReal[4] + delaysReal[5]) * 0.018032677037f
+									+ (delaysReal[3] + delaysReal[0]) * -0.114591559026f
+									+ (delaysReal[2] + delaysReal[1]) * 0.597385968973f
+									+ middleReal;
+					imOut[indexOut] = (delaysImag[4] + delaysImag[5]) * 0.018032677037f
+									+ (delaysImag[3] + delaysImag[0]) * -0.114591559026f
+									+ (delaysImag[2] + delaysImag[1]) * 0.597385968973f
+									+ middleImag;
 					delayIndex = 5;
 					break;
 				case 5:
-					reOut[indexOut] = (delaysReal[5] + delaysReal[4]) * 0.018032677037f
-									+ (delaysReal[0] + delaysReal[3]) * -0.114591559026f
-									+ (delaysReal[1] + delaysReal[2]) * 0.597385968973f
-									+ delaysMiddleTapReal[delayMiddleTapIndex];
-					imOut[indexOut] = (delaysImag[5] + delaysImag[4]) * 0.018032677037f
-									+ (delaysImag[0] + delaysImag[3]) * -0.114591559026f
-									+ (delaysImag[1] + delaysImag[2]) * 0.597385968973f
-									+ delaysMiddleTapImag[delayMiddleTapIndex];
+					reOut[indexOut] = (delaysReal[5] + delaysReal[0]) * 0.018032677037f
+									+ (delaysReal[4] + delaysReal[1]) * -0.114591559026f
+									+ (delaysReal[3] + delaysReal[2]) * 0.597385968973f
+									+ middleReal;
+					imOut[indexOut] = (delaysImag[5] + delaysImag[0]) * 0.018032677037f
+									+ (delaysImag[4] + delaysImag[1]) * -0.114591559026f
+									+ (delaysImag[3] + delaysImag[2]) * 0.597385968973f
+									+ middleImag;
 					delayIndex = 0;
 					break;
 				default:
@@ -2,6 +2,7 @@ package com.example.frequencydetectionclient.iq;
 
 
 import com.example.frequencydetectionclient.bean.SamplePacket;
+import com.example.frequencydetectionclient.hackrf.HalfBandLowPassFilter;
 
 /**
  * <p>
@@ -13,11 +14,18 @@ public abstract class IQConverter {
     protected long frequency = 0;                        // Baseband frequency of the converted samples (is put into the SamplePacket)
     protected int sampleRate = 0;                        // Sample rate of the converted samples (is put into the SamplePacket)
     protected float[] lookupTable = null;                // Lookup table to transform IQ bytes into doubles
-    protected float[][] cosineRealLookupTable = null;    // Lookup table to transform IQ bytes into frequency shifted doubles
-    protected float[][] cosineImagLookupTable = null;    // Lookup table to transform IQ bytes into frequency shifted doubles
-    protected int cosineFrequency;                        // Frequency of the cosine that is mixed to the signal
-    protected int cosineIndex;                            // current index within the cosine
-    protected static final int MAX_COSINE_LENGTH = 500;    // Max length of the cosine lookup table
+    protected int lookupOffset = 0;                      // lookupTable index of a byte b is (b + lookupOffset) & 0xff
+    protected final Nco mixer = new Nco();                // Oscillator that is mixed to the signal (mixPacketIntoSamplePacket)
+
+    // State of the half band filter in mixPacketIntoSamplePacketDecimated() (N=12: 6 even samples + 1 odd middle sample):
+    private static final float HB_TAP0 = 0.5f * HalfBandLowPassFilter.N12_TAP0;    // scaled by 0.5: unity gain
+    private static final float HB_TAP1 = 0.5f * HalfBandLowPassFilter.N12_TAP1;
+    private static final float HB_TAP2 = 0.5f * HalfBandLowPassFilter.N12_TAP2;
+    private final float[] halfBandEven = new float[10];  // re/im of the last 5 even samples (newest first)
+    private final float[] halfBandOdd = new float[6];    // re/im of the last 3 odd samples (newest first)
+    private static final int CONVERT_CHUNK = 1024;        // samples converted at once in mixPacketIntoSamplePacketDecimated() (even)
+    private final float[] convertRe = new float[CONVERT_CHUNK];
+    private final float[] convertIm = new float[CONVERT_CHUNK];
 
     public IQConverter() {
         generateLookupTable();
@@ -39,31 +47,153 @@ public abstract class IQConverter {
     public void setSampleRate(int sampleRate) {
         if (this.sampleRate != sampleRate) {
             this.sampleRate = sampleRate;
-            generateMixerLookupTable(cosineFrequency);
+            mixer.setFrequency(mixer.getFrequency(), sampleRate);
         }
     }
 
-    protected int calcOptimalCosineLength() {
-        // look for the best fitting array size to hold one or more full cosine cycles:
-        double cycleLength = sampleRate / Math.abs((double) cosineFrequency);
-        int bestLength = (int) cycleLength;
-        double bestLengthError = Math.abs(bestLength - cycleLength);
-        for (int i = 1; i * cycleLength < MAX_COSINE_LENGTH; i++) {
-            if (Math.abs(i * cycleLength - (int) (i * cycleLength)) < bestLengthError) {
-                bestLength = (int) (i * cycleLength);
-                bestLengthError = Math.abs(bestLength - (i * cycleLength));
-            }
-        }
-        return bestLength;
+    /**
+     * Sets the frequency of the oscillator that is mixed to the signal in mixPacketIntoSamplePacket().
+     * Allocates nothing, so it can be called for every packet.
+     *
+     * @param mixFrequency frequency in Hz (frequency - channelFrequency)
+     */
+    protected void setMixFrequency(long mixFrequency) {
+        mixer.setFrequency(mixFrequency, sampleRate);
+    }
+
+    /**
+     * @return number of bytes of one IQ sample in the packets of the source (2 for the 8 bit formats)
+     */
+    public int getBytesPerSample() {
+        return 2;
     }
 
     public abstract int fillPacketIntoSamplePacket(byte[] packet, SamplePacket samplePacket);
 
+    /**
+     * Windowed variant of fillPacketIntoSamplePacket() (used if samplePacket.getWindow() != null): the sample that is
+     * stored at index i is multiplied with window[i] during the conversion.
+     *
+     * @param packet       packet that was returned by getPacket() and that should now be 'filled' into the samplePacket
+     * @param samplePacket SamplePacket that should be filled with data from the packet
+     * @param window       window coefficients (length >= samplePacket.capacity())
+     * @return the number of samples filled into the samplePacket
+     */
+    protected int fillPacketIntoSamplePacketWindowed(byte[] packet, SamplePacket samplePacket, float[] window) {
+        int startIndex = samplePacket.size();
+        int count = Math.max(0, Math.min(packet.length / 2, samplePacket.capacity() - startIndex));
+        float[] re = samplePacket.re();
+        float[] im = samplePacket.im();
+        float[] table = lookupTable;
+        int offset = lookupOffset;
+        for (int j = startIndex, i = 0; j < startIndex + count; j++, i += 2) {
+            float w = window[j];
+            re[j] = w * table[(packet[i] + offset) & 0xff];
+            im[j] = w * table[(packet[i + 1] + offset) & 0xff];
+        }
+        samplePacket.setSize(startIndex + count);    // update the size of the sample packet
+        samplePacket.setSampleRate(sampleRate);      // update the sample rate
+        samplePacket.setFrequency(frequency);        // update the frequency
+        return count;
+    }
+
     public abstract int mixPacketIntoSamplePacket(byte[] packet, SamplePacket samplePacket, long channelFrequency);
 
-    protected abstract void generateLookupTable();
+    /**
+     * Same as mixPacketIntoSamplePacket(), but additionally low pass filters and decimates the mixed signal by 2
+     * (half band filter with the taps of HalfBandLowPassFilter N=12, unity gain). The packet is converted in chunks
+     * of CONVERT_CHUNK samples, the full rate packet is never stored. Every packet must contain an even number of samples.
+     *
+     * @param packet           packet that was returned by getPacket() and that should now be 'filled' into the samplePacket
+     * @param samplePacket     SamplePacket that should be filled with data from the packet (at sampleRate / 2)
+     * @param channelFrequency frequency to which the spectrum of the signal should be shifted
+     * @return the number of samples filled into the samplePacket
+     */
+    public int mixPacketIntoSamplePacketDecimated(byte[] packet, SamplePacket samplePacket, long channelFrequency) {
+        float[] table = lookupTable;
+        int offset = lookupOffset;
+        float[] x = convertRe, y = convertIm;
+        int count = 0;
+        // convert a chunk through the lookup table, then mix and filter it with the float kernel:
+        for (int i = 0; i + 3 < packet.length && samplePacket.size() < samplePacket.capacity(); ) {
+            int length = Math.min(CONVERT_CHUNK, (packet.length - i) / 4 * 2);
+            for (int j = 0; j < length; j++, i += 2) {
+                x[j] = table[(packet[i] + offset) & 0xff];
+                y[j] = table[(packet[i + 1] + offset) & 0xff];
+            }
+            count += mixSamplesIntoSamplePacketDecimated(x, y, length, samplePacket, channelFrequency);
+        }
+        return count;
+    }
+
+    /**
+     * Same as mixPacketIntoSamplePacketDecimated(), but for samples that were already converted to floats
+     * (used by converters without a lookup table). This is the fused mix + half band kernel, the byte path feeds it
+     * chunk by chunk through the lookup table, so both share the filter state and the oscillator phase.
+     *
+     * @param x                real parts of the converted samples
+     * @param y                imaginary parts of the converted samples
+     * @param length           number of samples in x and y (even)
+     * @param samplePacket     SamplePacket that should be filled with the samples (at sampleRate / 2)
+     * @param channelFrequency frequency to which the spectrum of the signal should be shifted
+     * @return the number of samples filled into the samplePacket
+     */
+    protected int mixSamplesIntoSamplePacketDecimated(float[] x, float[] y, int length, SamplePacket samplePacket, long channelFrequency) {
+        setMixFrequency(frequency - channelFrequency);    // only recalculates the phase increment of the oscillator
+
+        int capacity = samplePacket.capacity();
+        int indexOut = samplePacket.size();
+        float[] re = samplePacket.re();
+        float[] im = samplePacket.im();
+        float[] cos = Nco.getCosineTable();
+        float[] sin = Nco.getSineTable();
+        int phase = mixer.getPhase();
+        int increment = mixer.getPhaseIncrement();
+
+        // filter state in local variables:
+        float[] even = halfBandEven, odd = halfBandOdd;
+        float e1r = even[0], e2r = even[1], e3r = even[2], e4r = even[3], e5r = even[4];
+        float e1i = even[5], e2i = even[6], e3i = even[7], e4i = even[8], e5i = even[9];
+        float o1r = odd[0], o2r = odd[1], o3r = odd[2];
+        float o1i = odd[3], o2i = odd[4], o3i = odd[5];
+
+        for (int i = 0; i + 1 < length && indexOut < capacity; i += 2) {
+            // even sample: mix
+            int k = phase >>> Nco.INDEX_SHIFT;
+            float ar = x[i] * cos[k] - y[i] * sin[k];
+            float ai = y[i] * cos[k] + x[i] * sin[k];
+            phase += increment;
+            // odd sample: mix
+            k = phase >>> Nco.INDEX_SHIFT;
+            float br = x[i + 1] * cos[k] - y[i + 1] * sin[k];
+            float bi = y[i + 1] * cos[k] + x[i + 1] * sin[k];
+            phase += increment;
+
+            // half band output: symmetric pairs of the even samples + the odd sample in the middle (3 pairs ago)
+            re[indexOut] = HB_TAP0 * (ar + e5r) + HB_TAP1 * (e1r + e4r) + HB_TAP2 * (e2r + e3r) + 0.5f * o3r;
+            im[indexOut] = HB_TAP0 * (ai + e5i) + HB_TAP1 * (e1i + e4i) + HB_TAP2 * (e2i + e3i) + 0.5f * o3i;
+            indexOut++;
 
-    protected abstract void generateMixerLookupTable(int mixFrequency);
+            // shift the delay lines:
+            e5r = e4r; e4r = e3r; e3r = e2r; e2r = e1r; e1r = ar;
+            e5i = e4i; e4i = e3i; e3i = e2i; e2i = e1i; e1i = ai;
+            o3r = o2r; o2r = o1r; o1r = br;
+            o3i = o2i; o2i = o1i; o1i = bi;
+        }
+
+        even[0] = e1r; even[1] = e2r; even[2] = e3r; even[3] = e4r; even[4] = e5r;
+        even[5] = e1i; even[6] = e2i; even[7] = e3i; even[8] = e4i; even[9] = e5i;
+        odd[0] = o1r; odd[1] = o2r; odd[2] = o3r;
+        odd[3] = o1i; odd[4] = o2i; odd[5] = o3i;
+        mixer.setPhase(phase);
+        int count = indexOut - samplePacket.size();
+        samplePacket.setSize(indexOut);                    // 更新样本包的大小
+        samplePacket.setSampleRate(sampleRate / 2);        // 更新采样率
+        samplePacket.setFrequency(channelFrequency);       // 更新频率
+        return count;
+    }
+
+    protected abstract void generateLookupTable();
 
 
 }
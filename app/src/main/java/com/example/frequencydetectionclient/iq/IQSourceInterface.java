@@ -120,6 +120,25 @@ public interface IQSourceInterface {
 	 */
 	public void returnPacket(byte[] buffer);
 
+	/**
+	 * @return retune epoch of the source. It is incremented by every change of the frequency or sample rate.
+	 * Packets that were captured in an older epoch belong to the previous frequency and should be dropped.
+	 */
+	public int getRetuneEpoch();
+
+	/**
+	 * Sets the time after a retune during which getPacket() discards the received packets
+	 * (the tuner has not settled yet).
+	 *
+	 * @param settleTime	settle time in ms
+	 */
+	public void setSettleTime(int settleTime);
+
+	/**
+	 * @return settle time in ms
+	 */
+	public int getSettleTime();
+
 	/**
 	 * Start receiving samples.
 	 */
@@ -135,6 +154,8 @@ public interface IQSourceInterface {
 	 * in the SamplePacket are stored as signed double values, normalized between -1 and 1.
 	 * Note that samples are appended to the buffer starting at the index samplePacket.size().
 	 * If you want to overwrite, set the size to 0 first.
+	 * If samplePacket.getWindow() is not null, every sample is multiplied with the window coefficient
+	 * of its index in the samplePacket while it is converted.
 	 *
 	 * @param packet		packet that was returned by getPacket() and that should now be 'filled'
 	 *                      into the samplePacket.
@@ -158,6 +179,19 @@ public interface IQSourceInterface {
 	 */
 	public int mixPacketIntoSamplePacket(byte[] packet, SamplePacket samplePacket, long channelFrequency);
 
+	/**
+	 * Same as mixPacketIntoSamplePacket(), but the mixed signal is additionally low pass filtered and decimated
+	 * by 2 in the same pass (the SamplePacket will have half the sample rate of the source). Used for the
+	 * demodulation path, so that the full rate samples are never stored.
+	 *
+	 * @param packet			packet that was returned by getPacket() and that should now be 'filled'
+	 *                          into the samplePacket.
+	 * @param samplePacket		SamplePacket that should be filled with samples from the packet.
+	 * @param channelFrequency	frequency to which the spectrum of the signal should be shifted
+	 * @return the number of (decimated) samples filled into the samplePacket.
+	 */
+	public int mixPacketIntoSamplePacketDecimated(byte[] packet, SamplePacket samplePacket, long channelFrequency);
+
 	/**
 	 * Callback interface for asynchronous interactions with the source.
 	 */
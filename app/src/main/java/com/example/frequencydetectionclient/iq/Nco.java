@@ -0,0 +1,81 @@
+package com.example.frequencydetectionclient.iq;
+
+/**
+ * <p>
+ * Module:      Nco.java
+ * Description: 数控振荡器（NCO），用于混频。32位相位累加器（溢出回绕即为模2*PI），相位的高TABLE_BITS位索引一张
+ * 所有实例共享的正弦/余弦表。频率分辨率为 sampleRate / 2^32（20Msps时约0.005Hz），可以表示任意频率偏移；
+ * 改变频率只重新计算相位增量，不分配内存。相位截断产生的杂散约为 -6*TABLE_BITS = -72dBc（低于8位样本的动态范围）。
+ *
+ * 混频循环（每个样本成本固定）:
+ * <pre>
+ *     int phase = nco.getPhase(), increment = nco.getPhaseIncrement();
+ *     float[] cos = Nco.getCosineTable(), sin = Nco.getSineTable();
+ *     for (...) { int k = phase >>> Nco.INDEX_SHIFT; ... x * cos[k] ...; phase += increment; }
+ *     nco.setPhase(phase);
+ * </pre>
+ */
+public class Nco {
+    public static final int TABLE_BITS = 12;
+    public static final int TABLE_SIZE = 1 << TABLE_BITS;    // 4096 entries
+    public static final int INDEX_SHIFT = 32 - TABLE_BITS;   // phase >>> INDEX_SHIFT = table index
+    private static final float[] COSINE_TABLE = new float[TABLE_SIZE];
+    private static final float[] SINE_TABLE = new float[TABLE_SIZE];
+
+    static {
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            COSINE_TABLE[i] = (float) Math.cos(2 * Math.PI * i / TABLE_SIZE);
+            SINE_TABLE[i] = (float) Math.sin(2 * Math.PI * i / TABLE_SIZE);
+        }
+    }
+
+    private long frequency = 0;        // frequency of the oscillator in Hz (may be negative)
+    private int sampleRate = 0;
+    private int phaseIncrement = 0;    // 2^32 * frequency / sampleRate
+    private int phase = 0;             // 2^32 == 2*PI
+
+    /**
+     * Sets the frequency of the oscillator. The phase is kept (continuous phase on retune).
+     *
+     * @param frequency  frequency in Hz (negative frequencies are allowed)
+     * @param sampleRate sample rate in Sps
+     */
+    public void setFrequency(long frequency, int sampleRate) {
+        if (frequency == this.frequency && sampleRate == this.sampleRate)
+            return;
+        this.frequency = frequency;
+        this.sampleRate = sampleRate;
+        // the frequency is periodic in sampleRate; the cast to int wraps the increment modulo 2^32:
+        this.phaseIncrement = sampleRate > 0 ? (int) (long) Math.rint((double) frequency / sampleRate * 4294967296.0 % 4294967296.0) : 0;
+    }
+
+    public long getFrequency() {
+        return frequency;
+    }
+
+    public int getPhaseIncrement() {
+        return phaseIncrement;
+    }
+
+    public int getPhase() {
+        return phase;
+    }
+
+    public void setPhase(int phase) {
+        this.phase = phase;
+    }
+
+    /**
+     * @return shared cosine table with TABLE_SIZE entries (not a copy, do not modify)
+     */
+    public static float[] getCosineTable() {
+        return COSINE_TABLE;
+    }
+
+    /**
+     * @return shared sine table with TABLE_SIZE entries (not a copy, do not modify)
+     */
+    public static float[] getSineTable() {
+        return SINE_TABLE;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.frequencydetectionclient.iq;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Module:      RetuneGate.java
+ * Description: 重新调谐的纪元计数和稳定时间，供IQ源在getPacket()中丢弃调谐完成前和稳定时间内采集的数据包。
+ * 每次调谐纪元加1；调度器把纪元记入SamplePacket，纪元与源当前纪元不同的数据包属于上一个频点，不再处理。
+ * 一个数据包在到达时才能被看到，但它的第一个样本早了一个数据包的时长，所以丢弃截止时间是
+ * 调谐完成 + 稳定时间 + 一个数据包的时长。
+ *
+ * 用法（源内部）:
+ * <pre>
+ *     int epoch = gate.beginRetune();       // 调谐之前：纪元+1，从现在起丢弃所有数据包
+ *     device.setFrequency(f);
+ *     gate.endRetune(epoch, packetNanos);   // 调谐完成：稳定时间后重新放行（期间又开始了新的调谐则不放行）
+ *     ...
+ *     if (gate.isSettling()) { 丢弃数据包 }
+ * </pre>
+ */
+public class RetuneGate {
+    public static final int DEFAULT_SETTLE_TIME = 5;    // ms (PLL lock and USB transfers that were already in flight)
+
+    private final AtomicInteger epoch = new AtomicInteger(0);
+    private volatile long settleDeadline = 0;           // System.nanoTime() until which packets are discarded
+    private volatile int settleTime = DEFAULT_SETTLE_TIME;
+
+    /**
+     * Starts a retune: increments the epoch and discards all packets until endRetune() + settle time.
+     *
+     * @return the new epoch
+     */
+    public synchronized int beginRetune() {
+        settleDeadline = Long.MAX_VALUE;
+        return epoch.incrementAndGet();
+    }
+
+    /**
+     * The tuner is set to the new frequency. Packets that arrive within settle time + one packet duration are discarded.
+     * Ignored if another retune was started after the one with the given epoch (its tune is not done yet).
+     *
+     * @param epoch          epoch returned by the beginRetune() of this tune
+     * @param packetDuration duration of one packet in ns (packet size in samples / sample rate)
+     * @return false if the epoch is outdated and the gate stays closed
+     */
+    public synchronized boolean endRetune(int epoch, long packetDuration) {
+        if (epoch != this.epoch.get())
+            return false;
+        settleDeadline = System.nanoTime() + settleTime * 1000000L + packetDuration;
+        return true;
+    }
+
+    /**
+     * @return true if a packet that arrives now was (partly) captured before the tuner settled and must be discarded
+     */
+    public boolean isSettling() {
+        long deadline = settleDeadline;
+        return deadline == Long.MAX_VALUE || System.nanoTime() - deadline < 0;
+    }
+
+    /**
+     * @return current retune epoch (incremented by every beginRetune())
+     */
+    public int getEpoch() {
+        return epoch.get();
+    }
+
+    public int getSettleTime() {
+        return settleTime;
+    }
+
+    /**
+     * @param settleTime time (ms) after the tuner was set during which packets are discarded (>= 0)
+     */
+    public void setSettleTime(int settleTime) {
+        this.settleTime = Math.max(0, settleTime);
+    }
+
+    /**
+     * @param packetSize size of a packet in samples
+     * @param sampleRate sample rate in Sps
+     * @return duration of one packet in ns
+     */
+    public static long getPacketDuration(int packetSize, int sampleRate) {
+        return sampleRate > 0 ? packetSize * 1000000000L / sampleRate : 0;
+    }
+}
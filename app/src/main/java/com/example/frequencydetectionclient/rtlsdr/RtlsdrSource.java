@@ -5,6 +5,7 @@ import android.content.Context;
 import com.example.frequencydetectionclient.bean.SamplePacket;
 import com.example.frequencydetectionclient.iq.IQConverter;
 import com.example.frequencydetectionclient.iq.IQSourceInterface;
+import com.example.frequencydetectionclient.iq.RetuneGate;
 import com.example.frequencydetectionclient.utils.Unsigned8BitIQConverter;
 import com.orhanobut.logger.Logger;
 
@@ -74,6 +75,8 @@ public class RtlsdrSource implements IQSourceInterface {
     private int tuner = RTLSDR_TUNER_UNKNOWN;
     private String ipAddress = "127.0.0.1";
     private int port = 1234;
+    // 不能用SpscQueue：flushQueue()在调用setFrequency()的线程中也从queue取包、向returnQueue还包，
+    // ReceiverThread结束时也会向returnQueue还包（多个生产者/消费者）
     private ArrayBlockingQueue<byte[]> queue = null;
     private ArrayBlockingQueue<byte[]> returnQueue = null;
     /**
@@ -91,6 +94,9 @@ public class RtlsdrSource implements IQSourceInterface {
     private boolean automaticGainControl = false;
     private int frequencyOffset = 0;    //根据外部上/下转换器虚拟地偏移频率
     private IQConverter iqConverter;
+    // 调谐纪元和稳定时间。rtl_tcp的命令是异步的：beginRetune()在setFrequency()/setSampleRate()中，
+    // endRetune()在CommandThread把命令写入socket之后
+    private final RetuneGate retuneGate = new RetuneGate();
 
     private static final int QUEUE_SIZE = 20;
     /**
@@ -229,8 +235,10 @@ public class RtlsdrSource implements IQSourceInterface {
                 return;
             }
 
-            if (!commandThread.executeCommand(commandToByteArray(RTL_TCP_COMMAND_SET_SAMPLERATE, sampleRate))) {
+            int epoch = retuneGate.beginRetune();
+            if (!commandThread.executeCommand(commandToByteArray(RTL_TCP_COMMAND_SET_SAMPLERATE, sampleRate), epoch)) {
                 Logger.e("setSampleRate: failed.");
+                retuneGate.endRetune(epoch, 0);
             }
         }
 
@@ -257,7 +265,8 @@ public class RtlsdrSource implements IQSourceInterface {
                 return;
             }
           //  Logger.i("frequency:" + frequency);
-            commandThread.executeFrequencyChangeCommand(commandToByteArray(RTL_TCP_COMMAND_SET_FREQUENCY, (int) actualSourceFrequency));
+            int epoch = retuneGate.beginRetune();
+            commandThread.executeFrequencyChangeCommand(commandToByteArray(RTL_TCP_COMMAND_SET_FREQUENCY, (int) actualSourceFrequency), epoch);
         }
 
         // Flush the queue:
@@ -405,11 +414,33 @@ public class RtlsdrSource implements IQSourceInterface {
         return PACKET_SIZE;
     }
 
+    @Override
+    public int getRetuneEpoch() {
+        return retuneGate.getEpoch();
+    }
+
+    @Override
+    public void setSettleTime(int settleTime) {
+        retuneGate.setSettleTime(settleTime);
+    }
+
+    @Override
+    public int getSettleTime() {
+        return retuneGate.getSettleTime();
+    }
+
     @Override
     public byte[] getPacket(int timeout) {
         if (queue != null) {
             try {
-                return queue.poll(timeout, TimeUnit.MILLISECONDS);
+                long deadline = System.currentTimeMillis() + timeout;
+                byte[] packet = queue.poll(timeout, TimeUnit.MILLISECONDS);
+                // 调谐完成和稳定时间之前采集的数据包直接还给returnQueue:
+                while (packet != null && retuneGate.isSettling()) {
+                    returnPacket(packet);
+                    packet = queue.poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                }
+                return packet;
             } catch (InterruptedException e) {
                 Logger.e("getPacket: Interrupted while polling packet from queue: " + e.getMessage());
             }
@@ -484,6 +515,11 @@ public class RtlsdrSource implements IQSourceInterface {
         return this.iqConverter.mixPacketIntoSamplePacket(packet, samplePacket, channelFrequency);
     }
 
+    @Override
+    public int mixPacketIntoSamplePacketDecimated(byte[] packet, SamplePacket samplePacket, long channelFrequency) {
+        return this.iqConverter.mixPacketIntoSamplePacketDecimated(packet, samplePacket, channelFrequency);
+    }
+
     /**
      * 将清空队列
      */
@@ -616,20 +652,35 @@ public class RtlsdrSource implements IQSourceInterface {
         }
     }
 
+    /**
+     * 排队的命令和它所属的调谐纪元（NO_EPOCH：不是调谐命令）。CommandThread写出调谐命令后
+     * 用这个纪元结束调谐，所以排队期间开始的更新的调谐不会被提前放行
+     */
+    private static final class QueuedCommand {
+        static final int NO_EPOCH = -1;
+        final byte[] command;
+        final int epoch;
+
+        QueuedCommand(byte[] command, int epoch) {
+            this.command = command;
+            this.epoch = epoch;
+        }
+    }
+
     /**
      * 该线程将启动与rtl_tcp实例的连接，然后向它命令可以排队等待其他线程执行
      */
     private class CommandThread extends Thread {
         public String threadName = null;    // 我们保存线程名称以在close（）方法中进行检查
-        private ArrayBlockingQueue<byte[]> commandQueue = null;
+        private ArrayBlockingQueue<QueuedCommand> commandQueue = null;
         private static final int COMMAND_QUEUE_SIZE = 20;
-        private ArrayBlockingQueue<byte[]> frequencyChangeCommandQueue = null;    // 频率更改的单独队列（解决方案）
+        private ArrayBlockingQueue<QueuedCommand> frequencyChangeCommandQueue = null;    // 频率更改的单独队列（解决方案）
         private boolean stopRequested = false;
 
         public CommandThread() {
             // Create command queue:
-            this.commandQueue = new ArrayBlockingQueue<byte[]>(COMMAND_QUEUE_SIZE);
-            this.frequencyChangeCommandQueue = new ArrayBlockingQueue<byte[]>(1);    // work-around
+            this.commandQueue = new ArrayBlockingQueue<QueuedCommand>(COMMAND_QUEUE_SIZE);
+            this.frequencyChangeCommandQueue = new ArrayBlockingQueue<QueuedCommand>(1);    // work-around
         }
 
         public void stopCommandThread() {
@@ -643,8 +694,19 @@ public class RtlsdrSource implements IQSourceInterface {
          * @return true 如果命令已排定；
          */
         public boolean executeCommand(byte[] command) {
+            return executeCommand(command, QueuedCommand.NO_EPOCH);
+        }
+
+        /**
+         * 将调度命令（将其放入命令队列）。命令写出后以epoch结束调谐（RetuneGate.endRetune()）
+         *
+         * @param command 5字节命令数组（请参阅rtl_tcp文档）
+         * @param epoch   RetuneGate.beginRetune()返回的纪元，或QueuedCommand.NO_EPOCH
+         * @return true 如果命令已排定；
+         */
+        public boolean executeCommand(byte[] command, int epoch) {
             Logger.d("executeCommand: Queuing command: " + COMMAND_NAME[command[0]]);
-            if (commandQueue.offer(command))
+            if (commandQueue.offer(new QueuedCommand(command, epoch)))
                 return true;
 
             // Queue is full
@@ -662,11 +724,12 @@ public class RtlsdrSource implements IQSourceInterface {
          * 在执行频率改变命令以防止高速率的命令之后。
          *
          * @param command 5 byte command array (see rtl_tcp documentation)
+         * @param epoch   RetuneGate.beginRetune()返回的纪元
          */
-        public void executeFrequencyChangeCommand(byte[] command) {
+        public void executeFrequencyChangeCommand(byte[] command, int epoch) {
             // 从队列中删除任何等待频率更改命令(不再使用):
             frequencyChangeCommandQueue.poll();
-            frequencyChangeCommandQueue.offer(command);    // will always work
+            frequencyChangeCommandQueue.offer(new QueuedCommand(command, epoch));    // will always work
         }
 
         /**
@@ -796,6 +859,7 @@ public class RtlsdrSource implements IQSourceInterface {
             Logger.i("CommandThread started (Thread: " + this.getName() + ")");
             threadName = this.getName();
             byte[] nextCommand = null;
+            QueuedCommand queued = null;
 
             // Perfom "device open". This means connect to the rtl_tcp instance; get the information
             if (connect(10000)) {    // 10 seconds for the user to accept permission request
@@ -813,18 +877,22 @@ public class RtlsdrSource implements IQSourceInterface {
             // 从队列中轮询命令并通过socket循环发送它们:
             while (!stopRequested && outputStream != null) {
                 try {
-                    nextCommand = commandQueue.poll(100, TimeUnit.MILLISECONDS);
+                    queued = commandQueue.poll(100, TimeUnit.MILLISECONDS);
 
                     // 解决方法：
                     // 频率变化经常发生，如果向驱动发送了太多这样的命令它将滞后并最终崩溃。为了防止这种情况，我们有一个单独的commandQueue，仅用于频率变化。
                     // 此队列的大小为1，executeFrequencyChangeCommand（）将确保它总是包含最新的频率改变命令。命令线程将始终休眠100毫秒在执行频率改变命令以防止高速率的命令之后。
-                    if (nextCommand == null)
-                        nextCommand = frequencyChangeCommandQueue.poll(); // 检查频率变化命令：
+                    if (queued == null)
+                        queued = frequencyChangeCommandQueue.poll(); // 检查频率变化命令：
 
-                    if (nextCommand == null)
+                    if (queued == null)
                         continue;
+                    nextCommand = queued.command;
                     outputStream.write(nextCommand);
                     Logger.d("CommandThread: Command was sent: " + COMMAND_NAME[nextCommand[0]]);
+                    // 调谐命令已发出：稳定时间后重新放行数据包（之后又开始了新的调谐时纪元已过期，endRetune()不放行）
+                    if (queued.epoch != QueuedCommand.NO_EPOCH)
+                        retuneGate.endRetune(queued.epoch, RetuneGate.getPacketDuration(PACKET_SIZE / 2, sampleRate));
                 } catch (IOException e) {
                     Logger.e("CommandThread: Error while sending command (" + COMMAND_NAME[nextCommand[0]] + "): " + e.getMessage());
                     reportError("Error while sending command: " + COMMAND_NAME[nextCommand[0]]);
@@ -4,7 +4,7 @@ import android.os.Build
 import com.example.frequencydetectionclient.MainActivity.Companion.END_FREQUENCY
 import com.example.frequencydetectionclient.MainActivity.Companion.SAMPLE_RATE
 import com.example.frequencydetectionclient.MainActivity.Companion.START_FREQUENCY
-import com.example.frequencydetectionclient.MainActivity.Companion.collectQueue
+import com.example.frequencydetectionclient.MainActivity.Companion.panorama
 import com.example.frequencydetectionclient.MyApp
 import com.example.frequencydetectionclient.bean.FrequencyData
 import com.example.frequencydetectionclient.bean.MaxFrequency
@@ -14,17 +14,21 @@ import com.example.frequencydetectionclient.iq.IQSourceInterface
 import com.example.frequencydetectionclient.manager.SpManager
 import com.example.frequencydetectionclient.utils.FFT
 import com.example.frequencydetectionclient.utils.FileUtil
+import com.example.frequencydetectionclient.utils.GoertzelBank
+import com.example.frequencydetectionclient.utils.HopScheduler
 import com.example.frequencydetectionclient.utils.IOUtil
+import com.example.frequencydetectionclient.utils.PolyphaseChannelizer
+import com.example.frequencydetectionclient.utils.SamplePacketPool
+import com.example.frequencydetectionclient.utils.SpscQueue
+import com.example.frequencydetectionclient.utils.WelchEstimator
+import com.example.frequencydetectionclient.utils.ZoomFFT
 import com.example.frequencydetectionclient.view.AnalyzerSurface
 import com.orhanobut.logger.Logger
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
-import java.util.concurrent.ArrayBlockingQueue
 import java.util.concurrent.TimeUnit
 import kotlin.math.abs
 import kotlin.math.ln
-import kotlin.math.log10
-import kotlin.math.sqrt
 
 
 /**
@@ -34,8 +38,8 @@ import kotlin.math.sqrt
 class AnalyzerProcessingLoop(
     private val view: AnalyzerSurface,
     fftSize: Int,
-    inputQueue: ArrayBlockingQueue<SamplePacket>?,
-    returnQueue: ArrayBlockingQueue<SamplePacket>?,
+    inputQueue: SpscQueue<SamplePacket>?,
+    returnQueue: SpscQueue<SamplePacket>?,
     iqSourceInterface: IQSourceInterface
 ) : Thread() {
     private var fftSize = 0 // FFT的大小   默认 4096
@@ -47,11 +51,25 @@ class AnalyzerProcessingLoop(
     private var stopRequested = true //设置为true时将停止线程
     private var mag: FloatArray? = null // 频谱的幅值
     private var fftBlock: FFT? = null
-    private var inputQueue: ArrayBlockingQueue<SamplePacket>? = null // 传递示例数据包的队列
-    private var returnQueue: ArrayBlockingQueue<SamplePacket>? = null // 队列以返回未使用的缓冲区
+    private var welch: WelchEstimator? = null // Welch平均（null表示只用每个hop的第一个FFT块）
+    private var channelizer: PolyphaseChannelizer? = null // 多相滤波器组前端（null表示用普通加窗FFT）
+    private val pool = SamplePacketPool.getInstance()
+    private var fillWindow: FloatArray? = null // 调度器填充样本时直接乘上的窗函数（null表示传递原始样本）
+    private var inputQueue: SpscQueue<SamplePacket>? = null // 传递示例数据包的队列（只有本线程取包）
+    private var returnQueue: SpscQueue<SamplePacket>? = null // 队列以返回未使用的缓冲区（只有本线程还包）
 
     var mIQSourceInterface: IQSourceInterface? = null                // 对RFControlInterface处理程序的引用
 
+    // 对调度器的引用（固定频率模式下需要让它提供更长的连续样本）
+    var scheduler: Scheduler? = null
+
+    // 流水线扫频：在处理当前hop之前就调到下一个频点（本线程中所有的调谐都经过它）
+    private val sweep = SweepController(iqSourceInterface)
+
+    // 全频段扫描（scanMode 0）的hop优先级调度：可疑的频点在一轮中多访问几次（null表示按顺序扫频）
+    private var hopScheduler: HopScheduler? = null
+    private var adaptiveRevisit = true
+
     // 过滤Wi-Fi
     private var filterWifiEnable = false
 
@@ -82,6 +100,7 @@ class AnalyzerProcessingLoop(
      */
     override fun start() {
         stopRequested = false
+        sweep.start()
         super.start()
     }
 
@@ -162,11 +181,72 @@ class AnalyzerProcessingLoop(
         mIQSourceInterface = iqSourceInterface
     }
 
+    /**
+     * 选择FFT内核（FFT.ENGINE_RADIX2 / ENGINE_RADIX4 / ENGINE_SPLIT_RADIX）
+     */
+    fun setFftEngine(engineType: Int) {
+        fftBlock?.setEngine(engineType)
+        Logger.i("FFT内核：$engineType")
+    }
+
+    /**
+     * 选择FFT窗函数（FFT.WINDOW_BLACKMAN / WINDOW_HANN / WINDOW_BLACKMAN_HARRIS / WINDOW_FLAT_TOP）
+     * 输出电平按窗函数的相干增益校正到Blackman窗，所以已有的检测阈值仍然有效
+     */
+    fun setFftWindow(windowType: Int) {
+        fftBlock?.setWindowType(windowType)
+        Logger.i("FFT窗函数：$windowType")
+    }
+
+    /**
+     * 设置Welch平均：每个hop的样本分成segments个重叠overlapPercent%的分段，加窗FFT后功率取平均。
+     * segments <= 1 时关闭。Scheduler的数据包容量必须是 WelchEstimator.getRequiredSamples()
+     */
+    fun setWelch(segments: Int, overlapPercent: Int) {
+        welch = if (segments > 1) WelchEstimator(fftBlock, segments, overlapPercent) else null
+        Logger.i("Welch平均：segments=$segments，overlap=$overlapPercent%")
+    }
+
+    /**
+     * 选择频谱前端：tapsPerBranch >= 2 时使用多相滤波器组信道化器（每个分支tapsPerBranch个抽头），否则用普通加窗FFT。
+     * Scheduler的数据包容量至少要是 PolyphaseChannelizer.getRequiredSamples()
+     */
+    fun setChannelizer(tapsPerBranch: Int) {
+        channelizer = if (tapsPerBranch >= 2) PolyphaseChannelizer(fftBlock, tapsPerBranch) else null
+        Logger.i("多相滤波器组：tapsPerBranch=$tapsPerBranch")
+    }
+
+    /**
+     * 全频段扫描时是否按优先级安排频点：最近报警或者电平波动大的频点在一轮扫频中多访问几次，
+     * 每个频点最多隔两轮的时间一定会被访问。关闭时按从低到高的顺序扫频
+     */
+    fun setAdaptiveRevisit(enable: Boolean) {
+        adaptiveRevisit = enable
+        Logger.i("自适应重访：$enable")
+    }
+
     /**
      * 设置工作模式
      */
     fun setWorkStatus(status: Int) {
+        val previous = workStatus
         workStatus = status
+        sweep.reset()
+        if (status == WORK_STATUS_COLLECT) {
+            // 重新采集：基线从头开始平均
+            panorama.clear()
+            collectCount = 0
+        }
+        resetZoom()
+        if (status == WORK_STATUS_MONITOR && alarmFre > 0
+            && monitor?.bank?.frequencies?.contains(alarmFre.toLong()) != true) {
+            // 监视最后找到的异常频率（ScanDialog的"监视"按钮）
+            setMonitorFrequencies(longArrayOf(alarmFre.toLong()))
+        }
+        if (status == WORK_STATUS_SCAN && previous == WORK_STATUS_MONITOR) {
+            // 从监视回到扫描：从起始频率重新扫频
+            sweep.retune(START_FREQUENCY)
+        }
         initPara()
         Logger.i("工作状态是：$workStatus")
     }
@@ -191,6 +271,7 @@ class AnalyzerProcessingLoop(
         while (!stopRequested) {
             // store the current timestamp
             startTime = System.currentTimeMillis()
+            updateFillWindow()
 
             // 从队列中获取下一个样本:
             var samples: SamplePacket?
@@ -200,18 +281,42 @@ class AnalyzerProcessingLoop(
                     Logger.d("run: Timeout while waiting on input data. skip.")
                     continue
                 }
+                pool.hold(samples, STAGE)
             } catch (e: InterruptedException) {
                 Logger.e("run: Interrupted while polling from input queue. stop.")
                 stopLoop()
                 break
             }
+            if (samples.window != null && samples.window !== fillWindow) {
+                // 按旧的设置加过窗的样本（切换工作模式/窗函数时还在队列中），不能再用于需要原始样本的处理
+                returnSamples(samples)
+                continue
+            }
+            if (samples.epoch != (mIQSourceInterface?.retuneEpoch ?: samples.epoch)) {
+                // 调谐之前采集的样本（源已经切换到下一个频点）：samples.frequency已是新频率，
+                // 结果会以错误的频率记入全景频谱，丢弃
+                returnSamples(samples)
+                continue
+            }
+            if (!advanceSweep(samples)) {
+                // 扫频已经离开这个频点（重复的hop），丢弃
+                returnSamples(samples)
+                continue
+            }
             frequency = samples.frequency
             sampleRate = samples.sampleRate
-            preFrequency = if (preFrequency == 0L) frequency else preFrequency
+            if (workStatus == WORK_STATUS_MONITOR) {
+                // 监视模式：只计算被监视的几个频率（Goertzel），不做完整的FFT
+                doMonitoring(samples)
+                returnSamples(samples)
+                continue
+            }
+            // 固定频率模式：在原始样本上做Zoom-FFT（必须在样本返回缓冲池之前）
+            zoomValid = workStatus == WORK_STATUS_SCAN && scanMode == 2 && doZoom(samples)
             // 进行信号处理:
             doProcessing(samples)
             // 将样品返回缓冲池
-            returnQueue!!.offer(samples)
+            returnSamples(samples)
             when (workStatus) {
                 WORK_STATUS_COLLECT -> {
                     doCollecting(mag!!, frequency, sampleRate)
@@ -259,12 +364,18 @@ class AnalyzerProcessingLoop(
             }
         }
         stopRequested = true
+        // 等控制线程结束，它不会在处理循环停止后再调谐源:
+        sweep.stopController()
+        try {
+            sweep.join()
+        } catch (e: InterruptedException) {
+            Logger.e("run: Interrupted while waiting for the SweepController.")
+        }
         Logger.i(
             "Processing loop stopped. (Thread: " + this.name + ")"
         )
     }
 
-    private var preFrequency: Long = 0  //上一次的频率
     private var startTime: Long = 0
     private var endTime: Long = 0
 
@@ -272,14 +383,47 @@ class AnalyzerProcessingLoop(
     private var perHzData = 4096f / SAMPLE_RATE
     private var collectCount = 0
 
-    private var avMags = mutableListOf<MutableMap<Long, FloatArray>>()
+    // 采集时写入全景频谱的hop频谱（无效值已替换）
+    private var collectMag = FloatArray(0)
 
 
+    /**
+     * 流水线扫频：当前hop的样本已经采集完，在FFT和检测之前就让SweepController调到下一个频点，
+     * 下一个频点的调谐和稳定时间与当前hop的处理重叠。一轮扫频结束时上报耗时。
+     * @return false 如果样本属于扫频已经离开的频点，应丢弃
+     */
+    private fun advanceSweep(samples: SamplePacket): Boolean {
+        val end = when {
+            workStatus == WORK_STATUS_COLLECT -> END_FREQUENCY
+            workStatus == WORK_STATUS_SCAN && scanStatus == ScanDialog.SCAN_STATUS_PAUSE -> return true  // 暂停：停在当前频点
+            workStatus == WORK_STATUS_SCAN && scanMode == 0 -> END_FREQUENCY
+            workStatus == WORK_STATUS_SCAN && scanMode == 1 -> LOW_SCAN_END_FREQUENCY
+            else -> return true     // 不扫频
+        }
+        val sweepCount = sweep.sweepCount
+        val step = samples.sampleRate.toLong()
+        val captured = if (adaptiveRevisit && end == END_FREQUENCY && workStatus == WORK_STATUS_SCAN && step > 0) {
+            val hops = hopScheduler?.takeIf { it.matches(START_FREQUENCY, end, step) }
+                ?: HopScheduler(START_FREQUENCY, end, step).also { hopScheduler = it }
+            sweep.onHopCaptured(samples.frequency, hops)
+        } else {
+            sweep.onHopCaptured(samples.frequency, step, START_FREQUENCY, end)
+        }
+        if (!captured) {
+            return false
+        }
+        if (sweep.sweepCount != sweepCount) {
+            MyApp.appViewModel.sweepTimeData.postValue(sweep.lastSweepTime)
+        }
+        return true
+    }
+
     /**
      * 采集周围环境的
      */
     private fun doCollecting(mag: FloatArray, frequency: Long, rate: Int) {
-        val curMag = FloatArray(fftSize)
+        if (collectMag.size != mag.size) collectMag = FloatArray(mag.size)
+        val curMag = collectMag
         for (i in mag.indices) {
             if (mag[i] < -999) {
                 curMag[i] = -20f
@@ -287,46 +431,22 @@ class AnalyzerProcessingLoop(
                 curMag[i] = mag[i]
             }
         }
-        collectQueue[frequency] = curMag
+        // 拼接进全景频谱，每个bin对所有采集轮次取平均（相邻hop间隔等于采样率，不需要裁剪重叠）
+        panorama.accumulate(frequency, rate, curMag, rate.toLong())
         Logger.i("-----$frequency,$collectCount")
         if (frequency == START_FREQUENCY) {
             startTime = System.currentTimeMillis()
             Logger.i("扫描起点：$START_FREQUENCY,$collectCount")
         }
+        // 下一个频点已经由advanceSweep()调好了，这里只处理一轮结束
         val newFre = frequency + rate
-        if (newFre <= END_FREQUENCY) {
-            if (newFre != preFrequency) {
-                preFrequency = newFre
-                mIQSourceInterface?.frequency = newFre
-            }
-        } else {
+        if (newFre > END_FREQUENCY) {
             collectCount++
-            avMags.add(collectQueue)
             endTime = System.currentTimeMillis()
             Logger.i("跑完3Ghz总耗时:${endTime - startTime}")
-            preFrequency = START_FREQUENCY
-            mIQSourceInterface?.frequency = START_FREQUENCY
             MyApp.appViewModel.collectingProcessData.postValue(collectCount * 10)
             if (collectCount == 10) {
-                for ((k, v) in collectQueue) {
-                    var avMag = FloatArray(fftSize)
-                    var frequency = k
-                    for (j in 0 until fftSize) {
-                        var db = 0f
-                        var count = 0
-                        for (i in 0 until avMags.size) {
-                            val curCollectMap = avMags[i]
-                            val curMag = curCollectMap[frequency]
-                            curMag?.let {
-                                count++
-                                db += it[j]
-                            }
-                        }
-                        // Logger.i("total:$db,$frequency")
-                        avMag[j] = db / count
-                    }
-                    collectQueue[frequency] = avMag
-                }
+                // 10轮的平均值已经在全景频谱中（accumulate()）
                 collectCount = 0
                 workStatus = WORK_STATUS_ERROR
                 MyApp.appViewModel.workStatusData.postValue(workStatus)
@@ -345,21 +465,19 @@ class AnalyzerProcessingLoop(
      * 进行扫频操作，与之前保存的进行对比
      */
     private fun doScanning(mag: FloatArray, frequency: Long, rate: Int) {
-        if (frequency == START_FREQUENCY) {
-            startTime = System.currentTimeMillis()
-        }
-        val newFre = frequency + rate
         //scanningMap[frequency] = mag
         val maxFrequency = findMaxByFor(mag)
-        val mag = collectQueue[frequency]
         val maxValue = maxFrequency.maxValue
         val maxIndex = maxFrequency.maxIndex
+        // 采集的基线：全景频谱中同一绝对频率的值（NaN表示这个频率没有采集过）
+        val perValue = panorama.get(frequency, rate, mag.size, maxIndex)
         if (scanStatus == ScanDialog.SCAN_STATUS_PAUSE) {
             return
         }
-        if (mag != null) {
+        // 这个hop是否真的报了警（发出了scanMsgData，被过滤的信号不算）
+        var alarmed = false
+        if (!perValue.isNaN()) {
             if (maxIndex < mag.size - 1) {
-                val perValue = mag[maxIndex]
                 if (perValue < -999) {
                     Logger.d("perMaxValue:$perValue,maxIndex:$maxIndex,frequency:$frequency")
                 } else if (perValue + 12 < maxValue) {
@@ -371,76 +489,90 @@ class AnalyzerProcessingLoop(
                         val msg = "700段上行异常信号：$abnormalFre Mhz,最大信号值：$maxValue,采集平均信号值$perValue"
                         Logger.i("700段上行异常信号：$abnormalFre,$maxValue,$perValue,$maxIndex")
                         MyApp.appViewModel.scanMsgData.postValue(msg)
+                        alarmed = true
                     } else if (abnormalFre > 758 && abnormalFre < 788) {
                         if (!filterStationEnable) {
                             val msg = "基站下行信号：$abnormalFre Mhz,最大信号值：$maxValue,采集平均信号值$perValue"
                             MyApp.appViewModel.scanMsgData.postValue(msg)
+                            alarmed = true
                         }
                         Logger.i("基站下行信号：$abnormalFre,$maxValue,$perValue,$maxIndex")
                     } else if (abnormalFre > 823 && abnormalFre < 838) {
                         // 850mhz 上行 825-835mhz  870-880mhz
                         val msg = "850段上行异常信号：$abnormalFre Mhz,最大信号值：$maxValue,采集平均信号值$perValue"
                         MyApp.appViewModel.scanMsgData.postValue(msg)
+                        alarmed = true
                         Logger.i("850段上行异常信号：$abnormalFre,$maxValue,$perValue,$maxIndex")
                     } else if (abnormalFre > 870 && abnormalFre < 880) {
                         if (!filterStationEnable) {
                             val msg = "基站下行信号：$abnormalFre Mhz,最大信号值：$maxValue,采集平均信号值$perValue"
                             MyApp.appViewModel.scanMsgData.postValue(msg)
+                            alarmed = true
                         }
                         Logger.i("基站下行信号：$abnormalFre,$maxValue,$perValue,$maxIndex")
                     } else if (abnormalFre > 885 && abnormalFre < 916) {
                         // 889_904_915 mhz 移动_联通 上行
                         val msg = "900段上行异常信号：$abnormalFre Mhz,最大信号值：$maxValue,采集平均信号值$perValue"
                         MyApp.appViewModel.scanMsgData.postValue(msg)
+                        alarmed = true
                         Logger.i("900段上行异常信号：$abnormalFre,$maxValue,$perValue,$maxIndex")
                     } else if (abnormalFre > 934 && abnormalFre < 960) {
                         if (!filterStationEnable) {
                             val msg = "基站下行信号：$abnormalFre Mhz,最大信号值：$maxValue,采集平均信号值$perValue"
                             MyApp.appViewModel.scanMsgData.postValue(msg)
+                            alarmed = true
                         }
                         Logger.i("基站下行信号：$abnormalFre,$maxValue,$perValue,$maxIndex")
                     } else if (abnormalFre > 1707 && abnormalFre < 1788) {
                         // 1710_1735_1765_1785  移动_联通_电信
                         val msg = "1800段上行异常信号：$abnormalFre Mhz,最大信号值：$maxValue,采集平均信号值$perValue"
                         MyApp.appViewModel.scanMsgData.postValue(msg)
+                        alarmed = true
                         Logger.i("1800段上行异常信号：$abnormalFre,$maxValue,$perValue,$maxIndex")
                     } else if (abnormalFre > 1805 && abnormalFre < 1880) {
                         if (!filterStationEnable) {
                             val msg = "基站下行信号：$abnormalFre Mhz,最大信号值：$maxValue,采集平均信号值$perValue"
                             MyApp.appViewModel.scanMsgData.postValue(msg)
+                            alarmed = true
                         }
                         Logger.i("基站下行信号：$abnormalFre,$maxValue,$perValue,$maxIndex")
                     } else if (abnormalFre > 2010 && abnormalFre < 2025) {
                         val msg = "2000段上行异常信号：$abnormalFre Mhz,最大信号值：$maxValue,采集平均信号值$perValue"
                         MyApp.appViewModel.scanMsgData.postValue(msg)
+                        alarmed = true
                         Logger.i("2000段上行异常信号：$abnormalFre,$maxValue,$perValue,$maxIndex")
                     } else if (abnormalFre > 1880 && abnormalFre < 1965) {
                         // 1880_1920_1940_1965 上行信号
                         val msg = "1.9G上行异常信号：$abnormalFre Mhz,最大信号值：$maxValue,采集平均信号值$perValue"
                         MyApp.appViewModel.scanMsgData.postValue(msg)
+                        alarmed = true
                         Logger.i("1.9G上行异常信号：$abnormalFre,$maxValue,$perValue,$maxIndex")
                     } else if (abnormalFre > 2110 && abnormalFre < 2155) {
                         if (!filterStationEnable) {
                             val msg = "基站下行信号：$abnormalFre Mhz,最大信号值：$maxValue,采集平均信号值$perValue"
                             MyApp.appViewModel.scanMsgData.postValue(msg)
+                            alarmed = true
                         }
                         Logger.i("基站下行信号：$abnormalFre,$maxValue,$perValue,$maxIndex")
                     } else if (abnormalFre > 2297 && abnormalFre < 2367) {
                         // 2300_2320_2370
                         val msg = "2.3G异常信号：$abnormalFre Mhz,最大信号值：$maxValue,采集平均信号值$perValue"
                         MyApp.appViewModel.scanMsgData.postValue(msg)
+                        alarmed = true
                         Logger.i("2.3G异常信号：$abnormalFre,$maxValue,$perValue,$maxIndex")
                     } else if (abnormalFre > 2512 && abnormalFre < 2678) {
                         if (!filterOtherEnable) {
                             // 2515_2675
                             val msg = "2.6G异常信号：$abnormalFre Mhz,最大信号值：$maxValue,采集平均信号值$perValue"
                             MyApp.appViewModel.scanMsgData.postValue(msg)
+                            alarmed = true
                         }
                         Logger.d("2.6G异常信号：$abnormalFre,$maxValue,$perValue,$maxIndex,$filterOtherEnable")
                     } else if (abnormalFre > 2397 && abnormalFre < 2488) {
                         if (!filterWifiEnable) {
                             val msg = "wifi2.4G信号：$abnormalFre Mhz,最大信号值：$maxValue,采集平均信号值$perValue"
                             MyApp.appViewModel.scanMsgData.postValue(msg)
+                            alarmed = true
                         }
                         Logger.d("wifi信号：$frequency,$maxValue,$perValue,$maxIndex,${abnormalFre} mhz，$filterWifiEnable")
                     } else if (abnormalFre < 700) {
@@ -448,16 +580,19 @@ class AnalyzerProcessingLoop(
                             val msg =
                                 "疑似对讲机异常信号：$abnormalFre Mhz,最大信号值：$maxValue,采集平均信号值$perValue"
                             MyApp.appViewModel.scanMsgData.postValue(msg)
+                            alarmed = true
                         }
                         MyApp.appViewModel.demodulationEnableData.postValue(true)
                         Logger.i("疑似对讲机异常信号：${abnormalFre} mhz,$maxValue,$perValue,$maxIndex,${frequency / 1000 / 1000}")
                         scanMode = 1
-                        mIQSourceInterface?.frequency = START_FREQUENCY
+                        sweep.retune(START_FREQUENCY)
+                        reportHop(frequency, maxValue, perValue, alarmed)
                         return
                     } else {
                         if (!filterDisorderEnable) {
                             val msg = "其他异常信号：$abnormalFre Mhz,$maxValue,$perValue"
                             MyApp.appViewModel.scanMsgData.postValue(msg)
+                            alarmed = true
                         }
                         Logger.d("其他异常信号：${frequency / 1000 / 1000},$maxValue,$perValue,$maxIndex,${abnormalFre} mhz")
                     }
@@ -466,19 +601,16 @@ class AnalyzerProcessingLoop(
                 }
             }
         }
-        if (newFre <= END_FREQUENCY) {
-            if (newFre != preFrequency) {
-                preFrequency = newFre
-                mIQSourceInterface?.frequency = newFre
-            }
-        } else {
-            endTime = System.currentTimeMillis()
-            Logger.d("scanning time :${endTime - startTime}")
-            //workStatus = 4
-            preFrequency = START_FREQUENCY
-            mIQSourceInterface?.frequency = START_FREQUENCY
-        }
+        reportHop(frequency, maxValue, perValue, alarmed)
+    }
 
+    /**
+     * 把检测结果告诉hop调度器（超出基线的电平和是否报警），决定这个频点以后的访问频率
+     */
+    private fun reportHop(frequency: Long, maxValue: Float, perValue: Float, alarmed: Boolean) {
+        if (!perValue.isNaN() && perValue >= -999) {
+            hopScheduler?.report(frequency, maxValue - perValue, alarmed)
+        }
     }
 
     /**
@@ -504,6 +636,16 @@ class AnalyzerProcessingLoop(
     // 具体的报警频段，之前采集的信号强度值，后面要通过比较这个来判断是否还处于报警状态
     private var alarmDb: Float = 0f
 
+    // 固定频率模式下的Zoom-FFT（报警频率附近的高分辨率局部频谱）
+    private var zoomFFT: ZoomFFT? = null
+    private var zoomMag: FloatArray? = null
+
+    // Zoom中心相对于当前中心频率的偏移（Hz），null表示还没有确定
+    private var zoomOffset: Long? = null
+
+    // zoomMag是否是当前样本的结果
+    private var zoomValid = false
+
 
     /**
      * 扫描低频 30-700MHz
@@ -516,15 +658,15 @@ class AnalyzerProcessingLoop(
         val newFre = frequency + rate
         //scanningMap[frequency] = mag
         val maxFrequency = findMaxByFor(mag)
-        val perMag = collectQueue[frequency]
         val maxValue = maxFrequency.maxValue
         val maxIndex = maxFrequency.maxIndex
+        // 采集的基线（NaN表示这个频率没有采集过）
+        val perValue = panorama.get(frequency, rate, mag.size, maxIndex)
         if (scanStatus == ScanDialog.SCAN_STATUS_PAUSE) {
             return
         }
-        if (perMag != null) {
-            if (maxIndex < perMag.size - 1) {
-                val perValue = perMag[maxIndex]
+        if (!perValue.isNaN()) {
+            if (maxIndex < mag.size - 1) {
                 if (perValue < -999) {
                     Logger.d("perMaxValue:$perValue,maxIndex:$maxIndex,frequency:$frequency")
                 } else if (perValue + 12 < maxValue) {
@@ -558,12 +700,7 @@ class AnalyzerProcessingLoop(
             }
         }
 
-        if (newFre < 700 * 1000 * 1000) {
-            if (newFre != preFrequency) {
-                preFrequency = newFre
-                mIQSourceInterface?.frequency = newFre
-            }
-        } else {
+        if (newFre > LOW_SCAN_END_FREQUENCY) {
             endTime = System.currentTimeMillis()
             if (alarmCount > 6) {
                 findMaxForMap()
@@ -585,8 +722,7 @@ class AnalyzerProcessingLoop(
             Logger.d("low frequency scanning time :${endTime - startTime}，$alarmCount")
             startTime = System.currentTimeMillis()
             //workStatus = 4
-            preFrequency = START_FREQUENCY
-            mIQSourceInterface?.frequency = START_FREQUENCY
+            // 回到起始频率由SweepController.onHopCaptured()完成（advanceSweep()），这里不再调谐
         }
 //        val curMag = FloatArray(fftSize)
 //        for (i in mag.indices) {
@@ -679,11 +815,12 @@ class AnalyzerProcessingLoop(
                 val msg="真正异常频率是：${alarmFre / 1000 / 1000}"
                 Logger.e("真正的频率是：${alarmFre / 1000 / 1000},$max;$left;$leftL;$right")
                 MyApp.appViewModel.scanMsgData.postValue(msg)
+                MyApp.appViewModel.alarmFrequencyData.postValue(alarmFre.toLong())
             }
         }
         abnormalMap.clear()
         alarmCount = 0
-        mIQSourceInterface?.frequency = alarmFre.toLong()
+        // 不调谐到alarmFre：扫频继续（已经回到起始频率），要持续观察这个频率用监视模式（WORK_STATUS_MONITOR）
         //MyApp.appViewModel.demodulationEnableData.postValue(true)
     }
 
@@ -692,9 +829,31 @@ class AnalyzerProcessingLoop(
      */
     private fun fixedFrequency(mag: FloatArray, frequency: Long, rate: Int) {
         //val count = perHzData * 10 * 1000  // 10khz
-        val centerIndex = fftSize / 2
-        val centerDb = mag[centerIndex]
-        Logger.d("cur frequency:${frequency / 1000 / 1000};$centerDb;$alarmDb")
+        if (zoomOffset == null) {
+            // 第一次进入：以普通频谱中最强的bin作为Zoom的中心，并让调度器提供足够长的连续样本
+            val max = findMaxByFor(mag)
+            zoomOffset = (max.maxIndex - fftSize / 2).toLong() * rate / fftSize
+            val zoom = zoomFFT ?: ZoomFFT(ZOOM_FFT_SIZE, ZOOM_STAGES).also {
+                zoomFFT = it
+                zoomMag = FloatArray(ZOOM_FFT_SIZE)
+            }
+            scheduler?.setDwellSamples(zoom.requiredSamples)
+            Logger.i("Zoom-FFT中心：${frequency + zoomOffset!!}，跨度：${zoom.getOutputSampleRate(rate)}Hz")
+            return
+        }
+        if (!zoomValid) {
+            // 样本还不够长（调度器还在用旧的缓冲区），退回到普通频谱的中心
+            val centerIndex = fftSize / 2
+            val centerDb = mag[centerIndex]
+            Logger.d("cur frequency:${frequency / 1000 / 1000};$centerDb;$alarmDb")
+            return
+        }
+        // 在高分辨率的局部频谱中找最强的信号
+        val zoomMax = findMaxByFor(zoomMag!!)
+        val zoomRate = zoomFFT!!.getOutputSampleRate(rate)
+        val peakFrequency = frequency + zoomOffset!! +
+                (zoomMax.maxIndex - ZOOM_FFT_SIZE / 2).toLong() * zoomRate / ZOOM_FFT_SIZE
+        Logger.d("cur frequency:${frequency / 1000 / 1000};peak:$peakFrequency;${zoomMax.maxValue};$alarmDb")
 
 //        val curMag = FloatArray(fftSize)
 //        for (i in mag.indices) {
@@ -716,6 +875,119 @@ class AnalyzerProcessingLoop(
     }
 
 
+    /**
+     * 监视模式的状态：Goertzel滤波器组、每个频率的当前值、基线（前MONITOR_BASELINE_COUNT次的平均值）和报警状态。
+     * setMonitorFrequencies()（UI线程）每次创建一个新的对象，通过monitor一次性发布；
+     * 数组的内容和count只由处理线程修改，所以处理线程不会看到新旧混合的状态。
+     */
+    private class MonitorState(val bank: GoertzelBank, size: Int) {
+        val levels = FloatArray(size)
+        val baseline = FloatArray(size)
+        val alarm = BooleanArray(size)
+        var count = 0
+    }
+
+    @Volatile
+    private var monitor: MonitorState? = null
+
+    /**
+     * 设置监视模式（WORK_STATUS_MONITOR）下要持续监视的频率。
+     * 把中心频率调到这些频率的中间，每个数据包只对这几个频率做Goertzel，代价是 O(N·k)。
+     *
+     * @param frequencies 要监视的频率（Hz），必须在一个采样带宽之内
+     */
+    fun setMonitorFrequencies(frequencies: LongArray) {
+        if (frequencies.isEmpty()) {
+            monitor = null
+            return
+        }
+        val min = frequencies.minOrNull()!!
+        val max = frequencies.maxOrNull()!!
+        if (max - min > SAMPLE_RATE * 0.8) {
+            Logger.e("监视的频率跨度太大：${(max - min) / 1000 / 1000}MHz，超出带宽的部分将被忽略")
+        }
+        val bank = GoertzelBank(fftSize, fftBlock?.windowType ?: FFT.WINDOW_BLACKMAN)
+        bank.setFrequencies(frequencies)
+        monitor = MonitorState(bank, frequencies.size)
+        sweep.retune((min + max) / 2)
+        Logger.i("监视频率：${frequencies.joinToString { (it / 1000).toString() + "kHz" }}")
+    }
+
+    /**
+     * 监视模式：计算被监视频率的信号强度，先建立基线，然后超过基线12dB时报警
+     */
+    private fun doMonitoring(samples: SamplePacket) {
+        val state = monitor ?: return
+        val levels = state.levels
+        val baseline = state.baseline
+        if (!state.bank.process(samples, levels)) return
+        val frequencies = state.bank.frequencies
+        if (state.count < MONITOR_BASELINE_COUNT) {
+            for (i in levels.indices) {
+                if (!levels[i].isNaN()) baseline[i] += levels[i] / MONITOR_BASELINE_COUNT
+            }
+            state.count++
+            return
+        }
+        if (scanStatus == ScanDialog.SCAN_STATUS_PAUSE) {
+            return
+        }
+        for (i in levels.indices) {
+            val level = levels[i]
+            val alarm = level > baseline[i] + 12
+            if (alarm && !state.alarm[i]) {
+                val msg = "监视频率异常：${frequencies[i] / 1000 / 1000f} Mhz,信号值：$level,基线${baseline[i]}"
+                Logger.i(msg)
+                MyApp.appViewModel.scanMsgData.postValue(msg)
+            }
+            state.alarm[i] = alarm
+        }
+    }
+
+    /**
+     * 对原始样本做Zoom-FFT，结果写入zoomMag
+     *
+     * @return true 如果zoomMag已更新
+     */
+    private fun doZoom(samples: SamplePacket): Boolean {
+        val offset = zoomOffset ?: return false
+        val zoom = zoomFFT ?: return false
+        return zoom.process(samples, offset, zoomMag!!)
+    }
+
+    /**
+     * 退出固定频率模式：丢弃Zoom中心，恢复调度器的驻留样本数
+     */
+    private fun resetZoom() {
+        if (zoomOffset != null) {
+            zoomOffset = null
+            scheduler?.setDwellSamples(0)
+        }
+        zoomValid = false
+    }
+
+    /**
+     * 把样本包还给调度器（每个取出的包都必须经过这里，SamplePacketPool据此检查是否有包没有归还）
+     */
+    private fun returnSamples(samples: SamplePacket) {
+        pool.hold(samples, null)
+        returnQueue!!.offer(samples)
+    }
+
+    /**
+     * 普通FFT路径下让转换器在填充样本时直接乘上窗函数，处理循环中就省掉一遍对样本的读写。
+     * 监视（Goertzel）、Zoom-FFT、Welch和多相滤波器组需要原始样本，这时关闭
+     */
+    private fun updateFillWindow() {
+        val window = if (workStatus != WORK_STATUS_MONITOR && zoomOffset == null && welch == null && channelizer == null)
+            fftBlock?.window else null
+        if (window !== fillWindow) {
+            fillWindow = window
+            Logger.d("填充时加窗：${window != null}")
+        }
+        scheduler?.setFftWindow(window)
+    }
+
     /**
      * 找出列表的最大值和相应的索引
      */
@@ -738,33 +1010,22 @@ class AnalyzerProcessingLoop(
      * @param samples 用于信号处理的输入样本
      */
     private fun doProcessing(samples: SamplePacket) {
-        val re = samples.re()
-        val im = samples.im()
-        // 将样本与窗口函数相乘:
-        fftBlock?.applyWindow(re, im)
-
-        // 计算fft:
-        fftBlock?.fft(re, im)
-        //  Logger.i("采样的数据长度：${samples.size()}")
-        // 计算对数量级:
-        var realPower: Float
-        var imagPower: Float
-        val size = samples.size()
-        for (i in 0 until size) {
-            // 我们必须将fft的两侧翻转，以便将其绘制在屏幕中央:
-            val targetIndex = (i + size / 2) % size
-
-            // 计算 magnitude = log(  re^2 + im^2  )
-            // 请注意，我们仍然需要将re和im除以FFT大小
-            realPower = re[i] / fftSize
-            realPower *= realPower
-            imagPower = im[i] / fftSize
-            imagPower *= imagPower
-            // Math.sqrt(realPower + imagPower) 开平方根
-
-            mag!![targetIndex] =
-                (10 * log10(sqrt((realPower + imagPower).toDouble()))).toFloat()
+        val channelizer = channelizer
+        if (channelizer != null && channelizer.spectrum(samples.re(), samples.im(), samples.size(), mag!!) > 0) {
+            // 多相滤波器组：通带更平坦、泄漏更小，刻度和spectrum()一样（样本足够时对多帧取平均）
+            return
+        }
+        val welch = welch
+        if (welch != null && samples.size() > fftSize) {
+            // Welch: 用整个hop的所有样本（重叠分段）求平均功率谱，刻度和spectrum()一样
+            welch.spectrum(samples.re(), samples.im(), samples.size(), mag!!)
+            return
         }
+        // 加窗、fft、计算对数幅值（并将fft的两侧翻转，以便将其绘制在屏幕中央）在一个内核中完成:
+        if (samples.window != null)
+            fftBlock?.spectrumPreWindowed(samples.re(), samples.im(), mag!!) // 转换器填充时已经加过窗
+        else
+            fftBlock?.spectrum(samples.re(), samples.im(), mag!!)
     }
 
 
@@ -778,6 +1039,20 @@ class AnalyzerProcessingLoop(
         const val WORK_STATUS_SCAN = 2
         const val WORK_STATUS_DEFAULT = 3
         const val WORK_STATUS_ERROR = 4
+        const val WORK_STATUS_MONITOR = 5
+
+        // 在SamplePacketPool中的名称
+        private const val STAGE = "AnalyzerProcessingLoop"
+
+        // 低频扫描（scanLowFrequency）的最高中心频率：低于700MHz
+        private const val LOW_SCAN_END_FREQUENCY = 700 * 1000 * 1000L - 1
+
+        // 监视模式下建立基线所用的数据包数
+        private const val MONITOR_BASELINE_COUNT = 10
+
+        // Zoom-FFT：1024点，5级半带抽取（20MSps时跨度625kHz，分辨率约610Hz）
+        private const val ZOOM_FFT_SIZE = 1024
+        private const val ZOOM_STAGES = 5
 
     }
 }
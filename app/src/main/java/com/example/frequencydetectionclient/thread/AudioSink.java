@@ -6,26 +6,36 @@ import android.media.AudioTrack;
 
 import com.example.frequencydetectionclient.bean.SamplePacket;
 import com.example.frequencydetectionclient.utils.FirFilter;
+import com.example.frequencydetectionclient.utils.RationalResampler;
+import com.example.frequencydetectionclient.utils.SamplePacketPool;
+import com.example.frequencydetectionclient.utils.SpscQueue;
 import com.orhanobut.logger.Logger;
 
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Module:      AudioSink.java
  * Description: 此类实现到系统音频API的接口。它将在一个单独的线程中运行，并缓冲传入的样本数据包在阻塞队列中。输入分组是解调的（真实的）信号。此类将根据音频速率。
+ * AudioTrack以设备的原生采样率（48kHz或44.1kHz）运行，避免系统内部再做一次重采样：
+ * 任意速率的输入先用FirFilter做整数抽取（输入速率远高于音频速率时），再用RationalResampler（L/M）转换到原生采样率。
  */
 public class AudioSink extends Thread {
     private AudioTrack audioTrack = null;        // AudioTrack object that is used to pass audio samples to the Android system
     private boolean stopRequested = true;
-    private ArrayBlockingQueue<SamplePacket> inputQueue = null;        // Queue that holds incoming samples
-    private ArrayBlockingQueue<SamplePacket> outputQueue = null;    // Queue that holds available buffers
+    private SpscQueue<SamplePacket> inputQueue = null;        // Queue that holds incoming samples (filled by the demodulator)
+    private SpscQueue<SamplePacket> outputQueue = null;    // Queue that holds available buffers (taken by the demodulator)
     private int packetSize;        // packet size of the incoming sample packets
-    private int sampleRate;        // audio sample rate of the AudioSink
+    private int sampleRate;        // audio sample rate of the AudioSink (native rate of the device)
     private static final int QUEUE_SIZE = 2;    // This results in a double buffer. see Scheduler...
-    private FirFilter audioFilter1 = null;        // Filter used to decimate the incoming signal rate
-    private FirFilter audioFilter2 = null;        // Cascaded filter for high incoming signal rates
+    private static final String STAGE = "AudioSink";    // name in the SamplePacketPool
+    private final SamplePacketPool pool = SamplePacketPool.getInstance();
+    private static final int DEFAULT_SAMPLE_RATE = 48000;    // used if the native rate is neither 48kHz nor 44.1kHz
+    private int filterInputRate = 0;            // input rate for which audioFilter and resampler were created
+    private FirFilter audioFilter = null;        // Integer decimation of high incoming signal rates (null if not needed)
+    private RationalResampler resampler = null;    // input rate (after audioFilter) --> sampleRate
     private SamplePacket tmpAudioSamples;        // tmp buffer for audio filters.
+    private SamplePacket resampledPacket;        // output buffer of the resampler
+    private short[] shortPacket;                // 16 bit samples for the AudioTrack
 
 
 
@@ -33,32 +43,44 @@ public class AudioSink extends Thread {
      * 构造函数：初始化AudioSink对象
      *
      * @param packetSize 每个音频包的大小，决定了处理音频数据的粒度
-     * @param sampleRate 采样率，单位为Hz，表示每秒采集的音频样本数量
      */
-    public AudioSink(int packetSize, int sampleRate) {
+    public AudioSink(int packetSize) {
         // 初始化音频包大小和采样率
         this.packetSize = packetSize;
-        this.sampleRate = sampleRate;
+        this.sampleRate = getNativeSampleRate();
 
         // 创建输入和输出队列，并用SamplePacket对象填充输出队列
-        this.inputQueue = new ArrayBlockingQueue<SamplePacket>(QUEUE_SIZE);
-        this.outputQueue = new ArrayBlockingQueue<SamplePacket>(QUEUE_SIZE);
+        this.inputQueue = new SpscQueue<SamplePacket>(QUEUE_SIZE);
+        this.outputQueue = new SpscQueue<SamplePacket>(QUEUE_SIZE);
         for (int i = 0; i < QUEUE_SIZE; i++)
-            this.outputQueue.offer(new SamplePacket(packetSize));
+            this.outputQueue.offer(pool.acquire(packetSize, STAGE));
 
         // 创建AudioTrack实例，用于播放音频流
         int bufferSize = AudioTrack.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_OUT_MONO, AudioFormat.ENCODING_PCM_16BIT);
         this.audioTrack = new AudioTrack(AudioManager.STREAM_MUSIC, sampleRate, AudioFormat.CHANNEL_OUT_MONO,
                 AudioFormat.ENCODING_PCM_16BIT, bufferSize, AudioTrack.MODE_STREAM);
 
-        // 创建两个音频滤波器，用于处理音频数据
-        this.audioFilter1 = FirFilter.createLowPass(2, 1, 1, 0.1f, 0.15f, 30);
-        Logger.d("constructor: created audio filter 1 with " + audioFilter1.getNumberOfTaps() + " Taps.");
-        this.audioFilter2 = FirFilter.createLowPass(4, 1, 1, 0.1f, 0.1f, 30);
-        Logger.d("constructor: created audio filter 2 with " + audioFilter2.getNumberOfTaps() + " Taps.");
+        Logger.d("constructor: audio sample rate is " + sampleRate);
 
         // 初始化临时音频样本包，用于音频数据处理过程中的临时存储
         this.tmpAudioSamples = new SamplePacket(packetSize);
+        this.resampledPacket = new SamplePacket(packetSize);
+        this.shortPacket = new short[packetSize];
+    }
+
+    /**
+     * @return 设备的原生输出采样率（48kHz或44.1kHz），其他值时返回DEFAULT_SAMPLE_RATE
+     */
+    public static int getNativeSampleRate() {
+        int rate = AudioTrack.getNativeOutputSampleRate(AudioManager.STREAM_MUSIC);
+        return (rate == 48000 || rate == 44100) ? rate : DEFAULT_SAMPLE_RATE;
+    }
+
+    /**
+     * @return audio sample rate of the AudioTrack
+     */
+    public int getSampleRate() {
+        return sampleRate;
     }
 
     /**
@@ -77,6 +99,18 @@ public class AudioSink extends Thread {
         stopRequested = true;
     }
 
+    /**
+     * Puts all buffers of the queues back into the SamplePacketPool. Must only be called after
+     * the AudioSink and the Demodulator have stopped.
+     */
+    public void releaseBuffers() {
+        SamplePacket packet;
+        while ((packet = inputQueue.poll()) != null)
+            pool.release(packet);
+        while ((packet = outputQueue.poll()) != null)
+            pool.release(packet);
+    }
+
     /**
      * @return getPacketBuffer（）提供的数据包大小
      */
@@ -93,7 +127,9 @@ public class AudioSink extends Thread {
      */
     public SamplePacket getPacketBuffer(int timeout) {
         try {
-            return outputQueue.poll(timeout, TimeUnit.MILLISECONDS);
+            SamplePacket packet = outputQueue.poll(timeout, TimeUnit.MILLISECONDS);
+            pool.hold(packet, "Demodulator");
+            return packet;
         } catch (InterruptedException e) {
             Logger.e("getPacketBuffer: Interrupted. return null...");
             return null;
@@ -111,6 +147,7 @@ public class AudioSink extends Thread {
             Logger.e("enqueuePacket: Packet is null.");
             return false;
         }
+        pool.hold(packet, null);
         if (!inputQueue.offer(packet)) {
             Logger.e("enqueuePacket: Queue is full.");
             return false;
@@ -122,9 +159,7 @@ public class AudioSink extends Thread {
     public void run() {
         SamplePacket packet;
         SamplePacket filteredPacket;
-        SamplePacket tempPacket = new SamplePacket(packetSize);
         float[] floatPacket;
-        short[] shortPacket = new short[packetSize];
 
         Logger.i("AudioSink started. (Thread: " + this.getName() + ")" + stopRequested);
 
@@ -141,11 +176,14 @@ public class AudioSink extends Thread {
                     //Logger.d("run: Queue is empty. skip this round");
                     continue;
                 }
+                pool.hold(packet, STAGE);
 
-                // apply audio filter (decimation)
-                if (packet.getSampleRate() > this.sampleRate) {
-                    applyAudioFilter(packet, tempPacket);
-                    filteredPacket = tempPacket;
+                // apply audio filter (decimation + resampling to the native rate)
+                if (packet.getSampleRate() != this.sampleRate) {
+                    if (packet.getSampleRate() != filterInputRate)
+                        createAudioFilter(packet.getSampleRate());    // may reallocate resampledPacket
+                    applyAudioFilter(packet, resampledPacket);
+                    filteredPacket = resampledPacket;
                 } else
                     filteredPacket = packet;
 
@@ -162,6 +200,7 @@ public class AudioSink extends Thread {
                 }
 
                 // Return the buffer to the output queue
+                pool.hold(packet, null);
                 outputQueue.offer(packet);
             } catch (InterruptedException e) {
                 Logger.e("run: Interrupted while polling from queue. stop");
@@ -177,35 +216,80 @@ public class AudioSink extends Thread {
 
     /**
      * 对音频样本应用滤镜
-     * 根据输入的样本率与指定样本率的比例，选择性地应用一个或两个滤镜
-     * 该方法首先判断是否需要进行8:1的缩减，如果是，则应用两个滤镜以达到所需的缩减率
-     * 如果只需要进行2:1的缩减，则仅应用第一个滤镜
-     * 如果输入的样本率不支持，则记录错误信息
+     * 输入采样率至少是音频采样率的2倍时，先用FirFilter进行整数抽取（抽取后的速率仍不低于音频采样率），
+     * 然后用RationalResampler转换到音频采样率。输入采样率改变时重新创建滤波器（重采样系数有缓存）。
      *
      * @param input  包含待处理音频样本的输入包
      * @param output 处理后的音频样本输出到此包中
      */
     public void applyAudioFilter(SamplePacket input, SamplePacket output) {
-        // 判断是否需要进行8:1的缩减
-        if (input.getSampleRate() / sampleRate == 8) {
-            // 应用第一个滤镜（缩减到input_rate/2）
+        if (input.getSampleRate() != filterInputRate)
+            createAudioFilter(input.getSampleRate());
+        if (resampler == null) {
+            output.setSize(0);
+            return;
+        }
+
+        SamplePacket resamplerInput = input;
+        if (audioFilter != null) {
+            // 整数抽取
             tmpAudioSamples.setSize(0);    // 标记缓冲区为空
-            if (audioFilter1.filterReal(input, tmpAudioSamples, 0, input.size()) < input.size()) {
-                Logger.e("applyAudioFilter: [audioFilter1] 无法处理输入包的所有样本。");
+            if (audioFilter.filterReal(input, tmpAudioSamples, 0, input.size()) < input.size()) {
+                Logger.e("applyAudioFilter: [audioFilter] 无法处理输入包的所有样本。");
             }
+            resamplerInput = tmpAudioSamples;
+        }
 
-            // 应用第二个滤镜（缩减到input_rate/8）
-            output.setSize(0);
-            if (audioFilter2.filterReal(tmpAudioSamples, output, 0, tmpAudioSamples.size()) < tmpAudioSamples.size()) {
-                Logger.e("applyAudioFilter: [audioFilter2] 无法处理输入包的所有样本。");
-            }
-        } else if (input.getSampleRate() / sampleRate == 2) {
-            // 应用第一个滤镜（缩减到input_rate/2）
-            output.setSize(0);
-            if (audioFilter1.filterReal(input, output, 0, input.size()) < input.size()) {
-                Logger.e("applyAudioFilter: [audioFilter1] 无法处理输入包的所有样本。");
+        // 重采样到音频采样率
+        output.setSize(0);
+        if (resampler.resampleReal(resamplerInput, output, 0, resamplerInput.size()) < resamplerInput.size()) {
+            Logger.e("applyAudioFilter: [resampler] 无法处理输入包的所有样本。");
+        }
+    }
+
+    /**
+     * (Re-)creates the integer decimation filter and the resampler for the given input rate
+     *
+     * @param inputRate sample rate of the incoming packets
+     */
+    private void createAudioFilter(int inputRate) {
+        filterInputRate = inputRate;
+        resampler = null;
+        audioFilter = null;
+        if (inputRate <= 0) {
+            Logger.e("applyAudioFilter: 不支持的输入样本率！" + inputRate);
+            return;
+        }
+
+        // integer pre-decimation: largest factor that divides the input rate and keeps the rate >= sampleRate
+        int decimation = 1;
+        for (int d = inputRate / sampleRate; d >= 2; d--) {
+            if (inputRate % d == 0) {
+                decimation = d;
+                break;
             }
-        } else
-            Logger.e("applyAudioFilter: 不支持的输入样本率！");
+        }
+        int resamplerRate = inputRate / decimation;
+        if (decimation > 1) {
+            // protect the audio band (up to 0.425*sampleRate, see RationalResampler); the aliases may fall into the
+            // transition band of the resampler:
+            float cutoff = 0.425f * sampleRate;
+            this.audioFilter = FirFilter.createLowPass(decimation, 1, inputRate, cutoff,
+                    resamplerRate - 2 * cutoff, 40);
+            Logger.d("createAudioFilter: created audio filter with " + audioFilter.getNumberOfTaps()
+                    + " Taps. Decimation=" + decimation);
+        }
+        this.resampler = RationalResampler.create(resamplerRate, sampleRate);
+        if (resampler == null)
+            return;
+        Logger.d("createAudioFilter: resampler " + resamplerRate + " -> " + sampleRate + " (L=" + resampler.getInterpolation()
+                + " M=" + resampler.getDecimation() + ", " + resampler.getTapsPerPhase() + " taps per output)");
+
+        // output buffers for the upsampled packets:
+        int size = resampler.getMaxOutputSize(packetSize / decimation + 1);
+        if (resampledPacket.capacity() < size) {
+            resampledPacket = new SamplePacket(size);
+            shortPacket = new short[size];
+        }
     }
 }
@@ -1,8 +1,9 @@
 package com.example.frequencydetectionclient.thread;
 
 import com.example.frequencydetectionclient.bean.SamplePacket;
-import com.example.frequencydetectionclient.utils.FirFilter;
-import com.example.frequencydetectionclient.hackrf.HalfBandLowPassFilter;
+import com.example.frequencydetectionclient.utils.DecimationCascade;
+import com.example.frequencydetectionclient.utils.SamplePacketPool;
+import com.example.frequencydetectionclient.utils.SpscQueue;
 import com.orhanobut.logger.Logger;
 
 import java.util.concurrent.ArrayBlockingQueue;
@@ -13,6 +14,7 @@ import java.util.concurrent.TimeUnit;
  * <p>
  * Module:      Decimator.java
  * Description: 这个类实现了一个抽取块，用于将输入信号降采样到解调例程使用的采样率。它将在一个单独的线程中运行。
+ * 输入采样率可以是任意值：滤波器级联由DecimationCascade.plan()按（输入采样率，输出采样率）规划，采样率改变时重新规划。
  *
  * @author Dennis Mantz
  */
@@ -22,18 +24,17 @@ public class Decimator extends Thread {
     private boolean stopRequested = true;
 
     private static final int OUTPUT_QUEUE_SIZE = 2;        // Double Buffer
+    private static final String STAGE = "Decimator";       // 在SamplePacketPool中的名称
+    private final SamplePacketPool pool = SamplePacketPool.getInstance();
     private ArrayBlockingQueue<SamplePacket> inputQueue;        // 保存传入样本数据包的队列
     private ArrayBlockingQueue<SamplePacket> inputReturnQueue;    // 队列从输入队列返回已使用的缓冲区
-    private ArrayBlockingQueue<SamplePacket> outputQueue;        // 将保存抽取的样本数据包的队列
-    private ArrayBlockingQueue<SamplePacket> outputReturnQueue;    // 队列从输出队列返回已使用的缓冲区
+    private SpscQueue<SamplePacket> outputQueue;        // 将保存抽取的样本数据包的队列（只有解调器线程取包）
+    private SpscQueue<SamplePacket> outputReturnQueue;    // 队列从输出队列返回已使用的缓冲区（只有解调器线程还包）
 
     // DOWNSAMPLING:
-    private static final int INPUT_RATE = 1000000;    // For now, this decimator only works with a fixed input rate of 1Msps
-    private HalfBandLowPassFilter inputFilter1 = null;
-    private HalfBandLowPassFilter inputFilter2 = null;
-    private HalfBandLowPassFilter inputFilter3 = null;
-    private FirFilter inputFilter4 = null;
-    private SamplePacket tmpDownsampledSamples;
+    private DecimationCascade cascade = null;    // half band stages + final FIR for the current input/output rate
+    private int plannedInputSampleRate = 0;      // input rate for which the cascade was planned
+    private int plannedOutputSampleRate = 0;     // outputSampleRate for which the cascade was planned
 
     /**
      * Constructor. Will create a new Decimator block.
@@ -51,18 +52,21 @@ public class Decimator extends Thread {
         this.inputReturnQueue = inputReturnQueue;
 
         // 创建输出队列:
-        this.outputQueue = new ArrayBlockingQueue<SamplePacket>(OUTPUT_QUEUE_SIZE);
-        this.outputReturnQueue = new ArrayBlockingQueue<SamplePacket>(OUTPUT_QUEUE_SIZE);
+        this.outputQueue = new SpscQueue<SamplePacket>(OUTPUT_QUEUE_SIZE);
+        this.outputReturnQueue = new SpscQueue<SamplePacket>(OUTPUT_QUEUE_SIZE);
         for (int i = 0; i < OUTPUT_QUEUE_SIZE; i++)
-            outputReturnQueue.offer(new SamplePacket(packetSize));
-
-        // Create half band filters for downsampling:
-        this.inputFilter1 = new HalfBandLowPassFilter(8);
-        this.inputFilter2 = new HalfBandLowPassFilter(8);
-        this.inputFilter3 = new HalfBandLowPassFilter(8);
+            outputReturnQueue.offer(pool.acquire(packetSize, STAGE));
+    }
 
-        // Create local buffers:
-        this.tmpDownsampledSamples = new SamplePacket(packetSize);
+    /**
+     * 把输出队列中的所有缓冲区放回SamplePacketPool。只能在抽取器和解调器线程都停止之后调用。
+     */
+    public void releaseBuffers() {
+        SamplePacket packet;
+        while ((packet = outputQueue.poll()) != null)
+            pool.release(packet);
+        while ((packet = outputReturnQueue.poll()) != null)
+            pool.release(packet);
     }
 
     public int getOutputSampleRate() {
@@ -75,7 +79,9 @@ public class Decimator extends Thread {
 
     public SamplePacket getDecimatedPacket(int timeout) {
         try {
-            return outputQueue.poll(timeout, TimeUnit.MILLISECONDS);
+            SamplePacket packet = outputQueue.poll(timeout, TimeUnit.MILLISECONDS);
+            pool.hold(packet, "Demodulator");
+            return packet;
         } catch (InterruptedException e) {
             Logger.e("getPacket: Interrupted while waiting on queue");
             return null;
@@ -83,6 +89,7 @@ public class Decimator extends Thread {
     }
 
     public void returnDecimatedPacket(SamplePacket packet) {
+        pool.hold(packet, null);
         outputReturnQueue.offer(packet);
     }
 
@@ -118,18 +125,15 @@ public class Decimator extends Thread {
                 //Logger.d("run: Input sample is null. skip this round...");
                 continue;
             }
-
-            //验证输入采样率:(目前，这个十进制器只能在1Msps的固定输入率下工作)
-            if (inputSamples.getSampleRate() != INPUT_RATE) {
-                Logger.d("run: Input sample rate is " + inputSamples.getSampleRate() + " but should be" + INPUT_RATE + ". skip.");
-                continue;
-            }
+            pool.hold(inputSamples, STAGE);
 
             // Get a packet from the output queue:
             try {
                 outputSamples = outputReturnQueue.poll(1000, TimeUnit.MILLISECONDS);
             } catch (InterruptedException e) {
                 Logger.e("run: Interrupted while waiting on output return queue! stop.");
+                pool.hold(inputSamples, null);
+                inputReturnQueue.offer(inputSamples);
                 this.stopRequested = true;
                 break;
             }
@@ -137,16 +141,21 @@ public class Decimator extends Thread {
             // Verify the output sample packet is not null:
             if (outputSamples == null) {
                 Logger.d("run: Output sample is null. skip this round...");
+                pool.hold(inputSamples, null);
+                inputReturnQueue.offer(inputSamples);
                 continue;
             }
+            pool.hold(outputSamples, STAGE);
 
             // downsampling
             downsampling(inputSamples, outputSamples);
 
             // 将inputSamples返回到输入队列:
+            pool.hold(inputSamples, null);
             inputReturnQueue.offer(inputSamples);
 
             // 将outputSamples交付到输出队列
+            pool.hold(outputSamples, null);
             outputQueue.offer(outputSamples);
         }
 
@@ -161,38 +170,22 @@ public class Decimator extends Thread {
      * @param output outgoing (decimated) samples at output rate (quadrature rate)
      */
     private void downsampling(SamplePacket input, SamplePacket output) {
-        // Verify that the input filter 4 is still correct configured (gain):
-        if (inputFilter4 == null || inputFilter4.getGain() != 2 * (outputSampleRate / (double) input.getSampleRate())) {
-            // We have to (re-)create the filter:
-            this.inputFilter4 = FirFilter.createLowPass(2, 2 * (outputSampleRate / (float) input.getSampleRate()), 1, 0.15f, 0.2f, 20);
-            Logger.d("downsampling: created new inputFilter4 with " + inputFilter4.getNumberOfTaps()
-                    + " taps. Decimation=" + inputFilter4.getDecimation() + " Cut-Off=" + inputFilter4.getCutOffFrequency()
-                    + " transition=" + inputFilter4.getTransitionWidth());
-        }
-
-        // apply first filter (decimate to INPUT_RATE/2)
-        tmpDownsampledSamples.setSize(0);    // mark buffer as empty
-        if (inputFilter1.filterN8(input, tmpDownsampledSamples, 0, input.size()) < input.size()) {
-            Logger.e("downsampling: [inputFilter1] could not filter all samples from input packet.");
-        }
-
-        // if we need a decimation of 16: apply second and third filter (decimate to INPUT_RATE/8)
-        if (input.getSampleRate() / outputSampleRate == 16) {
-            output.setSize(0);    // mark buffer as empty
-            if (inputFilter2.filterN8(tmpDownsampledSamples, output, 0, tmpDownsampledSamples.size()) < tmpDownsampledSamples.size()) {
-                Logger.e("downsampling: [inputFilter2] could not filter all samples from input packet.");
-            }
-
-            tmpDownsampledSamples.setSize(0);    // mark tmp buffer as again
-            if (inputFilter3.filterN8(output, tmpDownsampledSamples, 0, output.size()) < output.size()) {
-                Logger.e("downsampling: [inputFilter3] could not filter all samples from input packet.");
-            }
+        // Verify that the cascade is still planned for the current rates (input rate or quadrature rate changed):
+        int inputRate = input.getSampleRate();
+        if (plannedInputSampleRate != inputRate || plannedOutputSampleRate != outputSampleRate) {
+            // We have to (re-)plan the cascade:
+            plannedInputSampleRate = inputRate;
+            plannedOutputSampleRate = outputSampleRate;
+            // (outputSampleRate 1 means demodulation is off, see Demodulator.QUADRATURE_RATE)
+            cascade = outputSampleRate > 1 ? DecimationCascade.plan(inputRate, outputSampleRate, packetSize) : null;
+            if (cascade != null)
+                Logger.i("downsampling: " + cascade);
         }
 
-        // apply fourth filter (decimate either to INPUT_RATE/4 or INPUT_RATE/16)
-        output.setSize(0);    // mark buffer as empty
-        if (inputFilter4.filter(tmpDownsampledSamples, output, 0, tmpDownsampledSamples.size()) < tmpDownsampledSamples.size()) {
-            Logger.e("downsampling: [inputFilter4] could not filter all samples from input packet.");
+        if (cascade == null) {
+            output.setSize(0);    // unsupported rates: deliver an empty packet
+            return;
         }
+        cascade.decimate(input, output);
     }
 }
@@ -2,6 +2,7 @@ package com.example.frequencydetectionclient.thread;
 
 import com.example.frequencydetectionclient.ComplexFirFilter;
 import com.example.frequencydetectionclient.bean.SamplePacket;
+import com.example.frequencydetectionclient.utils.FastAtan2;
 import com.example.frequencydetectionclient.utils.FirFilter;
 import com.orhanobut.logger.Logger;
 
@@ -14,8 +15,8 @@ import java.util.concurrent.ArrayBlockingQueue;
 public class Demodulator extends Thread {
     private boolean stopRequested = true;
 
-    private static final int AUDIO_RATE = 31250;    // Even though this is not a proper audio rate, the Android system can
-    // handle it properly and it is a integer fraction of the input rate (1MHz).
+    private static final int AUDIO_RATE = 31250;    // Rate of the SSB output (quadrature rate / 2). Not a proper audio rate:
+    // the AudioSink resamples every packet to the native rate of the device (see RationalResampler).
     // The quadrature rate is the sample rate that is used for the demodulation:
     private static final int[] QUADRATURE_RATE = {1,                // off; this value is not 0 to avoid divide by zero errors!
             2 * AUDIO_RATE,    // AM
@@ -23,10 +24,10 @@ public class Demodulator extends Thread {
             8 * AUDIO_RATE,    // wFM
             2 * AUDIO_RATE,    // LSB
             2 * AUDIO_RATE};    // USB
-    public static final int INPUT_RATE = 2000000;    // 传入样本的预期速率 2Mhz
+    public static final int INPUT_RATE = 2000000;    // 传入样本的默认速率 2Mhz（Decimator可处理任意输入速率）
 
     // DECIMATION
-    private Decimator decimator;    // will do INPUT_RATE --> QUADRATURE_RATE
+    private Decimator decimator;    // will do input rate --> QUADRATURE_RATE
 
     // FILTERING (This is the channel filter controlled by the user)
     private static final int USER_FILTER_ATTENUATION = 20;
@@ -48,6 +49,7 @@ public class Demodulator extends Thread {
 
     // DEMODULATION
     private SamplePacket demodulatorHistory;    // used for FM demodulation
+    private boolean fastFmDiscriminator = true;    // FM demodulation with FastAtan2 instead of Math.atan2
     private float lastMax = 0;    // used for gain control in AM / SSB demodulation
     private ComplexFirFilter bandPassFilter = null;    // used for SSB demodulation
     private static final int BAND_PASS_ATTENUATION = 40;
@@ -60,7 +62,7 @@ public class Demodulator extends Thread {
     public int demodulationMode;
 
     // AUDIO OUTPUT
-    private AudioSink audioSink = null;        // Will do QUADRATURE_RATE --> AUDIO_RATE and audio output
+    private AudioSink audioSink = null;        // Will do QUADRATURE_RATE (or AUDIO_RATE) --> native audio rate and audio output
 
     /**
      * 构造函数，初始化解调器
@@ -77,7 +79,7 @@ public class Demodulator extends Thread {
 
         // 创建音频接收器
         // 该接收器用于处理和播放音频流
-        this.audioSink = new AudioSink(packetSize, AUDIO_RATE);
+        this.audioSink = new AudioSink(packetSize);
 
         // 创建降采样器模块
         // 请注意，降采样器直接从输入队列读取数据，并将处理后的数据包返回到输出队列。
@@ -85,6 +87,31 @@ public class Demodulator extends Thread {
     }
 
 
+    /**
+     * @param demodulationMode Demodulation Mode (DEMODULATION_OFF, *_AM, *_NFM, *_WFM, ...)
+     * @return sample rate that is used for the demodulation (the input rate must not be lower)
+     */
+    public static int getQuadratureRate(int demodulationMode) {
+        return QUADRATURE_RATE[demodulationMode];
+    }
+
+    /**
+     * @return true if FM is demodulated with the FastAtan2 approximation
+     */
+    public boolean isFastFmDiscriminator() {
+        return fastFmDiscriminator;
+    }
+
+    /**
+     * Selects the atan2 implementation of the FM discriminator. This can be done while the demodulator is running!
+     *
+     * @param fastFmDiscriminator true: FastAtan2 (error <= 2e-6 rad); false: Math.atan2 (double precision)
+     */
+    public void setFastFmDiscriminator(boolean fastFmDiscriminator) {
+        this.fastFmDiscriminator = fastFmDiscriminator;
+        Logger.i("fastFmDiscriminator：" + fastFmDiscriminator);
+    }
+
     /**
      * @return Demodulation Mode (DEMODULATION_OFF, *_AM, *_NFM, *_WFM, ...)
      */
@@ -224,6 +251,16 @@ public class Demodulator extends Thread {
         // 停止抽取线程：
         decimator.stopDecimator();
 
+        // 等两个线程结束后把它们的缓冲区放回SamplePacketPool:
+        try {
+            audioSink.join();
+            decimator.join();
+            audioSink.releaseBuffers();
+            decimator.releaseBuffers();
+        } catch (InterruptedException e) {
+            Logger.e("run: Interrupted while waiting for AudioSink and Decimator. Buffers are not released.");
+        }
+
         this.stopRequested = true;
         Logger.i("Demodulator stopped. (Thread: " + this.getName() + ")");
     }
@@ -261,6 +298,8 @@ public class Demodulator extends Thread {
     /**
      * 将FM解调输入中的样本。宽带调频使用约75000偏差，窄带调频使用约3000偏差。
      * 解调后的样本存储在输出的真实阵列中。注意：输出中的所有样本将始终被覆盖！
+     * 鉴频：arg(x[i] * conj(x[i-1]))，一次遍历，上一个样本保存在局部变量中。
+     * fastFmDiscriminator为true时使用FastAtan2（误差 <= 2e-6 rad），否则使用Math.atan2。
      *
      * @param input  incoming (modulated) samples
      * @param output outgoing (demodulated) samples
@@ -269,29 +308,39 @@ public class Demodulator extends Thread {
         float[] reIn = input.re();
         float[] imIn = input.im();
         float[] reOut = output.re();
-        float[] imOut = output.im();
         int inputSize = input.size();
-        float quadratureGain = QUADRATURE_RATE[demodulationMode] / (2 * (float) Math.PI * maxDeviation);
+        float quadratureGain = input.getSampleRate() / (2 * (float) Math.PI * maxDeviation);
 
+        if (inputSize == 0)
+            return;
         if (demodulatorHistory == null) {
             demodulatorHistory = new SamplePacket(1);
             demodulatorHistory.re()[0] = reIn[0];
-            demodulatorHistory.im()[0] = reOut[0];
+            demodulatorHistory.im()[0] = imIn[0];
         }
 
         // Quadrature demodulation:
-        reOut[0] = reIn[0] * demodulatorHistory.re(0) + imIn[0] * demodulatorHistory.im(0);
-        imOut[0] = imIn[0] * demodulatorHistory.re(0) - reIn[0] * demodulatorHistory.im(0);
-        reOut[0] = quadratureGain * (float) Math.atan2(imOut[0], reOut[0]);
-        for (int i = 1; i < inputSize; i++) {
-            reOut[i] = reIn[i] * reIn[i - 1] + imIn[i] * imIn[i - 1];
-            imOut[i] = imIn[i] * reIn[i - 1] - reIn[i] * imIn[i - 1];
-            reOut[i] = quadratureGain * (float) Math.atan2(imOut[i], reOut[i]);
+        float lastRe = demodulatorHistory.re(0);
+        float lastIm = demodulatorHistory.im(0);
+        if (fastFmDiscriminator) {
+            for (int i = 0; i < inputSize; i++) {
+                float re = reIn[i], im = imIn[i];
+                reOut[i] = quadratureGain * FastAtan2.atan2(im * lastRe - re * lastIm, re * lastRe + im * lastIm);
+                lastRe = re;
+                lastIm = im;
+            }
+        } else {
+            for (int i = 0; i < inputSize; i++) {
+                float re = reIn[i], im = imIn[i];
+                reOut[i] = quadratureGain * (float) Math.atan2(im * lastRe - re * lastIm, re * lastRe + im * lastIm);
+                lastRe = re;
+                lastIm = im;
+            }
         }
-        demodulatorHistory.re()[0] = reIn[inputSize - 1];
-        demodulatorHistory.im()[0] = imIn[inputSize - 1];
+        demodulatorHistory.re()[0] = lastRe;
+        demodulatorHistory.im()[0] = lastIm;
         output.setSize(inputSize);
-        output.setSampleRate(QUADRATURE_RATE[demodulationMode]);
+        output.setSampleRate(input.getSampleRate());
     }
 
     /**
@@ -2,6 +2,8 @@ package com.example.frequencydetectionclient.thread;
 
 import com.example.frequencydetectionclient.iq.IQSourceInterface;
 import com.example.frequencydetectionclient.bean.SamplePacket;
+import com.example.frequencydetectionclient.utils.SamplePacketPool;
+import com.example.frequencydetectionclient.utils.SpscQueue;
 import com.orhanobut.logger.Logger;
 
 import java.io.BufferedOutputStream;
@@ -17,36 +19,70 @@ import java.util.concurrent.ArrayBlockingQueue;
  */
 public class Scheduler extends Thread {
     private IQSourceInterface source = null;    // Reference to the source of the IQ samples
-    private ArrayBlockingQueue<SamplePacket> fftOutputQueue = null;    // 将样本传送到处理循环的队列
-    private ArrayBlockingQueue<SamplePacket> fftInputQueue = null;    // Queue that collects used buffers from the Processing Loop
+    private SpscQueue<SamplePacket> fftOutputQueue = null;    // 将样本传送到处理循环的队列
+    private SpscQueue<SamplePacket> fftInputQueue = null;    // Queue that collects used buffers from the Processing Loop
+    // demod队列保持ArrayBlockingQueue：调度器在解调器太慢时自己也从demodOutputQueue取包、向demodInputQueue放包（多个生产者/消费者）
     private ArrayBlockingQueue<SamplePacket> demodOutputQueue = null;    // 将采样发送到解调器块的队列
     private ArrayBlockingQueue<SamplePacket> demodInputQueue = null;    // Queue that collects used buffers from the Demodulator block
     private long channelFrequency = 0;                    // 当将数据包传递到解调器时，将频率移到此值
     private boolean demodulationActivated = false;        // 指示采样是否应该转发到解调器队列。
+    private boolean demodulationPreDecimation = false;    // 转发到解调器的样本在转换/混频的同时抽取2（半带滤波器）
     private boolean squelchSatisfied = false;            // 指示当前信号是否强到足以越过静噪阈值
     private boolean stopRequested = true;
     private BufferedOutputStream bufferedOutputStream = null;    // Used for recording
     private boolean stopRecording = false;
+    private int defaultDwellSamples = 0;                 // 构造时指定的每次驻留的样本数
+    private volatile int dwellSamples = 0;               // 当前每次驻留的样本数（fft缓冲区的容量）
+    private volatile float[] fftWindow = null;           // 填充fft缓冲区时由转换器直接乘上的窗函数（null：原始样本）
 
     // 定义fft输出和输入队列的大小。通过将该值设置为2，我们基本上结束具有双重缓冲。也许这两个队列太夸张了，但它像这样工作得很好它为我们处理调度程序线程和处理循环之间的同步。
     // 请注意，将大小设置为1效果不佳，任何大于2的数字都会导致切换频率时延迟更高。
     private static final int FFT_QUEUE_SIZE = 2;
     private static final int DEMOD_QUEUE_SIZE = 20;
+    private static final String STAGE = "Scheduler";    // 在SamplePacketPool中的名称
+    private final SamplePacketPool pool = SamplePacketPool.getInstance();
 
     public Scheduler(int fftSize, IQSourceInterface source) {
+        this(fftSize, fftSize, source);
+    }
+
+    /**
+     * @param fftSize       FFT大小
+     * @param dwellSamples  每次驻留（每个频点）要采集并传给处理循环的样本数（>= fftSize）。
+     *                      Welch平均模式下为 WelchEstimator.getRequiredSamples()，否则等于fftSize
+     * @param source        IQ源
+     */
+    public Scheduler(int fftSize, int dwellSamples, IQSourceInterface source) {
         this.source = source;
+        this.defaultDwellSamples = Math.max(fftSize, dwellSamples);
+        this.dwellSamples = defaultDwellSamples;
 
         //创建fft输入和输出队列并分配缓冲数据包。
-        this.fftOutputQueue = new ArrayBlockingQueue<SamplePacket>(FFT_QUEUE_SIZE);
-        this.fftInputQueue = new ArrayBlockingQueue<SamplePacket>(FFT_QUEUE_SIZE);
+        this.fftOutputQueue = new SpscQueue<SamplePacket>(FFT_QUEUE_SIZE);
+        this.fftInputQueue = new SpscQueue<SamplePacket>(FFT_QUEUE_SIZE);
         for (int i = 0; i < FFT_QUEUE_SIZE; i++)
-            fftInputQueue.offer(new SamplePacket(fftSize));
+            fftInputQueue.offer(pool.acquire(defaultDwellSamples, STAGE));
 
         // 创建demod输入和输出队列并分配缓冲区数据包。
         this.demodOutputQueue = new ArrayBlockingQueue<SamplePacket>(DEMOD_QUEUE_SIZE);
         this.demodInputQueue = new ArrayBlockingQueue<SamplePacket>(DEMOD_QUEUE_SIZE);
         for (int i = 0; i < DEMOD_QUEUE_SIZE; i++)
-            demodInputQueue.offer(new SamplePacket(source.getPacketSize()));
+            demodInputQueue.offer(pool.acquire(source.getPacketSize(), STAGE));
+    }
+
+    /**
+     * 把fft和demod队列中的所有缓冲区放回SamplePacketPool。只能在调度器、处理循环和解调器都停止（join）之后调用。
+     */
+    public void releaseBuffers() {
+        SamplePacket packet;
+        while ((packet = fftOutputQueue.poll()) != null)
+            pool.release(packet);
+        while ((packet = fftInputQueue.poll()) != null)
+            pool.release(packet);
+        while ((packet = demodOutputQueue.poll()) != null)
+            pool.release(packet);
+        while ((packet = demodInputQueue.poll()) != null)
+            pool.release(packet);
     }
 
     public void stopScheduler() {
@@ -68,11 +104,11 @@ public class Scheduler extends Thread {
         return !stopRequested;
     }
 
-    public ArrayBlockingQueue<SamplePacket> getFftOutputQueue() {
+    public SpscQueue<SamplePacket> getFftOutputQueue() {
         return fftOutputQueue;
     }
 
-    public ArrayBlockingQueue<SamplePacket> getFftInputQueue() {
+    public SpscQueue<SamplePacket> getFftInputQueue() {
         return fftInputQueue;
     }
 
@@ -84,6 +120,31 @@ public class Scheduler extends Thread {
         return demodInputQueue;
     }
 
+    /**
+     * 修改每次驻留要采集的连续样本数（例如Zoom-FFT需要更长的连续样本）。
+     * 缓冲区在下一次从fft输入队列取出时按新的容量重新分配，所以只在切换时分配内存。
+     *
+     * @param dwellSamples 新的样本数；<= 0 时恢复构造时指定的值
+     */
+    public void setDwellSamples(int dwellSamples) {
+        this.dwellSamples = dwellSamples > 0 ? dwellSamples : defaultDwellSamples;
+        Logger.i("dwellSamples：" + this.dwellSamples);
+    }
+
+    public int getDwellSamples() {
+        return dwellSamples;
+    }
+
+    /**
+     * 设置填充fft缓冲区时直接乘上的窗函数（省掉处理循环中单独的加窗），只用于长度等于缓冲区容量的窗函数。
+     * 从下一个取出的缓冲区开始生效。
+     *
+     * @param fftWindow 窗函数系数（FFT.getWindow()）；null 时传递原始样本
+     */
+    public void setFftWindow(float[] fftWindow) {
+        this.fftWindow = fftWindow;
+    }
+
     public boolean isDemodulationActivated() {
         return demodulationActivated;
     }
@@ -93,6 +154,20 @@ public class Scheduler extends Thread {
         Logger.i("解调激活-demodulationActivated：" + demodulationActivated);
     }
 
+    public boolean isDemodulationPreDecimation() {
+        return demodulationPreDecimation;
+    }
+
+    /**
+     * @param demodulationPreDecimation true: 解调器队列中的样本在同一次遍历中完成转换、混频和2倍抽取
+     *                                  （见IQSourceInterface.mixPacketIntoSamplePacketDecimated()）。
+     *                                  只应在源采样率远高于解调所需的正交采样率时启用
+     */
+    public void setDemodulationPreDecimation(boolean demodulationPreDecimation) {
+        this.demodulationPreDecimation = demodulationPreDecimation;
+        Logger.i("demodulationPreDecimation：" + demodulationPreDecimation);
+    }
+
     public long getChannelFrequency() {
         return channelFrequency;
     }
@@ -146,7 +221,8 @@ public class Scheduler extends Thread {
         // 从源获取一个新数据包:
         // byte[] packet = source.getPacket(1000);
         while (!stopRequested) {
-            // 从源获取一个新数据包:
+            // 从源获取一个新数据包（纪元在取包之前读取：取包期间开始的调谐会使这个包被丢弃）:
+            int epoch = source.getRetuneEpoch();
             byte[] packet = source.getPacket(1000);
             if (packet == null) {
                 Logger.e("run: No more packets from source. Shutting down...");
@@ -177,9 +253,15 @@ public class Scheduler extends Thread {
                 // 从解调器inputQueue获取缓冲区
                 demodBuffer = demodInputQueue.poll();
                 if (demodBuffer != null) {
+                    pool.hold(demodBuffer, STAGE);
                     demodBuffer.setSize(0);    // 将缓冲区标记为空
-                    // 将数据包填充到缓冲区中，并通过mixFrequency移动其频谱:
-                    source.mixPacketIntoSamplePacket(packet, demodBuffer, channelFrequency);
+                    demodBuffer.setEpoch(epoch);
+                    // 将数据包填充到缓冲区中，并通过mixFrequency移动其频谱（可选：同时抽取2）:
+                    if (demodulationPreDecimation)
+                        source.mixPacketIntoSamplePacketDecimated(packet, demodBuffer, channelFrequency);
+                    else
+                        source.mixPacketIntoSamplePacket(packet, demodBuffer, channelFrequency);
+                    pool.hold(demodBuffer, null);
                     demodOutputQueue.offer(demodBuffer);    // 提供包
                 } else {
                     Logger.d("run: Flush the demod queue because demodulator is too slow!");
@@ -192,15 +274,32 @@ public class Scheduler extends Thread {
             // 如果buffer为null，则从fft输入队列请求一个新的缓冲区:
             if (fftBuffer == null) {
                 fftBuffer = fftInputQueue.poll();
-                if (fftBuffer != null)
+                if (fftBuffer != null && fftBuffer.capacity() != dwellSamples) {
+                    pool.release(fftBuffer);    // 驻留样本数已改变
+                    fftBuffer = pool.acquire(dwellSamples, STAGE);
+                }
+                if (fftBuffer != null) {
+                    pool.hold(fftBuffer, STAGE);
                     fftBuffer.setSize(0);    // mark buffer as empty
+                    float[] window = fftWindow;
+                    fftBuffer.setWindow(window != null && window.length == fftBuffer.capacity() ? window : null);
+                }
             }
             // 如果有缓冲区，就填满它!
             if (fftBuffer != null) {
+                // 缓冲区中已有上一个纪元（上一个频点）的样本：重新开始填充
+                if (fftBuffer.size() == 0 || fftBuffer.getEpoch() != epoch) {
+                    fftBuffer.setSize(0);
+                    fftBuffer.setEpoch(epoch);
+                }
                 // 将数据包填充到缓冲区中:
                 source.fillPacketIntoSamplePacket(packet, fftBuffer);
+                // 填充期间开始了新的调谐：数据包可能已经混入了新频率，丢弃
+                if (source.getRetuneEpoch() != epoch)
+                    fftBuffer.setSize(0);
                 // 检查缓冲区现在是否已满，如果已满:将其传递到输出队列
                 if (fftBuffer.capacity() == fftBuffer.size()) {
+                    pool.hold(fftBuffer, null);
                     fftOutputQueue.offer(fftBuffer);
                     fftBuffer = null;
                 }
@@ -212,6 +311,7 @@ public class Scheduler extends Thread {
             source.returnPacket(packet);
         }
         this.stopRequested = true;
+        pool.release(fftBuffer);    // 未填满的缓冲区（不能放回fftInputQueue：那是处理循环的生产者一侧）
         if (bufferedOutputStream != null) {
             try {
                 bufferedOutputStream.close();
@@ -0,0 +1,212 @@
+package com.example.frequencydetectionclient.thread;
+
+import com.example.frequencydetectionclient.iq.IQSourceInterface;
+import com.example.frequencydetectionclient.utils.HopScheduler;
+import com.orhanobut.logger.Logger;
+
+/**
+ * <p>
+ * Module:      SweepController.java
+ * Description: 流水线扫频控制线程。处理循环拿到一个hop（频点）的完整样本后立即调用onHopCaptured()，
+ * 本线程马上把源调到下一个频点，所以hop N的FFT和检测与hop N+1的调谐和PLL稳定时间重叠，
+ * 而不是像以前那样等处理完才调谐。调谐期间源丢弃的数据包由IQSourceInterface.getRetuneEpoch()标记。
+ * 调谐请求只保留最新的一个（与RtlsdrSource的frequencyChangeCommandQueue相同）。
+ * 下一个频点可以按顺序（起始频率 .. 结束频率），也可以由HopScheduler按优先级决定。
+ * 同时统计每一轮完整扫频的耗时。统计由处理循环、UI线程（reset()/retune()）和本线程（调谐耗时）共同更新，都由this保护。
+ */
+public class SweepController extends Thread {
+    private static final int MAX_SWEEP_HOPS = 1000;    // 防止步进为0时永远停留在同一个频点
+
+    private IQSourceInterface source = null;
+    private boolean stopRequested = true;
+    private long pendingFrequency = -1;            // 等待执行的调谐（-1：没有），由this保护
+    private volatile boolean retuning = false;     // 正在执行source.setFrequency()
+    private volatile long expectedFrequency = -1;  // 下一个hop应有的频率（-1：任意）
+
+    // 扫频统计（由this保护）:
+    private long sweepStartTime = 0;               // 捕获到起始频率hop的时间（0：当前没有完整的一轮）
+    private int sweepHops = 0;                     // 本轮已捕获的hop数
+    private long retuneTime = 0;                   // 本轮调谐（setFrequency）累计耗时（ns）
+    private volatile long lastSweepTime = 0;       // 上一轮扫频耗时（ms）
+    private volatile int lastSweepHops = 0;
+    private volatile int sweepCount = 0;           // 已完成的扫频轮数
+    private long totalSweepTime = 0;
+
+    public SweepController(IQSourceInterface source) {
+        this.source = source;
+    }
+
+    public void start() {
+        this.stopRequested = false;
+        super.start();
+    }
+
+    public synchronized void stopController() {
+        this.stopRequested = true;
+        notifyAll();
+    }
+
+    /**
+     * 处理循环拿到一个hop的完整样本后调用（在开始FFT之前）：立即请求下一个频点。
+     * 超过end时回到start，一轮扫频结束。
+     *
+     * @param frequency 这个hop的中心频率（SamplePacket.getFrequency()）
+     * @param step      步进（Hz），通常是采样率
+     * @param start     扫频起始频率
+     * @param end       扫频结束频率（包含）
+     * @return false 如果这个hop属于已经离开的频点（下一个频点的调谐还没开始时Scheduler又填满了一个缓冲区），应丢弃
+     */
+    public boolean onHopCaptured(long frequency, long step, long start, long end) {
+        if (isStale(frequency))
+            return false;
+
+        long now = System.currentTimeMillis();
+        long next = frequency + step;
+        synchronized (this) {
+            if (frequency == start) {
+                sweepStartTime = now;
+                sweepHops = 0;
+                retuneTime = 0;
+            }
+            sweepHops++;
+            if (next > end || step <= 0 || sweepHops > MAX_SWEEP_HOPS) {
+                if (sweepStartTime > 0)
+                    finishSweep(now);
+                next = start;
+            }
+        }
+        requestRetune(next);
+        return true;
+    }
+
+    /**
+     * 与onHopCaptured(frequency, step, start, end)相同，但下一个频点由HopScheduler按优先级决定。
+     * 每个hop都至少访问过一次时算完成一轮扫频。
+     *
+     * @param frequency 这个hop的中心频率（SamplePacket.getFrequency()）
+     * @param hops      hop调度器
+     * @return false 如果这个hop属于已经离开的频点，应丢弃
+     */
+    public boolean onHopCaptured(long frequency, HopScheduler hops) {
+        if (isStale(frequency))
+            return false;
+
+        long now = System.currentTimeMillis();
+        boolean complete = hops.visit(frequency);
+        synchronized (this) {
+            if (sweepStartTime == 0) {
+                sweepStartTime = now;
+                sweepHops = 0;
+                retuneTime = 0;
+            }
+            sweepHops++;
+            if (complete) {
+                finishSweep(now);
+                sweepStartTime = now;    // 下一轮从现在开始（没有固定的起始频点）
+                sweepHops = 0;
+                retuneTime = 0;
+            }
+        }
+        requestRetune(hops.next());
+        return true;
+    }
+
+    /**
+     * @return true 如果frequency不是期待的频点，而且源已经（或即将）离开它（同一频点的重复hop，没有人从外部改过频率）
+     */
+    private boolean isStale(long frequency) {
+        long expected = expectedFrequency;
+        return expected >= 0 && frequency != expected && (hasPendingRetune() || retuning || source.getFrequency() != frequency);
+    }
+
+    /**
+     * 跳到指定的频率（不按扫频顺序，例如切换扫描模式）。取代还没执行的调谐请求，当前一轮的计时作废。
+     *
+     * @param frequency 新的中心频率
+     */
+    public synchronized void retune(long frequency) {
+        sweepStartTime = 0;
+        requestRetune(frequency);
+    }
+
+    /**
+     * 工作模式改变：不再期待特定的频点，当前一轮的计时作废
+     */
+    public synchronized void reset() {
+        expectedFrequency = -1;
+        sweepStartTime = 0;
+    }
+
+    private synchronized void requestRetune(long frequency) {
+        expectedFrequency = frequency;
+        pendingFrequency = frequency;
+        notifyAll();
+    }
+
+    private synchronized boolean hasPendingRetune() {
+        return pendingFrequency >= 0;
+    }
+
+    // 调用者持有this:
+    private void finishSweep(long now) {
+        lastSweepTime = now - sweepStartTime;
+        lastSweepHops = sweepHops;
+        totalSweepTime += lastSweepTime;
+        sweepCount++;
+        Logger.i("扫频#" + sweepCount + "耗时：" + lastSweepTime + "ms，" + sweepHops + "个频点，调谐平均"
+                + (retuneTime / 1000 / Math.max(1, sweepHops)) + "us，平均每轮" + (totalSweepTime / sweepCount) + "ms");
+        sweepStartTime = 0;
+    }
+
+    /**
+     * @return 上一轮完整扫频的耗时（ms），0表示还没有完成一轮
+     */
+    public long getLastSweepTime() {
+        return lastSweepTime;
+    }
+
+    /**
+     * @return 上一轮扫频的hop数
+     */
+    public int getLastSweepHops() {
+        return lastSweepHops;
+    }
+
+    /**
+     * @return 已完成的扫频轮数
+     */
+    public int getSweepCount() {
+        return sweepCount;
+    }
+
+    @Override
+    public void run() {
+        Logger.i("SweepController started. (Thread: " + this.getName() + ")");
+        while (true) {
+            long frequency;
+            synchronized (this) {
+                try {
+                    while (pendingFrequency < 0 && !stopRequested)
+                        wait(100);
+                } catch (InterruptedException e) {
+                    Logger.e("run: Interrupted while waiting for a retune request. stop.");
+                    break;
+                }
+                if (stopRequested)
+                    break;
+                frequency = pendingFrequency;
+                pendingFrequency = -1;
+                retuning = true;
+            }
+            long startTime = System.nanoTime();
+            source.setFrequency(frequency);
+            long duration = System.nanoTime() - startTime;
+            synchronized (this) {
+                retuneTime += duration;
+            }
+            retuning = false;
+        }
+        this.stopRequested = true;
+        Logger.i("SweepController stopped. (Thread: " + this.getName() + ")");
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.frequencydetectionclient.utils;
+
+import com.example.frequencydetectionclient.bean.SamplePacket;
+
+/**
+ * Module:      CicDecimator.java
+ * Description: 级联积分梳状（CIC）抽取器，4级，差分延迟M=1。不需要乘法（除了输入/输出的定点换算），适合作为大抽取比的第一级。
+ * 积分器使用long定点运算：溢出回绕在梳状级中自动抵消，只要输出本身不超出long的范围（见MAX_DECIMATION）。
+ * 通带下垂 |sin(pi*f*R/fs) / (R*sin(pi*f/fs))|^4 由后面的FirFilter.createCicCompensator()补偿。
+ */
+public class CicDecimator {
+	public static final int STAGES = 4;
+	private static final float INPUT_SCALE = 1 << 15;	// input samples are within [-1,1]
+	// 15 bit input + STAGES*log2(R) bit growth must fit into 63 bits:
+	public static final int MAX_DECIMATION = 2048;
+
+	private final int decimation;
+	private final float outputScale;		// 1 / (INPUT_SCALE * R^STAGES)  ->  unity DC gain
+	private int decimationCounter = 0;		// number of input samples since the last output
+	// integrator states (re / im):
+	private long ir1, ir2, ir3, ir4, ii1, ii2, ii3, ii4;
+	// comb delays (re / im):
+	private long cr1, cr2, cr3, cr4, ci1, ci2, ci3, ci4;
+
+	/**
+	 * Constructor
+	 *
+	 * @param decimation	decimation factor R (2 .. MAX_DECIMATION)
+	 */
+	public CicDecimator(int decimation) {
+		if (decimation < 2 || decimation > MAX_DECIMATION)
+			throw new IllegalArgumentException("decimation must be within 2.." + MAX_DECIMATION);
+		this.decimation = decimation;
+		this.outputScale = (float) (1 / (INPUT_SCALE * Math.pow(decimation, STAGES)));
+	}
+
+	public int getDecimation() {
+		return decimation;
+	}
+
+	/**
+	 * Magnitude response of a CIC filter with STAGES stages
+	 *
+	 * @param frequency		frequency relative to the input rate of the CIC filter (0 .. 0.5)
+	 * @param decimation	decimation factor R
+	 * @return |H(f)| (1 at DC)
+	 */
+	public static double getResponse(double frequency, int decimation) {
+		double x = Math.PI * frequency;
+		if (Math.abs(Math.sin(x)) < 1e-12)
+			return 1;
+		return Math.pow(Math.abs(Math.sin(x * decimation) / (decimation * Math.sin(x))), STAGES);
+	}
+
+	/**
+	 * Filters the samples from the input sample packet and appends filter output to the output
+	 * sample packet. Stops automatically if output sample packet is full.
+	 *
+	 * @param in		input sample packet
+	 * @param out		output sample packet
+	 * @param offset	offset to use as start index for the input packet
+	 * @param length	max number of samples processed from the input packet
+	 * @return number of samples consumed from the input packet
+	 */
+	public int filter(SamplePacket in, SamplePacket out, int offset, int length) {
+		int indexOut = out.size();
+		int capacity = out.capacity();
+		float[] reIn = in.re(), imIn = in.im(), reOut = out.re(), imOut = out.im();
+		// local copies of the state (keeps them in registers):
+		long r1 = ir1, r2 = ir2, r3 = ir3, r4 = ir4, i1 = ii1, i2 = ii2, i3 = ii3, i4 = ii4;
+		int counter = decimationCounter;
+		int i;
+
+		for (i = 0; i < length; i++) {
+			if (counter == decimation - 1 && indexOut >= capacity)
+				break;	// this sample would produce an output that does not fit into the output packet
+
+			// integrators (input rate):
+			r1 += (long) (reIn[offset + i] * INPUT_SCALE);
+			r2 += r1;
+			r3 += r2;
+			r4 += r3;
+			i1 += (long) (imIn[offset + i] * INPUT_SCALE);
+			i2 += i1;
+			i3 += i2;
+			i4 += i3;
+
+			if (++counter == decimation) {
+				counter = 0;
+				// combs (output rate):
+				long d1 = r4 - cr1; cr1 = r4;
+				long d2 = d1 - cr2; cr2 = d1;
+				long d3 = d2 - cr3; cr3 = d2;
+				long d4 = d3 - cr4; cr4 = d3;
+				reOut[indexOut] = d4 * outputScale;
+				d1 = i4 - ci1; ci1 = i4;
+				d2 = d1 - ci2; ci2 = d1;
+				d3 = d2 - ci3; ci3 = d2;
+				d4 = d3 - ci4; ci4 = d3;
+				imOut[indexOut] = d4 * outputScale;
+				indexOut++;
+			}
+		}
+
+		ir1 = r1; ir2 = r2; ir3 = r3; ir4 = r4; ii1 = i1; ii2 = i2; ii3 = i3; ii4 = i4;
+		decimationCounter = counter;
+		out.setSize(indexOut);	// update size of output sample packet
+		out.setSampleRate(in.getSampleRate() / decimation);	// update the sample rate of the output sample packet
+		return i;				// We return the number of consumed samples from the input buffers
+	}
+}
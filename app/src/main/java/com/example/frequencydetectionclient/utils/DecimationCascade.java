@@ -0,0 +1,242 @@
+package com.example.frequencydetectionclient.utils;
+
+import com.example.frequencydetectionclient.bean.SamplePacket;
+import com.example.frequencydetectionclient.hackrf.HalfBandLowPassFilter;
+import com.orhanobut.logger.Logger;
+
+/**
+ * Module:      DecimationCascade.java
+ * Description: 多级抽取器：可选的CIC前级（CicDecimator，抽取R），若干个半带滤波器（每级抽取2）和最后一个FirFilter（抽取D），
+ * 把任意输入采样率降到目标采样率。plan() 在所有可行的级联中选出每个输入样本乘加次数（MAC）最少的方案。
+ * 使用CIC前级时，最后的FirFilter同时补偿CIC的通带下垂（FirFilter.createCicCompensator()）。
+ *
+ * 代价模型（实数MAC / 复数输入样本，对称抽头按对折叠计算）:
+ *   CIC:           2（浮点->定点换算）+ 2/R（定点->浮点），积分器和梳状级只有加法
+ *   半带滤波器 N:  N/4（中间抽头不需要乘法），第i级只看到 1/2^i 的输入样本
+ *   FirFilter:     2*ceil(ntaps/2)/D，长滤波器（OverlapSaveFilter）按 2*log2(fftSize)*fftSize/blockLength 估算
+ */
+public class DecimationCascade {
+	// 最后的FirFilter：通带截止 = FINAL_CUTOFF*输出采样率，过渡带 = FINAL_TRANSITION*输出采样率
+	private static final float FINAL_CUTOFF = 0.3f;
+	private static final float FINAL_TRANSITION = 0.4f;
+	private static final float FINAL_ATTENUATION = 40;	// dB, about the alias rejection of the half band stages
+
+	// Half band filters that can be used (cheapest first) and the highest protected band edge (relative to the
+	// input rate of the stage) at which the aliases are still attenuated by about 40dB:
+	private static final int[] HALF_BAND_N = {8, 12, 32};
+	private static final float[] HALF_BAND_MAX_BAND = {0.0625f, 0.125f, 0.2f};
+
+	private final int inputRate;
+	private final int outputRate;			// actual output rate (inputRate / decimation)
+	private final CicDecimator cic;			// null if the cascade has no CIC stage
+	private final SamplePacket cicBuffer;
+	private final int[] halfBandN;			// N of the half band stages (in processing order)
+	private final HalfBandLowPassFilter[] halfBands;
+	private final FirFilter finalFilter;
+	private final SamplePacket[] buffers;	// output buffers of the half band stages
+	private final float cost;
+
+	private DecimationCascade(int inputRate, int cicDecimation, int[] halfBandN, FirFilter finalFilter, int packetSize,
+							  float cost) {
+		this.inputRate = inputRate;
+		this.halfBandN = halfBandN;
+		this.finalFilter = finalFilter;
+		this.outputRate = inputRate / (cicDecimation * (1 << halfBandN.length) * finalFilter.getDecimation());
+		this.cost = cost;
+		if (cicDecimation > 1) {
+			this.cic = new CicDecimator(cicDecimation);
+			this.cicBuffer = new SamplePacket(packetSize / cicDecimation + 1);
+			packetSize = cicBuffer.capacity();
+		} else {
+			this.cic = null;
+			this.cicBuffer = null;
+		}
+		this.halfBands = new HalfBandLowPassFilter[halfBandN.length];
+		this.buffers = new SamplePacket[halfBandN.length];
+		for (int i = 0; i < halfBandN.length; i++) {
+			halfBands[i] = new HalfBandLowPassFilter(halfBandN[i]);
+			buffers[i] = new SamplePacket((packetSize >> (i + 1)) + 1);
+		}
+	}
+
+	/**
+	 * Plans the cheapest cascade for the given rates and creates the filters.
+	 * If inputRate is not a multiple of outputRate, the nearest integer decimation is used (see getOutputRate()).
+	 *
+	 * @param inputRate		sample rate of the incoming packets
+	 * @param outputRate	wanted sample rate at the output
+	 * @param packetSize	max size of the incoming packets
+	 * @return cascade or null if the rates are invalid
+	 */
+	public static DecimationCascade plan(int inputRate, int outputRate, int packetSize) {
+		if (inputRate <= 0 || outputRate <= 0 || outputRate > inputRate) {
+			Logger.e("plan: invalid rates: input=" + inputRate + " output=" + outputRate);
+			return null;
+		}
+		int decimation = Math.max(1, Math.round(inputRate / (float) outputRate));
+		if (inputRate % outputRate != 0)
+			Logger.w("plan: " + inputRate + " is not a multiple of " + outputRate + ". Output rate will be "
+					+ inputRate / decimation);
+
+		int bestR = 1;
+		int[] bestN = null;
+		float bestCost = Float.MAX_VALUE;
+		// R = decimation of the CIC stage (1 = no CIC stage):
+		for (int r = 1; r <= Math.min(decimation, CicDecimator.MAX_DECIMATION); r++) {
+			if (decimation % r != 0)
+				continue;
+			float cost = 0;
+			if (r > 1) {
+				// The first alias band (CIC output rate - band edge) must be attenuated as much as the final filter does:
+				float band = FINAL_CUTOFF * r / decimation;	// band edge relative to the CIC output rate
+				if (20 * Math.log10(CicDecimator.getResponse((1 - band) / r, r)) > -FINAL_ATTENUATION)
+					break;		// larger R only gets worse
+				cost = 2 + 2f / r;
+			}
+			int[] n = planHalfBands(decimation / r);
+			cost += getHalfBandCost(n, decimation / r) / r;
+			if (cost < bestCost) {
+				bestCost = cost;
+				bestR = r;
+				bestN = n;
+			}
+		}
+
+		// Final filter; gain compensates the gain of 2 of every half band stage:
+		int bestD = decimation / bestR / (1 << bestN.length);
+		float finalRate = (inputRate / (float) bestR) / (1 << bestN.length);
+		float cutoff = FINAL_CUTOFF * finalRate / bestD;
+		float transition = FINAL_TRANSITION * finalRate / bestD;
+		float gain = 1f / (1 << bestN.length);
+		FirFilter finalFilter = bestR > 1
+				? FirFilter.createCicCompensator(bestD, gain, finalRate, cutoff, transition, FINAL_ATTENUATION, inputRate, bestR)
+				: FirFilter.createLowPass(bestD, gain, finalRate, cutoff, transition, FINAL_ATTENUATION);
+		if (finalFilter == null)
+			return null;
+		DecimationCascade cascade = new DecimationCascade(inputRate, bestR, bestN, finalFilter, packetSize, bestCost);
+		Logger.d("plan: " + cascade);
+		return cascade;
+	}
+
+	/**
+	 * Finds the cheapest combination of half band stages and final filter for the given decimation
+	 *
+	 * @param decimation	decimation of half band stages and final filter
+	 * @return N of the half band stages (the final filter decimates by decimation / 2^length)
+	 */
+	private static int[] planHalfBands(int decimation) {
+		float band = FINAL_CUTOFF / decimation;	// protected band edge relative to the input rate
+		int[] bestN = new int[0];
+		float bestCost = Float.MAX_VALUE;
+		// k = number of half band stages; the final FirFilter does the remaining factor decimation / 2^k
+		for (int k = 0; (decimation % (1 << k)) == 0; k++) {
+			int[] n = new int[k];
+			for (int i = 0; i < k && n != null; i++) {
+				float stageBand = band * (1 << i);
+				int s = 0;
+				while (s < HALF_BAND_N.length && stageBand > HALF_BAND_MAX_BAND[s])
+					s++;
+				if (s == HALF_BAND_N.length)
+					n = null;	// no half band filter protects the band at this stage
+				else
+					n[i] = HALF_BAND_N[s];
+			}
+			if (n == null)
+				break;		// later stages only get worse
+			float cost = getHalfBandCost(n, decimation);
+			if (cost < bestCost) {
+				bestCost = cost;
+				bestN = n;
+			}
+			if ((decimation >> k) == 1)
+				break;
+		}
+		return bestN;
+	}
+
+	/**
+	 * @return cost of the half band stages n followed by the final filter (MACs per input sample)
+	 */
+	private static float getHalfBandCost(int[] n, int decimation) {
+		float cost = 0;
+		for (int i = 0; i < n.length; i++)
+			cost += n[i] / 4f / (1 << i);
+		return cost + getFinalFilterCost(decimation >> n.length) / (1 << n.length);
+	}
+
+	/**
+	 * Estimated cost of the final FirFilter (real MACs per input sample of the filter)
+	 */
+	private static float getFinalFilterCost(int decimation) {
+		int ntaps = (int) (FINAL_ATTENUATION * decimation / (22.0 * FINAL_TRANSITION)) | 1;	// see FirFilter.createLowPass()
+		if (OverlapSaveFilter.isWorthwhile(ntaps, decimation)) {
+			int fftSize = Integer.highestOneBit(Math.max(4 * ntaps, 64) - 1) << 1;	// see OverlapSaveFilter
+			float log2 = 31 - Integer.numberOfLeadingZeros(fftSize);
+			return 2 * log2 * fftSize / (fftSize - ntaps + 1);
+		}
+		return 2 * ((ntaps + 1) / 2) / (float) decimation;
+	}
+
+	/**
+	 * Decimates the input packet into the output packet (replaces the content of the output packet).
+	 *
+	 * @param in	input samples at getInputRate()
+	 * @param out	output samples at getOutputRate()
+	 */
+	public void decimate(SamplePacket in, SamplePacket out) {
+		SamplePacket stageIn = in;
+		if (cic != null) {
+			cicBuffer.setSize(0);	// mark buffer as empty
+			if (cic.filter(stageIn, cicBuffer, 0, stageIn.size()) < stageIn.size())
+				Logger.e("decimate: [cic] could not filter all samples from input packet.");
+			stageIn = cicBuffer;
+		}
+		for (int i = 0; i < halfBands.length; i++) {
+			SamplePacket stageOut = buffers[i];
+			stageOut.setSize(0);	// mark buffer as empty
+			int consumed;
+			switch (halfBandN[i]) {
+				case 8:		consumed = halfBands[i].filterN8(stageIn, stageOut, 0, stageIn.size());
+							break;
+				case 12:	consumed = halfBands[i].filterN12(stageIn, stageOut, 0, stageIn.size());
+							break;
+				default:	consumed = halfBands[i].filter(stageIn, stageOut, 0, stageIn.size());
+							break;
+			}
+			if (consumed < stageIn.size())
+				Logger.e("decimate: [half band " + i + "] could not filter all samples from input packet.");
+			stageIn = stageOut;
+		}
+		out.setSize(0);		// mark buffer as empty
+		if (finalFilter.filter(stageIn, out, 0, stageIn.size()) < stageIn.size())
+			Logger.e("decimate: [final filter] could not filter all samples from input packet.");
+	}
+
+	public int getInputRate() {
+		return inputRate;
+	}
+
+	public int getOutputRate() {
+		return outputRate;
+	}
+
+	/**
+	 * @return estimated number of real multiply-accumulates per (complex) input sample
+	 */
+	public float getCost() {
+		return cost;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(inputRate).append(" -> ").append(outputRate).append(" Sps: ");
+		if (cic != null)
+			sb.append("CIC").append(CicDecimator.STAGES).append("(R=").append(cic.getDecimation()).append(") -> ");
+		for (int n : halfBandN)
+			sb.append("HB").append(n).append(" -> ");
+		sb.append("FIR(").append(finalFilter.getNumberOfTaps()).append(" taps, D=").append(finalFilter.getDecimation())
+				.append(") cost=").append(String.format("%.2f", cost)).append(" MAC/sample");
+		return sb.toString();
+	}
+}
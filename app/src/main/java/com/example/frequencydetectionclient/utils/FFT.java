@@ -25,54 +25,150 @@ package com.example.frequencydetectionclient.utils;
 
 public class FFT {
 
-	int n, m;
+	public static final int ENGINE_RADIX2 = 0;
+	public static final int ENGINE_RADIX4 = 1;
+	public static final int ENGINE_SPLIT_RADIX = 2;
+
+	public static final int WINDOW_BLACKMAN = 0;			// reference window for all dB thresholds
+	public static final int WINDOW_HANN = 1;
+	public static final int WINDOW_BLACKMAN_HARRIS = 2;
+	public static final int WINDOW_FLAT_TOP = 3;
 
-	// Lookup tables.  Only need to recompute when size of FFT changes.
-	float[] cos;
-	float[] sin;
+	int n, m;
 
 	float[] window;
 
+	// Cached tables (twiddles, bit-reversal, window) for this size and window type. See FFTPlan.
+	private FFTPlan plan;
+	// The kernel that does the actual transform. Can be exchanged at runtime (see setEngine()).
+	private FFTEngine engine;
+	private int engineType;
+	// -10*log10(n) plus the coherent gain correction of the window (see logMagnitude())
+	private float magnitudeOffset;
+
 	public FFT(int n) {
+		this(n, ENGINE_RADIX4);
+	}
+
+	public FFT(int n, int engineType) {
+		this(n, engineType, WINDOW_BLACKMAN);
+	}
+
+	public FFT(int n, int engineType, int windowType) {
 		this.n = n;
-		this.m = (int)(Math.log(n) / Math.log(2));
+		this.m = log2(n);
 
 		// Make sure n is a power of 2
 		if(n != (1<<m))
 			throw new RuntimeException("FFT length must be power of 2");
 
-		// precompute tables
-		cos = new float[n/2];
-		sin = new float[n/2];
-
-//     for(int i=0; i<n/4; i++) {
-//       cos[i] = Math.cos(-2*Math.PI*i/n);
-//       sin[n/4-i] = cos[i];
-//       cos[n/2-i] = -cos[i];
-//       sin[n/4+i] = cos[i];
-//       cos[n/2+i] = -cos[i];
-//       sin[n*3/4-i] = -cos[i];
-//       cos[n-i]   = cos[i];
-//       sin[n*3/4+i] = -cos[i];        
-//     }
-
-		for(int i=0; i<n/2; i++) {
-			cos[i] = (float) Math.cos(-2*Math.PI*i/n);
-			sin[i] = (float) Math.sin(-2*Math.PI*i/n);
-		}
+		this.engineType = engineType;
+		setWindowType(windowType);
+	}
+
+	/**
+	 * Selects the FFT kernel. Can be called while the FFT is in use by the same thread.
+	 *
+	 * @param engineType	ENGINE_RADIX2, ENGINE_RADIX4 or ENGINE_SPLIT_RADIX
+	 */
+	public void setEngine(int engineType) {
+		engine = plan.getEngine(engineType);
+		this.engineType = engineType;
+	}
+
+	/**
+	 * Selects the window that is used by applyWindow() and spectrum(). The plan (and all its tables)
+	 * comes from the process-wide cache, so switching back and forth does not allocate anything.
+	 * The levels returned by spectrum() / logMagnitude() are corrected by the coherent gain of the
+	 * window, so a sinusoid has the same level (in dB) as with the Blackman window.
+	 *
+	 * @param windowType	WINDOW_BLACKMAN, WINDOW_HANN, WINDOW_BLACKMAN_HARRIS or WINDOW_FLAT_TOP
+	 */
+	public void setWindowType(int windowType) {
+		plan = FFTPlan.get(n, windowType);
+		window = plan.window;
+		magnitudeOffset = (float) (-10 * Math.log10(n)) + plan.getAmplitudeCorrection();
+		setEngine(engineType);
+	}
+
+	/**
+	 * @return the currently used window: WINDOW_BLACKMAN, WINDOW_HANN, WINDOW_BLACKMAN_HARRIS or WINDOW_FLAT_TOP
+	 */
+	public int getWindowType() {
+		return plan.windowType;
+	}
+
+	/**
+	 * @return equivalent noise bandwidth of the current window in bins
+	 */
+	public float getEnbw() {
+		return plan.enbw;
+	}
+
+	/**
+	 * The noise floor (not the level of a sinusoid) depends on the equivalent noise bandwidth of the window.
+	 * Compared to the Blackman window it moves by this amount (in dB) in the output of spectrum().
+	 *
+	 * @return noise floor offset in dB relative to the Blackman window
+	 */
+	public float getNoiseFloorOffset() {
+		return plan.getNoiseFloorOffset();
+	}
 
-		makeWindow();
+	/**
+	 * @return the currently used kernel: ENGINE_RADIX2, ENGINE_RADIX4 or ENGINE_SPLIT_RADIX
+	 */
+	public int getEngine() {
+		return engineType;
 	}
 
-	protected void makeWindow() {
-		// Make a blackman window:
-		// w(n)=0.42-0.5cos{(2*PI*n)/(N-1)}+0.08cos{(4*PI*n)/(N-1)};
-		window = new float[n];
-		for(int i = 0; i < window.length; i++)
-			window[i] = (float) (0.42 - 0.5 * Math.cos(2*Math.PI*i/(n-1))
-					+ 0.08 * Math.cos(4*Math.PI*i/(n-1)));
+	/**
+	 * @return log2(n), rounded down
+	 */
+	static int log2(int n) {
+		return 31 - Integer.numberOfLeadingZeros(n);
 	}
 
+	/**
+	 * Precomputes the bit-reversal permutation of length n as a flat list of index pairs (i, j)
+	 * with i < j that have to be swapped.
+	 *
+	 * @param n		FFT length (power of 2)
+	 * @return {i0, j0, i1, j1, ...}
+	 */
+	static int[] makeBitReverseSwaps(int n) {
+		int bits = log2(n);
+		int count = 0;
+		int[] tmp = new int[n];
+		for (int i = 0; i < n; i++) {
+			int j = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+			if (i < j) {
+				tmp[count++] = i;
+				tmp[count++] = j;
+			}
+		}
+		int[] swaps = new int[count];
+		System.arraycopy(tmp, 0, swaps, 0, count);
+		return swaps;
+	}
+
+	/**
+	 * Precomputes the complete bit-reversal permutation of length n
+	 *
+	 * @param n		FFT length (power of 2)
+	 * @return table with table[i] = bit reversed i
+	 */
+	static int[] makeBitReverseTable(int n) {
+		int bits = log2(n);
+		int[] table = new int[n];
+		for (int i = 0; i < n; i++)
+			table[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+		return table;
+	}
+
+	/**
+	 * @return window coefficients of the current window (shared by the plan cache, do not modify)
+	 */
 	public float[] getWindow() {
 		return window;
 	}
@@ -84,76 +180,92 @@ public class FFT {
 		}
 	}
 
+	/**
+	 * In-place forward DFT of a complex input, computed by the selected engine.
+	 *
+	 * @param x		real parts
+	 * @param y		imaginary parts
+	 */
+	public void fft(float[] x, float[] y) {
+		engine.fft(x, y);
+	}
 
-	/***************************************************************
-	 * fft.c
-	 * Douglas L. Jones
-	 * University of Illinois at Urbana-Champaign
-	 * January 19, 1992
-	 * http://cnx.rice.edu/content/m12016/latest/
+	/**
+	 * Fused spectral kernel: windows the samples, computes the FFT and writes the FFT-shifted
+	 * log magnitude (dB) into mag, so that the center frequency ends up in the middle of the array.
+	 * This does the same as applyWindow() + fft() + the magnitude loop, but with fewer passes over
+	 * the data and without allocations:
+	 *   - the window is applied while the engine loads the samples (bit-reversal / first stage)
+	 *   - 10*log10(sqrt(p / n^2)) is computed as 5*log10(p) - 10*log10(n)
+	 *   - the FFT shift is done by splitting the loop into two halves (no modulo)
+	 * Note that re and im are overwritten with the FFT result.
 	 *
-	 *   fft: in-place radix-2 DIT DFT of a complex input
+	 * @param re	real parts of the samples (length >= n)
+	 * @param im	imaginary parts of the samples (length >= n)
+	 * @param mag	output array for the magnitudes in dB (length >= n)
+	 */
+	public void spectrum(float[] re, float[] im, float[] mag) {
+		engine.fft(re, im, window);
+		logMagnitude(re, im, mag);
+	}
+
+	/**
+	 * Same as spectrum(), but for samples that were already multiplied with getWindow() while they were
+	 * converted (SamplePacket.getWindow() != null), so the window is not applied a second time.
 	 *
-	 *   input:
-	 * n: length of FFT: must be a power of two
-	 * m: n = 2**m
-	 *   input/output
-	 * x: double array of length n with real part of data
-	 * y: double array of length n with imag part of data
+	 * @param re	real parts of the windowed samples (length >= n)
+	 * @param im	imaginary parts of the windowed samples (length >= n)
+	 * @param mag	output array for the magnitudes in dB (length >= n)
+	 */
+	public void spectrumPreWindowed(float[] re, float[] im, float[] mag) {
+		engine.fft(re, im, null);
+		logMagnitude(re, im, mag);
+	}
+
+	/**
+	 * In-place forward DFT of a complex input that is multiplied with the current window while it is loaded
 	 *
-	 *   Permission to copy and use this program is granted
-	 *   as long as this header is included.
-	 ****************************************************************/
-	public void fft(float[] x, float[] y)
-	{
-		int i,j,k,n1,n2,a;
-		float c,s,e,t1,t2;
-
-
-		// Bit-reverse
-		j = 0;
-		n2 = n/2;
-		for (i=1; i < n - 1; i++) {
-			n1 = n2;
-			while ( j >= n1 ) {
-				j = j - n1;
-				n1 = n1/2;
-			}
-			j = j + n1;
+	 * @param x		real parts
+	 * @param y		imaginary parts
+	 */
+	public void windowedFft(float[] x, float[] y) {
+		engine.fft(x, y, window);
+	}
 
-			if (i < j) {
-				t1 = x[i];
-				x[i] = x[j];
-				x[j] = t1;
-				t1 = y[i];
-				y[i] = y[j];
-				y[j] = t1;
-			}
+	/**
+	 * Same as logMagnitude(), but for a (e.g. averaged) power spectrum |X|^2 that is multiplied with scale first.
+	 *
+	 * @param power		power spectrum (not FFT-shifted)
+	 * @param scale		factor applied to every power value (e.g. 1/number_of_averages)
+	 * @param mag		output array for the magnitudes in dB (length >= n)
+	 */
+	public void logPower(float[] power, float scale, float[] mag) {
+		final int half = n / 2;
+		final float offset = magnitudeOffset;
+		for (int i = 0; i < half; i++) {
+			mag[i + half] = (float) (5 * Math.log10(power[i] * scale)) + offset;
+			mag[i] = (float) (5 * Math.log10(power[i + half] * scale)) + offset;
 		}
+	}
 
-		// FFT
-		n1 = 0;
-		n2 = 1;
-
-		for (i=0; i < m; i++) {
-			n1 = n2;
-			n2 = n2 + n2;
-			a = 0;
-
-			for (j=0; j < n1; j++) {
-				c = cos[a];
-				s = sin[a];
-				a +=  1 << (m-i-1);
-
-				for (k=j; k < n; k=k+n2) {
-					t1 = c*x[k+n1] - s*y[k+n1];
-					t2 = s*x[k+n1] + c*y[k+n1];
-					x[k+n1] = x[k] - t1;
-					y[k+n1] = y[k] - t2;
-					x[k] = x[k] + t1;
-					y[k] = y[k] + t2;
-				}
-			}
+	/**
+	 * Writes the FFT-shifted log magnitude (dB) of an already transformed spectrum into mag.
+	 * The result is normalized to the FFT size: 10*log10(|X/n|) = 5*log10(|X|^2) - 10*log10(n)
+	 * and corrected by the coherent gain of the window relative to the Blackman window.
+	 *
+	 * @param re	real parts of the FFT output
+	 * @param im	imaginary parts of the FFT output
+	 * @param mag	output array for the magnitudes in dB (length >= n)
+	 */
+	public void logMagnitude(float[] re, float[] im, float[] mag) {
+		final int half = n / 2;
+		final float offset = magnitudeOffset;
+		float p;
+		for (int i = 0; i < half; i++) {
+			p = re[i] * re[i] + im[i] * im[i];
+			mag[i + half] = (float) (5 * Math.log10(p)) + offset;
+			p = re[i + half] * re[i + half] + im[i + half] * im[i + half];
+			mag[i] = (float) (5 * Math.log10(p)) + offset;
 		}
 	}
 }
@@ -0,0 +1,32 @@
+package com.example.frequencydetectionclient.utils;
+
+/**
+ * Module:      FFTEngine.java
+ * Description: 原位复数FFT内核的接口。FFT类通过它在运行时切换不同的实现（radix-2 / radix-4 / split-radix），
+ *              调用方仍然只使用 FFT.fft(float[], float[])。
+ */
+public interface FFTEngine {
+
+	/**
+	 * @return length of the transform (power of 2)
+	 */
+	public int getSize();
+
+	/**
+	 * Computes the forward DFT of the given complex input in-place.
+	 *
+	 * @param x		real parts (length >= getSize())
+	 * @param y		imaginary parts (length >= getSize())
+	 */
+	public void fft(float[] x, float[] y);
+
+	/**
+	 * Same as fft(x, y), but multiplies the input with the given window while it is
+	 * loaded for the first time (saves a separate read-modify-write pass over the arrays).
+	 *
+	 * @param x			real parts (length >= getSize())
+	 * @param y			imaginary parts (length >= getSize())
+	 * @param window	window coefficients (length == getSize()) or null for no window
+	 */
+	public void fft(float[] x, float[] y, float[] window);
+}
@@ -0,0 +1,188 @@
+package com.example.frequencydetectionclient.utils;
+
+import java.util.HashMap;
+
+/**
+ * Module:      FFTPlan.java
+ * Description: 进程级的不可变FFT计划缓存。按 (FFT大小, 窗函数) 缓存旋转因子表、位反转表和窗函数系数，
+ *              同一大小的计划共享旋转因子表和位反转表。这样重启处理循环或改变FFT大小时不需要重新计算任何表。
+ *              注意：所有数组都是共享的，只能读取不能修改！
+ */
+final class FFTPlan {
+
+	private static final HashMap<Integer, FFTPlan> cache = new HashMap<Integer, FFTPlan>();
+
+	final int n, m;
+	final float[] cos;				// cos(-2*PI*k/n) for k < n
+	final float[] sin;				// sin(-2*PI*k/n) for k < n
+	final int[] bitReverseSwaps;	// pairs (i, j) with i < j that have to be swapped
+	final int[] bitReverseTable;	// bitReverseTable[i] = bit reversed i
+	final int windowType;
+	final float[] window;
+	final float coherentGain;		// sum(w) / n
+	final float enbw;				// equivalent noise bandwidth in bins: n * sum(w^2) / sum(w)^2
+	private final FFTEngine[] engines = new FFTEngine[3];
+
+	/**
+	 * Returns the (cached) plan for the given size and window.
+	 *
+	 * @param n				FFT length (power of 2)
+	 * @param windowType	FFT.WINDOW_BLACKMAN, FFT.WINDOW_HANN, ...
+	 * @return immutable plan
+	 */
+	static synchronized FFTPlan get(int n, int windowType) {
+		Integer key = (FFT.log2(n) << 8) | windowType;
+		FFTPlan plan = cache.get(key);
+		if (plan == null) {
+			// share the size dependent tables with any other plan of the same size:
+			FFTPlan sameSize = null;
+			for (FFTPlan p : cache.values()) {
+				if (p.n == n) {
+					sameSize = p;
+					break;
+				}
+			}
+			plan = new FFTPlan(n, windowType, sameSize);
+			cache.put(key, plan);
+		}
+		return plan;
+	}
+
+	private FFTPlan(int n, int windowType, FFTPlan sameSize) {
+		this.n = n;
+		this.m = FFT.log2(n);
+		this.windowType = windowType;
+		if (sameSize != null) {
+			this.cos = sameSize.cos;
+			this.sin = sameSize.sin;
+			this.bitReverseSwaps = sameSize.bitReverseSwaps;
+			this.bitReverseTable = sameSize.bitReverseTable;
+		} else {
+			this.cos = new float[n];
+			this.sin = new float[n];
+			for (int i = 0; i < n; i++) {
+				cos[i] = (float) Math.cos(-2*Math.PI*i/n);
+				sin[i] = (float) Math.sin(-2*Math.PI*i/n);
+			}
+			this.bitReverseSwaps = FFT.makeBitReverseSwaps(n);
+			this.bitReverseTable = FFT.makeBitReverseTable(n);
+		}
+		this.window = makeWindow(n, windowType);
+
+		double sum = 0, sumOfSquares = 0;
+		for (float w : window) {
+			sum += w;
+			sumOfSquares += w * w;
+		}
+		this.coherentGain = (float) (sum / n);
+		this.enbw = (float) (n * sumOfSquares / (sum * sum));
+	}
+
+	/**
+	 * Returns the (cached) engine of the given type that works on this plan's tables.
+	 *
+	 * @param engineType	FFT.ENGINE_RADIX2, FFT.ENGINE_RADIX4 or FFT.ENGINE_SPLIT_RADIX
+	 * @return engine
+	 */
+	synchronized FFTEngine getEngine(int engineType) {
+		if (engineType < 0 || engineType >= engines.length)
+			throw new IllegalArgumentException("Unknown FFT engine: " + engineType);
+		if (engines[engineType] == null) {
+			switch (engineType) {
+				case FFT.ENGINE_RADIX2:			engines[engineType] = new Radix2FFTEngine(this);
+												break;
+				case FFT.ENGINE_RADIX4:			engines[engineType] = new Radix4FFTEngine(this);
+												break;
+				case FFT.ENGINE_SPLIT_RADIX:	engines[engineType] = new SplitRadixFFTEngine(this);
+												break;
+			}
+		}
+		return engines[engineType];
+	}
+
+	/**
+	 * Correction (in dB) that has to be added to a magnitude computed with this window so that
+	 * the level of a sinusoid is the same as with the Blackman window (reference for all thresholds).
+	 * Uses the same scale as FFT.logMagnitude(): 10*log10(|X|), i.e. 5*log10 of the power.
+	 *
+	 * @return amplitude correction in dB
+	 */
+	float getAmplitudeCorrection() {
+		return (float) (10 * Math.log10(get(n, FFT.WINDOW_BLACKMAN).coherentGain / coherentGain));
+	}
+
+	/**
+	 * Offset (in dB) of the noise floor of this window compared to the Blackman window after the
+	 * amplitude correction was applied (caused by the different equivalent noise bandwidth).
+	 * Same scale as getAmplitudeCorrection().
+	 *
+	 * @return noise floor offset in dB
+	 */
+	float getNoiseFloorOffset() {
+		return (float) (5 * Math.log10(enbw / get(n, FFT.WINDOW_BLACKMAN).enbw));
+	}
+
+	/**
+	 * Bit-reverse permutation that multiplies every sample with its window coefficient on the way
+	 * (first pass of the decimation in time engines)
+	 *
+	 * @param bitReverseTable	bitReverseTable of the plan
+	 * @param x					real parts
+	 * @param y					imaginary parts
+	 * @param window			window coefficients
+	 */
+	static void windowedBitReverse(int[] bitReverseTable, float[] x, float[] y, float[] window) {
+		float tr, ti;
+		for (int i = 0; i < bitReverseTable.length; i++) {
+			int j = bitReverseTable[i];
+			if (i < j) {
+				tr = x[i] * window[i];
+				ti = y[i] * window[i];
+				x[i] = x[j] * window[j];
+				y[i] = y[j] * window[j];
+				x[j] = tr;
+				y[j] = ti;
+			} else if (i == j) {
+				x[i] *= window[i];
+				y[i] *= window[i];
+			}
+		}
+	}
+
+	/**
+	 * Creates the window coefficients. All windows are symmetric (N-1 in the denominator).
+	 *
+	 * @param n				window length
+	 * @param windowType	FFT.WINDOW_BLACKMAN, FFT.WINDOW_HANN, ...
+	 * @return window coefficients
+	 */
+	private static float[] makeWindow(int n, int windowType) {
+		float[] window = new float[n];
+		double d = n > 1 ? n - 1 : 1;
+		for (int i = 0; i < n; i++) {
+			double x = 2 * Math.PI * i / d;
+			switch (windowType) {
+				case FFT.WINDOW_BLACKMAN:
+					// w(n)=0.42-0.5cos{(2*PI*n)/(N-1)}+0.08cos{(4*PI*n)/(N-1)};
+					window[i] = (float) (0.42 - 0.5 * Math.cos(x) + 0.08 * Math.cos(2 * x));
+					break;
+				case FFT.WINDOW_HANN:
+					window[i] = (float) (0.5 - 0.5 * Math.cos(x));
+					break;
+				case FFT.WINDOW_BLACKMAN_HARRIS:
+					// 4-term Blackman-Harris (-92 dB side lobes)
+					window[i] = (float) (0.35875 - 0.48829 * Math.cos(x) + 0.14128 * Math.cos(2 * x)
+							- 0.01168 * Math.cos(3 * x));
+					break;
+				case FFT.WINDOW_FLAT_TOP:
+					// flat top window (< 0.01 dB scalloping loss)
+					window[i] = (float) (0.21557895 - 0.41663158 * Math.cos(x) + 0.277263158 * Math.cos(2 * x)
+							- 0.083578947 * Math.cos(3 * x) + 0.006947368 * Math.cos(4 * x));
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown window type: " + windowType);
+			}
+		}
+		return window;
+	}
+}
@@ -34,6 +34,8 @@ public class FileIQSource implements IQSourceInterface {
 	private static final String LOGTAG = "FileIQSource";
 	public static final int FILE_FORMAT_8BIT_SIGNED = 0;
 	public static final int FILE_FORMAT_8BIT_UNSIGNED = 1;
+	public static final int FILE_FORMAT_16BIT_SIGNED = 2;	// little endian, I first
+	public static final int FILE_FORMAT_12BIT_PACKED = 3;	// 3 bytes per sample, see Packed12BitIQConverter
 
 	public FileIQSource(String filename, int sampleRate, long frequency, int packetSize, boolean repeat, int fileFormat) {
 		this.filename = filename;
@@ -42,23 +44,41 @@ public class FileIQSource implements IQSourceInterface {
 		this.fileFormat = fileFormat;
 		this.sampleRate = sampleRate;
 		this.frequency = frequency;
-		this.packetSize = packetSize;
-		this.buffer = new byte[packetSize];
-		this.sleepTime = (int)((packetSize/2)/(float)sampleRate * 1000); // note: half packet size because of I and Q samples
+		this.iqConverter = createConverter(fileFormat);
+		if (iqConverter == null) {
+			Logger.e("constructor: Invalid file format: " + fileFormat + " (use 8 bit signed)");
+			this.fileFormat = FILE_FORMAT_8BIT_SIGNED;
+			this.iqConverter = new Signed8BitIQConverter();
+		}
+		iqConverter.setFrequency(frequency);
+		iqConverter.setSampleRate(sampleRate);
 
-		switch (fileFormat) {
+		// a packet must contain whole samples, otherwise the following packets would be misaligned:
+		int bytesPerSample = iqConverter.getBytesPerSample();
+		this.packetSize = packetSize - packetSize % bytesPerSample;
+		this.buffer = new byte[this.packetSize];
+		this.sleepTime = (int)((this.packetSize/bytesPerSample)/(float)sampleRate * 1000);	// samples per packet / sample rate
+	}
+
+	/**
+	 * Creates the converter for the given format. Can be used by every source that delivers one of the file formats.
+	 *
+	 * @param format	FILE_FORMAT_8BIT_SIGNED, FILE_FORMAT_8BIT_UNSIGNED, FILE_FORMAT_16BIT_SIGNED or FILE_FORMAT_12BIT_PACKED
+	 * @return new converter or null if the format is invalid
+	 */
+	public static IQConverter createConverter(int format) {
+		switch (format) {
 			case FILE_FORMAT_8BIT_SIGNED:
-				iqConverter = new Signed8BitIQConverter();
-				break;
+				return new Signed8BitIQConverter();
 			case FILE_FORMAT_8BIT_UNSIGNED:
-				iqConverter = new Unsigned8BitIQConverter();
-				break;
+				return new Unsigned8BitIQConverter();
+			case FILE_FORMAT_16BIT_SIGNED:
+				return new Signed16BitIQConverter();
+			case FILE_FORMAT_12BIT_PACKED:
+				return new Packed12BitIQConverter();
 			default:
-				Logger.e("constructor: Invalid file format: " + fileFormat);
-				break;
+				return null;
 		}
-		iqConverter.setFrequency(frequency);
-		iqConverter.setSampleRate(sampleRate);
 	}
 
 	private void reportError(String msg) {
@@ -196,6 +216,21 @@ public class FileIQSource implements IQSourceInterface {
 		return packetSize;
 	}
 
+	@Override
+	public int getRetuneEpoch() {
+		return 0;	// the frequency of a file source never changes
+	}
+
+	@Override
+	public void setSettleTime(int settleTime) {
+		// nothing to settle on a file source
+	}
+
+	@Override
+	public int getSettleTime() {
+		return 0;
+	}
+
 	@Override
 	public byte[] getPacket(int timeout) {
 		if(bufferedInputStream == null)
@@ -262,4 +297,9 @@ public class FileIQSource implements IQSourceInterface {
 	public int mixPacketIntoSamplePacket(byte[] packet, SamplePacket samplePacket, long channelFrequency) {
 		return this.iqConverter.mixPacketIntoSamplePacket(packet, samplePacket, channelFrequency);
 	}
+
+	@Override
+	public int mixPacketIntoSamplePacketDecimated(byte[] packet, SamplePacket samplePacket, long channelFrequency) {
+		return this.iqConverter.mixPacketIntoSamplePacketDecimated(packet, samplePacket, channelFrequency);
+	}
 }
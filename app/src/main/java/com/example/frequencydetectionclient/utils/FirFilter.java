@@ -8,10 +8,14 @@ import com.orhanobut.logger.Logger;
  * Description:此类实现FIR滤波器。大部分代码复制自GNU Radio的firdes和firfilter模块。
  */
 public class FirFilter {
-	private int tapCounter = 0;
+	// Number of input samples that are processed per block by the direct form kernels
+	private static final int BLOCK_SIZE = 1024;
+
 	private float[] taps;
-	private float[] delaysReal;
-	private float[] delaysImag;
+	private float[] reversedTaps;		// taps[ntaps-1-j]; output = sum(reversedTaps[j] * history[p+j])
+	private boolean symmetric;			// linear phase: taps[j] == taps[ntaps-1-j] -> fold the pairs
+	private float[] historyReal;		// [last ntaps-1 input samples | current block]
+	private float[] historyImag;
 	private int decimation;
 	private int decimationCounter = 1;
 	private float gain;
@@ -19,6 +23,7 @@ public class FirFilter {
 	private float cutOffFrequency;
 	private float transitionWidth;
 	private float attenuation;
+	private OverlapSaveFilter fastFilter;	// FFT based implementation of filter() for long filters (null = direct form)
 	private static final String LOGTAG = "FirFilter";
 
 	/**
@@ -34,14 +39,30 @@ public class FirFilter {
 	 */
 	private FirFilter(float[] taps, int decimation, float gain, float sampleRate, float cutOffFrequency, float transitionWidth, float attenuation) {
 		this.taps = taps;
-		this.delaysReal = new float[taps.length];
-		this.delaysImag = new float[taps.length];
+		this.reversedTaps = new float[taps.length];
+		this.symmetric = true;
+		for (int i = 0; i < taps.length; i++) {
+			reversedTaps[i] = taps[taps.length - 1 - i];
+			if (reversedTaps[i] != taps[i])
+				symmetric = false;
+		}
+		this.historyReal = new float[taps.length - 1 + BLOCK_SIZE];
+		this.historyImag = new float[taps.length - 1 + BLOCK_SIZE];
 		this.decimation = decimation;
 		this.gain = gain;
 		this.sampleRate = sampleRate;
 		this.cutOffFrequency = cutOffFrequency;
 		this.transitionWidth = transitionWidth;
 		this.attenuation = attenuation;
+		if (OverlapSaveFilter.isWorthwhile(taps.length, decimation))
+			this.fastFilter = new OverlapSaveFilter(taps, null, decimation);
+	}
+
+	/**
+	 * @return the filter taps (not a copy, do not modify)
+	 */
+	float[] getTaps() {
+		return taps;
 	}
 
 	/**
@@ -78,6 +99,7 @@ public class FirFilter {
 	/**
 	 * Filters the samples from the input sample packet and appends filter output to the output
 	 * sample packet. Stops automatically if output sample packet is full.
+	 * Long filters (see OverlapSaveFilter.isWorthwhile()) are computed with FFT based fast convolution.
 	 * @param in		input sample packet
 	 * @param out		output sample packet
 	 * @param offset	offset to use as start index for the input packet
@@ -85,52 +107,46 @@ public class FirFilter {
 	 * @return number of samples consumed from the input packet
 	 */
 	public int filter(SamplePacket in, SamplePacket out, int offset, int length) {
-		int index;
+		if (fastFilter != null)
+			return fastFilter.filter(in, out, offset, length);
+
+		final int h = taps.length - 1;
 		int indexOut = out.size();
-		int outputCapacity = out.capacity();
 		float[] reIn = in.re(), imIn = in.im(), reOut = out.re(), imOut = out.im();
+		float[] xr = historyReal, xi = historyImag;
 
-		// insert each input sample into the delay line:
-		for (int i = 0; i < length; i++) {
-			delaysReal[tapCounter] = reIn[offset + i];
-			delaysImag[tapCounter] = imIn[offset + i];
+		// Stop at the input sample that would produce the first output that does not fit into the output packet:
+		int consumable = getConsumable(out.capacity() - indexOut, length);
 
-			// Calculate the filter output for every Mth element (were M = decimation)
-			if(decimationCounter == 0) {
-				// first check if we have enough space in the output buffers:
-				if(indexOut == outputCapacity) {
-					out.setSize(indexOut);	// update size of output sample packet
-					out.setSampleRate(in.getSampleRate()/decimation);	// update the sample rate of the output sample packet
-					return i;    // We return the number of consumed samples from the input buffers
-				}
+		// Process the input in blocks. Every block is appended to the last ntaps-1 input samples, so that
+		// the taps can be applied to a contiguous range of the history (no circular index):
+		int pos = 0;
+		while (pos < consumable) {
+			int count = Math.min(BLOCK_SIZE, consumable - pos);
+			System.arraycopy(reIn, offset + pos, xr, h, count);
+			System.arraycopy(imIn, offset + pos, xi, h, count);
 
-				// Calculate the results:
-				reOut[indexOut] = 0;
-				imOut[indexOut] = 0;
-				index = tapCounter;
-				for (float tap : taps) {
-					reOut[indexOut] += tap * delaysReal[index];
-					imOut[indexOut] += tap * delaysImag[index];
-					index--;
-					if (index < 0)
-						index = taps.length - 1;
+			// Calculate the filter output for every Mth element (were M = decimation)
+			for (int p = firstOutput(); p < count; p += decimation) {
+				if (symmetric) {
+					reOut[indexOut] = dotSymmetric(xr, p);
+					imOut[indexOut] = dotSymmetric(xi, p);
+				} else {
+					reOut[indexOut] = dot(xr, p);
+					imOut[indexOut] = dot(xi, p);
 				}
-
-				// increase indexOut:
 				indexOut++;
 			}
 
-			// update counters:
-			decimationCounter++;
-			if(decimationCounter >= decimation)
-				decimationCounter = 0;
-			tapCounter++;
-			if(tapCounter >= taps.length)
-				tapCounter = 0;
+			// keep the last ntaps-1 samples for the next block:
+			System.arraycopy(xr, count, xr, 0, h);
+			System.arraycopy(xi, count, xi, 0, h);
+			decimationCounter = (decimationCounter + count) % decimation;
+			pos += count;
 		}
 		out.setSize(indexOut);	// update size of output sample packet
 		out.setSampleRate(in.getSampleRate()/decimation);	// update the sample rate of the output sample packet
-		return length;			// We return the number of consumed samples from the input buffers
+		return consumable;		// We return the number of consumed samples from the input buffers
 	}
 
 	/**
@@ -143,49 +159,78 @@ public class FirFilter {
 	 * @return number of samples consumed from the input packet
 	 */
 	public int filterReal(SamplePacket in, SamplePacket out, int offset, int length) {
-		int index;
+		final int h = taps.length - 1;
 		int indexOut = out.size();
-		int outputCapacity = out.capacity();
 		float[] reIn = in.re(), reOut = out.re();
+		float[] xr = historyReal;
 
-		// insert each input sample into the delay line:
-		for (int i = 0; i < length; i++) {
-			delaysReal[tapCounter] = reIn[offset + i];
+		// Stop at the input sample that would produce the first output that does not fit into the output packet:
+		int consumable = getConsumable(out.capacity() - indexOut, length);
 
-			// Calculate the filter output for every Mth element (were M = decimation)
-			if(decimationCounter == 0) {
-				// first check if we have enough space in the output buffers:
-				if(indexOut == outputCapacity) {
-					out.setSize(indexOut);	// update size of output sample packet
-					out.setSampleRate(in.getSampleRate()/decimation);	// update the sample rate of the output sample packet
-					return i;    // We return the number of consumed samples from the input buffers
-				}
-
-				// Calculate the results:
-				reOut[indexOut] = 0;
-				index = tapCounter;
-				for (float tap : taps) {
-					reOut[indexOut] += tap * delaysReal[index];
-					index--;
-					if (index < 0)
-						index = taps.length - 1;
-				}
+		int pos = 0;
+		while (pos < consumable) {
+			int count = Math.min(BLOCK_SIZE, consumable - pos);
+			System.arraycopy(reIn, offset + pos, xr, h, count);
 
-				// increase indexOut:
+			// Calculate the filter output for every Mth element (were M = decimation)
+			for (int p = firstOutput(); p < count; p += decimation) {
+				reOut[indexOut] = symmetric ? dotSymmetric(xr, p) : dot(xr, p);
 				indexOut++;
 			}
 
-			// update counters:
-			decimationCounter++;
-			if(decimationCounter >= decimation)
-				decimationCounter = 0;
-			tapCounter++;
-			if(tapCounter >= taps.length)
-				tapCounter = 0;
+			// keep the last ntaps-1 samples for the next block:
+			System.arraycopy(xr, count, xr, 0, h);
+			decimationCounter = (decimationCounter + count) % decimation;
+			pos += count;
 		}
 		out.setSize(indexOut);	// update size of output sample packet
 		out.setSampleRate(in.getSampleRate()/decimation);	// update the sample rate of the output sample packet
-		return length;			// We return the number of consumed samples from the input buffers
+		return consumable;		// We return the number of consumed samples from the input buffers
+	}
+
+	/**
+	 * Index (relative to the next input sample) of the next input sample that produces an output.
+	 * An output is calculated when decimationCounter == 0, then it counts up to decimation-1
+	 * (with decimation == 1 the very first input sample does not produce an output, because the counter starts at 1).
+	 */
+	private int firstOutput() {
+		return decimationCounter == 0 ? 0 : Math.max(1, decimation - decimationCounter);
+	}
+
+	/**
+	 * @param room		free space in the output packet
+	 * @param length	number of available input samples
+	 * @return number of input samples that can be consumed before the output packet is full
+	 */
+	private int getConsumable(int room, int length) {
+		long limit = firstOutput() + (long) room * decimation;
+		return limit < length ? (int) limit : length;
+	}
+
+	/**
+	 * Filter output for the input sample at x[p + ntaps - 1] (general taps)
+	 */
+	private float dot(float[] x, int p) {
+		final float[] t = reversedTaps;
+		float acc = 0;
+		for (int j = 0; j < t.length; j++)
+			acc += t[j] * x[p + j];
+		return acc;
+	}
+
+	/**
+	 * Filter output for the input sample at x[p + ntaps - 1] (symmetric taps: one multiplication per pair)
+	 */
+	private float dotSymmetric(float[] x, int p) {
+		final float[] t = taps;
+		final int last = p + t.length - 1;
+		final int half = t.length >> 1;
+		float acc = 0;
+		for (int j = 0; j < half; j++)
+			acc += t[j] * (x[p + j] + x[last - j]);
+		if ((t.length & 1) == 1)
+			acc += t[half] * x[p + half];
+		return acc;
 	}
 
 	/**
@@ -208,6 +253,25 @@ public class FirFilter {
 										  float transition_width, // Hz width of transition band
 										  float attenuation_dB)   // attenuation dB
 	{
+		float[] taps = designLowPass(gain, sampling_freq, cutoff_freq, transition_width, attenuation_dB);
+		if (taps == null)
+			return null;
+		return new FirFilter(taps, decimation, gain, sampling_freq, cutoff_freq, transition_width, attenuation_dB);
+	}
+
+	/**
+	 * Calculates the taps of a low pass filter (see createLowPass()) without creating a filter instance.
+	 * Used by filters that need the prototype taps only (e.g. RationalResampler).
+	 *
+	 * @param gain					filter pass band gain
+	 * @param sampling_freq			sample rate
+	 * @param cutoff_freq			cut off frequency (end of pass band)
+	 * @param transition_width		width from end of pass band to start stop band
+	 * @param attenuation_dB		attenuation of stop band
+	 * @return taps or null if the parameters are invalid
+	 */
+	static float[] designLowPass(float gain, float sampling_freq, float cutoff_freq, float transition_width,
+								 float attenuation_dB) {
 		if (sampling_freq <= 0.0) {
 			Logger.e(LOGTAG,"createLowPass: firdes check failed: sampling_freq > 0");
 			return null;
@@ -259,6 +323,68 @@ public class FirFilter {
 		for (int i = 0; i < ntaps; i++)
 			taps[i] *= actualGain;
 
+		// the ideal response is symmetric; make the taps exactly symmetric (window rounding) so that the
+		// filter kernels can fold the pairs:
+		for (int n = 1; n <= M; n++)
+			taps[M - n] = taps[M + n];
+
+		return taps;
+	}
+
+	/**
+	 * Will calculate the taps for a low pass filter that additionally compensates the pass band droop of a
+	 * preceding CicDecimator (pass band response 1/H_cic(f)) and return a FirFilter instance.
+	 * Same parameters and number of taps as createLowPass(); the taps are the windowed inverse Fourier
+	 * transform of the compensated pass band (computed by numerical integration).
+	 *
+	 * @param decimation			decimation factor
+	 * @param gain					filter pass band gain
+	 * @param sampling_freq			sample rate
+	 * @param cutoff_freq			cut off frequency (end of pass band)
+	 * @param transition_width		width from end of pass band to start stop band
+	 * @param attenuation_dB		attenuation of stop band
+	 * @param cicInputRate			input sample rate of the CIC filter
+	 * @param cicDecimation			decimation factor of the CIC filter
+	 * @return instance of FirFilter
+	 */
+	public static FirFilter createCicCompensator(int decimation, float gain, float sampling_freq, float cutoff_freq,
+												 float transition_width, float attenuation_dB,
+												 float cicInputRate, int cicDecimation) {
+		if (sampling_freq <= 0.0 || cutoff_freq <= 0.0 || cutoff_freq > sampling_freq / 2 || transition_width <= 0) {
+			Logger.e("createCicCompensator: firdes check failed");
+			return null;
+		}
+
+		int ntaps = (int)(attenuation_dB*sampling_freq/(22.0*transition_width));
+		if ((ntaps & 1) == 0)	// if even...
+			ntaps++;		// ...make odd
+		float[] taps = new float[ntaps];
+		float[] w = makeWindow(ntaps);
+		int M = (ntaps - 1) / 2;
+
+		// h[n] = 2/fs * integral_0^cutoff cos(2*PI*f*n/fs) / H_cic(f) df     (Simpson's rule)
+		int steps = 2 * Math.max(64, 8 * M);	// even number of intervals, >= 16 per period of the highest n
+		double df = cutoff_freq / steps;
+		double[] weight = new double[steps + 1];
+		for (int k = 0; k <= steps; k++) {
+			double simpson = (k == 0 || k == steps) ? 1 : ((k & 1) == 1 ? 4 : 2);
+			weight[k] = simpson * df / 3 / CicDecimator.getResponse(k * df / cicInputRate, cicDecimation);
+		}
+		for (int n = 0; n <= M; n++) {
+			double acc = 0;
+			for (int k = 0; k <= steps; k++)
+				acc += weight[k] * Math.cos(2 * Math.PI * k * df * n / sampling_freq);
+			taps[M + n] = (float) (2 * acc / sampling_freq) * w[M + n];
+			taps[M - n] = taps[M + n];
+		}
+
+		// normalize the gain at zero frequency:
+		float fmax = taps[M];
+		for (int n = 1; n <= M; n++)
+			fmax += 2 * taps[n + M];
+		for (int i = 0; i < ntaps; i++)
+			taps[i] *= gain / fmax;
+
 		return new FirFilter(taps, decimation, gain, sampling_freq, cutoff_freq, transition_width, attenuation_dB);
 	}
 
@@ -0,0 +1,120 @@
+package com.example.frequencydetectionclient.utils;
+
+import com.example.frequencydetectionclient.bean.SamplePacket;
+
+/**
+ * Module:      GoertzelBank.java
+ * Description: Goertzel滤波器组，用来持续监视少数几个频率（例如已经找到的可疑频率）。
+ *              每个被监视的频率只需要一个二阶递归（每个样本2次实数乘法），所以 k 个频率的代价是 O(N·k)，
+ *              远小于每个数据包做一个完整的FFT。输入是复数样本，所以频率可以在中心频率的两侧。
+ *              样本先乘以和FFT相同的窗函数，结果的刻度和 FFT.spectrum() 一样，已有的阈值可以直接使用。
+ */
+public class GoertzelBank {
+
+	private final int blockSize;
+	private final FFTPlan plan;		// only used for the (cached) window and its amplitude correction
+	private final float offset;		// -10*log10(N) + window correction, same as FFT.logMagnitude()
+	private long[] frequencies = new long[0];
+
+	// coefficients for the current center frequency and sample rate:
+	private float[] coeff = new float[0];	// 2*cos(w)
+	private float[] cos = new float[0];
+	private float[] sin = new float[0];
+	private boolean[] inBand = new boolean[0];
+	private long coeffFrequency = -1;
+	private int coeffSampleRate = -1;
+
+	/**
+	 * Constructor
+	 *
+	 * @param blockSize		number of samples per estimate (power of 2, e.g. the fft size)
+	 * @param windowType	FFT.WINDOW_BLACKMAN, FFT.WINDOW_HANN, ...
+	 */
+	public GoertzelBank(int blockSize, int windowType) {
+		this.blockSize = blockSize;
+		this.plan = FFTPlan.get(blockSize, windowType);
+		this.offset = (float) (-10 * Math.log10(blockSize)) + plan.getAmplitudeCorrection();
+	}
+
+	/**
+	 * Sets the frequencies that are watched
+	 *
+	 * @param frequencies	absolute frequencies in Hz
+	 */
+	public void setFrequencies(long[] frequencies) {
+		this.frequencies = frequencies.clone();
+		this.coeff = new float[frequencies.length];
+		this.cos = new float[frequencies.length];
+		this.sin = new float[frequencies.length];
+		this.inBand = new boolean[frequencies.length];
+		this.coeffFrequency = -1;		// force recalculation
+	}
+
+	/**
+	 * @return the watched frequencies (absolute, in Hz)
+	 */
+	public long[] getFrequencies() {
+		return frequencies;
+	}
+
+	/**
+	 * @return number of samples that process() needs
+	 */
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * Computes the level of every watched frequency from the first getBlockSize() samples of the packet.
+	 *
+	 * @param in		input samples
+	 * @param levels	output: level in dB for every watched frequency (same scale as FFT.spectrum()).
+	 *                  Float.NaN if the frequency is not inside the band of the packet.
+	 * @return false if the packet contains less than getBlockSize() samples
+	 */
+	public boolean process(SamplePacket in, float[] levels) {
+		if (in.size() < blockSize || in.getSampleRate() <= 0)
+			return false;
+		if (in.getFrequency() != coeffFrequency || in.getSampleRate() != coeffSampleRate)
+			updateCoefficients(in.getFrequency(), in.getSampleRate());
+
+		final float[] re = in.re();
+		final float[] im = in.im();
+		final float[] window = plan.window;
+		float c, s1r, s1i, s2r, s2i, s0r, s0i, yr, yi;
+		for (int k = 0; k < frequencies.length; k++) {
+			if (!inBand[k]) {
+				levels[k] = Float.NaN;
+				continue;
+			}
+			c = coeff[k];
+			s1r = s1i = s2r = s2i = 0;
+			for (int n = 0; n < blockSize; n++) {
+				s0r = re[n] * window[n] + c * s1r - s2r;
+				s0i = im[n] * window[n] + c * s1i - s2i;
+				s2r = s1r;
+				s2i = s1i;
+				s1r = s0r;
+				s1i = s0i;
+			}
+			// y = s[N-1] - e^(-jw) * s[N-2]   (|y| == |X(w)|)
+			yr = s1r - (cos[k] * s2r + sin[k] * s2i);
+			yi = s1i - (cos[k] * s2i - sin[k] * s2r);
+			levels[k] = (float) (5 * Math.log10(yr * yr + yi * yi)) + offset;
+		}
+		return true;
+	}
+
+	private void updateCoefficients(long centerFrequency, int sampleRate) {
+		for (int k = 0; k < frequencies.length; k++) {
+			long offsetFrequency = frequencies[k] - centerFrequency;
+			inBand[k] = Math.abs(offsetFrequency) < sampleRate / 2;
+			double w = 2 * Math.PI * offsetFrequency / sampleRate;
+			coeff[k] = (float) (2 * Math.cos(w));
+			cos[k] = (float) Math.cos(w);
+			sin[k] = (float) Math.sin(w);
+		}
+		coeffFrequency = centerFrequency;
+		coeffSampleRate = sampleRate;
+	}
+}
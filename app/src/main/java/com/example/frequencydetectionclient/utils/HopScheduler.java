@@ -0,0 +1,174 @@
+package com.example.frequencydetectionclient.utils;
+
+/**
+ * Module:      HopScheduler.java
+ * Description: 按优先级安排扫频的hop（频点）顺序。每个hop的权重由最近的检测结果（按次衰减的计数）和
+ *              峰值电平的波动（相对基线的超出量的指数加权方差）决定，权重越高的hop在一轮完整扫频中访问越多次
+ *              （最多MAX_WEIGHT次）。调度用步幅调度（stride scheduling）：每个hop有一个pass值，总是选pass最小的hop，
+ *              访问后pass增加1/weight，所以所有权重都是1时就是原来从低到高的顺序扫频。
+ *              任何hop在maxRevisitInterval次访问之内一定会被再次访问（超期的hop优先），间歇性发射机不会被热点饿死。
+ */
+public class HopScheduler {
+	public static final float MAX_WEIGHT = 4f;			// hot hops are visited up to 4x per full sweep
+	private static final float DETECTION_DECAY = 0.7f;	// detection score is multiplied by this on every visit
+	private static final float DETECTION_GAIN = 3f;		// weight per (decayed) detection
+	private static final float VARIANCE_GAIN = 1f;		// weight for a standard deviation of VARIANCE_REF
+	private static final float VARIANCE_REF = 6f;		// dB
+	private static final float ALPHA = 0.2f;			// EWMA factor for mean / variance of the level
+
+	private final long start;
+	private final long step;
+	private final int hops;
+	private final float[] pass;			// stride scheduling: next visit when pass is the smallest
+	private final float[] weight;
+	private final float[] score;		// decayed detection count
+	private final float[] mean;			// EWMA of the level above the baseline (dB)
+	private final float[] var;			// EWMA of the squared deviation
+	private final boolean[] seen;		// at least one level was reported
+	private final long[] lastVisit;		// visit counter at the last visit (-1: never)
+	private final boolean[] covered;	// visited in the current full sweep
+	private int uncovered;				// hops not yet visited in the current full sweep
+	private long visits = 0;
+	private int maxRevisitInterval;
+
+	/**
+	 * Constructor
+	 *
+	 * @param start		center frequency of the first hop
+	 * @param end		max. center frequency (inclusive)
+	 * @param step		distance of two hops (the sample rate)
+	 */
+	public HopScheduler(long start, long end, long step) {
+		if (step <= 0 || end < start)
+			throw new IllegalArgumentException("invalid hop range: start=" + start + " end=" + end + " step=" + step);
+		this.start = start;
+		this.step = step;
+		this.hops = (int) ((end - start) / step) + 1;
+		this.pass = new float[hops];
+		this.weight = new float[hops];
+		this.score = new float[hops];
+		this.mean = new float[hops];
+		this.var = new float[hops];
+		this.seen = new boolean[hops];
+		this.lastVisit = new long[hops];
+		this.covered = new boolean[hops];
+		for (int i = 0; i < hops; i++) {
+			weight[i] = 1;
+			lastVisit[i] = -1;
+		}
+		this.uncovered = hops;
+		this.maxRevisitInterval = 2 * hops;
+	}
+
+	/**
+	 * @return true if this scheduler was created for the given range
+	 */
+	public boolean matches(long start, long end, long step) {
+		return this.start == start && this.step == step && this.hops == (int) ((end - start) / step) + 1;
+	}
+
+	/**
+	 * @param maxRevisitInterval	max. number of visits (of any hop) between two visits of the same hop (>= number of hops)
+	 */
+	public synchronized void setMaxRevisitInterval(int maxRevisitInterval) {
+		this.maxRevisitInterval = Math.max(hops, maxRevisitInterval);
+	}
+
+	public int getMaxRevisitInterval() {
+		return maxRevisitInterval;
+	}
+
+	public int getHopCount() {
+		return hops;
+	}
+
+	/**
+	 * Records that the hop with the given center frequency was captured
+	 *
+	 * @param frequency		center frequency of the captured hop
+	 * @return true if every hop was visited at least once since the last full sweep (a full sweep is complete)
+	 */
+	public synchronized boolean visit(long frequency) {
+		int i = indexOf(frequency);
+		if (i < 0)
+			return false;
+		lastVisit[i] = visits++;
+		pass[i] += 1 / weight[i];
+		score[i] *= DETECTION_DECAY;
+		if (!covered[i]) {
+			covered[i] = true;
+			uncovered--;
+		}
+		if (uncovered == 0) {
+			for (int j = 0; j < hops; j++)
+				covered[j] = false;
+			uncovered = hops;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Reports the result of the detection for a hop and updates its weight
+	 *
+	 * @param frequency		center frequency of the hop
+	 * @param level			strongest level above the baseline (dB)
+	 * @param detected		true if the detection raised an alarm on this hop
+	 */
+	public synchronized void report(long frequency, float level, boolean detected) {
+		int i = indexOf(frequency);
+		if (i < 0)
+			return;
+		if (detected)
+			score[i] += 1;
+		if (!seen[i]) {
+			seen[i] = true;
+			mean[i] = level;
+		} else {
+			float d = level - mean[i];
+			mean[i] += ALPHA * d;
+			var[i] = (1 - ALPHA) * (var[i] + ALPHA * d * d);
+		}
+		float w = 1 + DETECTION_GAIN * score[i] + VARIANCE_GAIN * (float) Math.sqrt(var[i]) / VARIANCE_REF;
+		weight[i] = Math.min(MAX_WEIGHT, w);
+	}
+
+	/**
+	 * @return center frequency of the hop that should be visited next
+	 */
+	public synchronized long next() {
+		// overdue hops first (the oldest one), so every hop is revisited within maxRevisitInterval:
+		int best = -1;
+		long oldest = Long.MAX_VALUE;
+		for (int i = 0; i < hops; i++) {
+			if (visits - lastVisit[i] >= maxRevisitInterval && lastVisit[i] < oldest) {
+				oldest = lastVisit[i];
+				best = i;
+			}
+		}
+		if (best < 0) {
+			// smallest pass; ties go to the lowest frequency (plain ascending sweep if all weights are equal):
+			best = 0;
+			for (int i = 1; i < hops; i++)
+				if (pass[i] < pass[best])
+					best = i;
+		}
+		return start + best * step;
+	}
+
+	/**
+	 * @return current weight of the hop (1 .. MAX_WEIGHT) or 0 if the frequency is not a hop
+	 */
+	public synchronized float getWeight(long frequency) {
+		int i = indexOf(frequency);
+		return i < 0 ? 0 : weight[i];
+	}
+
+	private int indexOf(long frequency) {
+		long offset = frequency - start;
+		if (offset < 0 || offset % step != 0)
+			return -1;
+		long i = offset / step;
+		return i < hops ? (int) i : -1;
+	}
+}
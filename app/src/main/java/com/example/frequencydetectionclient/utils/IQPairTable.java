@@ -0,0 +1,52 @@
+package com.example.frequencydetectionclient.utils;
+
+import com.example.frequencydetectionclient.bean.SamplePacket;
+
+/**
+ * Module:      IQPairTable.java
+ * Description: 按IQ字节对（小端short：低字节I，高字节Q）查表的转换表，65536项，re/im各一张float表（共512KB）。
+ * 每个样本只需一次索引组装和两次查表。由Signed8BitPairIQConverter和Unsigned8BitPairIQConverter共用。
+ */
+final class IQPairTable {
+	private static final int SIZE = 1 << 16;
+
+	private final float[] re = new float[SIZE];
+	private final float[] im = new float[SIZE];
+
+	/**
+	 * @param lookupTable	per byte lookup table of the converter (256 entries)
+	 * @param lookupOffset	index of a byte b in the lookupTable is (b + lookupOffset) & 0xff
+	 */
+	IQPairTable(float[] lookupTable, int lookupOffset) {
+		for (int s = 0; s < SIZE; s++) {
+			re[s] = lookupTable[((s & 0xff) + lookupOffset) & 0xff];
+			im[s] = lookupTable[((s >>> 8) + lookupOffset) & 0xff];
+		}
+	}
+
+	/**
+	 * Converts the IQ bytes of packet and appends them to the sample packet. The number of samples is
+	 * calculated before the loop, so the loop itself has no capacity check.
+	 *
+	 * @param packet		interleaved 8 bit IQ bytes (I first)
+	 * @param samplePacket	SamplePacket that should be filled with data from the packet
+	 * @return the number of samples filled into the samplePacket
+	 */
+	int fill(byte[] packet, SamplePacket samplePacket) {
+		int startIndex = samplePacket.size();
+		int count = Math.min(packet.length / 2, samplePacket.capacity() - startIndex);
+		if (count <= 0)
+			return 0;
+		float[] reOut = samplePacket.re();
+		float[] imOut = samplePacket.im();
+		float[] reTable = re, imTable = im;
+		for (int j = 0, i = 0; j < count; j++, i += 2) {
+			// little endian short: I is the low byte, Q the high byte
+			int s = (packet[i] & 0xff) | ((packet[i + 1] & 0xff) << 8);
+			reOut[startIndex + j] = reTable[s];
+			imOut[startIndex + j] = imTable[s];
+		}
+		samplePacket.setSize(startIndex + count);	// update the size of the sample packet
+		return count;
+	}
+}
@@ -0,0 +1,152 @@
+package com.example.frequencydetectionclient.utils;
+
+import com.example.frequencydetectionclient.bean.SamplePacket;
+
+import java.util.Arrays;
+
+/**
+ * Module:      OverlapSaveFilter.java
+ * Description: 基于FFT的overlap-save快速卷积，用于长FIR滤波器（FirFilter / ComplexFirFilter 在抽头数足够多时自动使用）。
+ *              输出和直接型实现完全一致（在浮点误差范围内），包括抽取的相位（decimationCounter从1开始）、
+ *              输出数据包满时返回已消耗的样本数等语义。每个块：[前 ntaps-1 个历史样本 | 新样本 | 补零]，
+ *              正向FFT，乘以滤波器的频率响应，再用共轭技巧做逆FFT，取后面不受循环卷积影响的部分。
+ */
+public class OverlapSaveFilter {
+
+	// direct form costs ntaps/decimation MACs per input sample, overlap-save roughly 2*log2(fftSize) (independent
+	// of the number of taps). Above this number of taps per output sample the overlap-save path is faster.
+	public static final int MIN_TAPS_PER_OUTPUT = 64;
+
+	private final int ntaps;
+	private final int decimation;
+	private int decimationCounter = 1;		// same initial phase as the direct form filters
+	private final FFT fft;
+	private final int fftSize;
+	private final int blockLength;			// number of new samples per block
+	private final float[] freqRe;			// frequency response of the taps, scaled by 1/fftSize
+	private final float[] freqIm;
+	private final float[] historyReal;		// last ntaps-1 input samples
+	private final float[] historyImag;
+	private final float[] bufRe;
+	private final float[] bufIm;
+
+	/**
+	 * @param ntaps			number of taps
+	 * @param decimation	decimation factor
+	 * @return true if the overlap-save path is expected to be faster than the direct form
+	 */
+	public static boolean isWorthwhile(int ntaps, int decimation) {
+		return ntaps / Math.max(1, decimation) >= MIN_TAPS_PER_OUTPUT;
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param tapsReal		real part of the filter taps
+	 * @param tapsImag		imaginary part of the filter taps (null for real taps)
+	 * @param decimation	decimation factor
+	 */
+	public OverlapSaveFilter(float[] tapsReal, float[] tapsImag, int decimation) {
+		this.ntaps = tapsReal.length;
+		this.decimation = decimation;
+		// FFT size: power of 2 and at least 4 times the filter length (> 75% of every block is new data)
+		int n = Integer.highestOneBit(Math.max(4 * ntaps, 64) - 1) << 1;
+		this.fftSize = n;
+		this.blockLength = n - (ntaps - 1);
+		this.fft = new FFT(n);
+		this.freqRe = new float[n];
+		this.freqIm = new float[n];
+		System.arraycopy(tapsReal, 0, freqRe, 0, ntaps);
+		if (tapsImag != null)
+			System.arraycopy(tapsImag, 0, freqIm, 0, ntaps);
+		fft.fft(freqRe, freqIm);
+		for (int i = 0; i < n; i++) {
+			freqRe[i] /= n;
+			freqIm[i] /= n;
+		}
+		this.historyReal = new float[ntaps - 1];
+		this.historyImag = new float[ntaps - 1];
+		this.bufRe = new float[n];
+		this.bufIm = new float[n];
+	}
+
+	/**
+	 * @return size of the FFT that is used per block
+	 */
+	public int getFftSize() {
+		return fftSize;
+	}
+
+	/**
+	 * Index (relative to the next input sample) of the next input sample that produces an output.
+	 * The direct form outputs when decimationCounter == 0 and then counts up to decimation-1, so with
+	 * decimation == 1 the very first input sample (counter starts at 1) does not produce an output.
+	 */
+	private int firstOutput() {
+		return decimationCounter == 0 ? 0 : Math.max(1, decimation - decimationCounter);
+	}
+
+	/**
+	 * Filters the samples from the input sample packet and appends filter output to the output
+	 * sample packet. Stops automatically if output sample packet is full.
+	 * Same semantics as FirFilter.filter() / ComplexFirFilter.filter().
+	 *
+	 * @param in		input sample packet
+	 * @param out		output sample packet
+	 * @param offset	offset to use as start index for the input packet
+	 * @param length	max number of samples processed from the input packet
+	 * @return number of samples consumed from the input packet
+	 */
+	public int filter(SamplePacket in, SamplePacket out, int offset, int length) {
+		final int h = ntaps - 1;
+		int indexOut = out.size();
+		float[] reIn = in.re(), imIn = in.im(), reOut = out.re(), imOut = out.im();
+
+		// The direct form stops at the input sample that would produce the first output that does not fit
+		// into the output packet. Calculate that index in advance:
+		long limit = firstOutput() + (long) (out.capacity() - indexOut) * decimation;
+		int consumable = limit < length ? (int) limit : length;
+
+		float a, b;
+		int pos = 0;
+		while (pos < consumable) {
+			int count = Math.min(blockLength, consumable - pos);
+
+			// block = [history | new samples | zeros]
+			System.arraycopy(historyReal, 0, bufRe, 0, h);
+			System.arraycopy(historyImag, 0, bufIm, 0, h);
+			System.arraycopy(reIn, offset + pos, bufRe, h, count);
+			System.arraycopy(imIn, offset + pos, bufIm, h, count);
+			if (h + count < fftSize) {
+				Arrays.fill(bufRe, h + count, fftSize, 0);
+				Arrays.fill(bufIm, h + count, fftSize, 0);
+			}
+			// the last h samples of [history | new samples] are the history of the next block:
+			System.arraycopy(bufRe, count, historyReal, 0, h);
+			System.arraycopy(bufIm, count, historyImag, 0, h);
+
+			// forward FFT, multiply with the frequency response and conjugate (for the inverse FFT):
+			fft.fft(bufRe, bufIm);
+			for (int i = 0; i < fftSize; i++) {
+				a = bufRe[i] * freqRe[i] - bufIm[i] * freqIm[i];
+				b = bufRe[i] * freqIm[i] + bufIm[i] * freqRe[i];
+				bufRe[i] = a;
+				bufIm[i] = -b;
+			}
+			// inverse FFT = conj(fft(conj(X))) / n   (1/n is part of the frequency response)
+			fft.fft(bufRe, bufIm);
+
+			// output every Mth sample (the first h values are disturbed by the circular convolution):
+			for (int p = firstOutput(); p < count; p += decimation) {
+				reOut[indexOut] = bufRe[h + p];
+				imOut[indexOut] = -bufIm[h + p];
+				indexOut++;
+			}
+			decimationCounter = (decimationCounter + count) % decimation;
+			pos += count;
+		}
+		out.setSize(indexOut);	// update size of output sample packet
+		out.setSampleRate(in.getSampleRate()/decimation);	// update the sample rate of the output sample packet
+		return consumable;		// We return the number of consumed samples from the input buffers
+	}
+}
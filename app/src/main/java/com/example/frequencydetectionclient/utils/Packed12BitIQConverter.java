@@ -0,0 +1,73 @@
+package com.example.frequencydetectionclient.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Module:      Packed12BitIQConverter.java
+ * Description: 打包12位有符号IQ转换器。每个样本3字节，小端：v = b0 | b1<<8 | b2<<16，I = v[11:0]，Q = v[23:12]
+ * （I的低8位，I的高4位和Q的低4位，Q的高8位）。4个样本正好是3个小端int，所以数据包通过IntBuffer视图成批读入，
+ * 每3个int解出8个12位值；不足4个样本的尾部按字节解码。
+ */
+public class Packed12BitIQConverter extends WideIQConverter {
+	private static final float SCALE = 1 / 2048f;
+
+	private byte[] viewedPacket = null;		// packet that is wrapped by intView
+	private IntBuffer intView = null;
+	private int[] words = new int[0];		// 3 words per 4 samples of the current packet
+
+	public Packed12BitIQConverter() {
+		super();
+	}
+
+	@Override
+	public int getBytesPerSample() {
+		return 3;
+	}
+
+	@Override
+	protected void decode(byte[] packet, int count, float[] re, float[] im, int index, float[] window) {
+		if (count <= 0)
+			return;
+		int blocks = count / 4;
+		if (blocks > 0) {
+			if (packet != viewedPacket) {
+				intView = ByteBuffer.wrap(packet).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+				viewedPacket = packet;
+			}
+			if (words.length < 3 * blocks)
+				words = new int[3 * blocks];
+			intView.clear();
+			intView.get(words, 0, 3 * blocks);
+		}
+
+		int[] w = words;
+		int o = index;
+		for (int b = 0; b < blocks; b++, o += 4) {
+			int w0 = w[3 * b], w1 = w[3 * b + 1], w2 = w[3 * b + 2];
+			// sign extension: shift the 12 bit value to the top of the int and back
+			re[o] = (w0 << 20 >> 20) * SCALE;
+			im[o] = (w0 << 8 >> 20) * SCALE;
+			re[o + 1] = ((w0 >>> 24 | w1 << 8) << 20 >> 20) * SCALE;
+			im[o + 1] = (w1 << 16 >> 20) * SCALE;
+			re[o + 2] = (w1 << 4 >> 20) * SCALE;
+			im[o + 2] = ((w1 >>> 28 | w2 << 4) << 20 >> 20) * SCALE;
+			re[o + 3] = (w2 << 12 >> 20) * SCALE;
+			im[o + 3] = (w2 >> 20) * SCALE;
+		}
+		// remaining samples (less than 4):
+		for (int j = 4 * blocks; j < count; j++, o++) {
+			int v = (packet[3 * j] & 0xff) | (packet[3 * j + 1] & 0xff) << 8 | packet[3 * j + 2] << 16;
+			re[o] = (v << 20 >> 20) * SCALE;
+			im[o] = (v << 8 >> 20) * SCALE;
+		}
+
+		if (window != null) {
+			for (int j = index; j < index + count; j++) {
+				re[j] *= window[j];
+				im[j] *= window[j];
+			}
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package com.example.frequencydetectionclient.utils;
+
+import java.util.Arrays;
+
+/**
+ * Module:      PanoramaSpectrum.java
+ * Description: 宽带全景频谱：整个扫频范围（例如40-3000MHz）按固定的分辨率存放在一个连续的float数组中，
+ *              用绝对频率寻址（O(1)：index = round((f - startFrequency) / binWidth)），代替以前按hop中心频率
+ *              作为key的Map<Long, FloatArray>（每个hop一个装箱的Long和一个单独的数组，查找依赖频率完全相等）。
+ *              每个hop的频谱用set()或accumulate()拼接进来：只写入距离hop中心usableBandwidth/2以内的bin，
+ *              hop之间有重叠时（步进小于采样率）把usableBandwidth设为步进，就只保留离各自中心最近的部分，
+ *              边缘滚降的bin被裁掉。accumulate()按bin做滑动平均（每个bin单独计数），用于多轮采集的基线。
+ *              扫描、基线比较和显示可以共用同一个数组（getData() / getRange()）。
+ */
+public class PanoramaSpectrum {
+	private final long startFrequency;	// frequency of bin 0
+	private final double binWidth;		// Hz per bin
+	private final int bins;
+	private final float[] data;			// level (dB) per bin
+	private final short[] count;		// number of spectra averaged into the bin (0: no data)
+	private int filledBins = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param startFrequency	lowest frequency (center of bin 0)
+	 * @param endFrequency		highest frequency (inclusive)
+	 * @param binWidth			resolution in Hz (e.g. sample rate / fft size, so that the hop spectra map 1:1 to bins)
+	 */
+	public PanoramaSpectrum(long startFrequency, long endFrequency, double binWidth) {
+		if (binWidth <= 0 || endFrequency <= startFrequency)
+			throw new IllegalArgumentException("invalid panorama: start=" + startFrequency + " end=" + endFrequency + " binWidth=" + binWidth);
+		this.startFrequency = startFrequency;
+		this.binWidth = binWidth;
+		this.bins = (int) ((endFrequency - startFrequency) / binWidth) + 1;
+		this.data = new float[bins];
+		this.count = new short[bins];
+	}
+
+	public long getStartFrequency() {
+		return startFrequency;
+	}
+
+	public long getEndFrequency() {
+		return getFrequency(bins - 1);
+	}
+
+	public double getBinWidth() {
+		return binWidth;
+	}
+
+	public int getBinCount() {
+		return bins;
+	}
+
+	/**
+	 * @return the level of all bins (not a copy; bins without data are 0, see hasData())
+	 */
+	public float[] getData() {
+		return data;
+	}
+
+	/**
+	 * @param frequency	absolute frequency in Hz
+	 * @return index of the bin that contains the frequency or -1 if it is outside of the panorama
+	 */
+	public int indexOf(double frequency) {
+		long i = Math.round((frequency - startFrequency) / binWidth);
+		return i >= 0 && i < bins ? (int) i : -1;
+	}
+
+	/**
+	 * @param index	bin index
+	 * @return center frequency of the bin
+	 */
+	public long getFrequency(int index) {
+		return startFrequency + Math.round(index * binWidth);
+	}
+
+	/**
+	 * @param index	bin index
+	 * @return true if at least one spectrum was written into the bin
+	 */
+	public boolean hasData(int index) {
+		return index >= 0 && index < bins && count[index] > 0;
+	}
+
+	/**
+	 * @return true if no spectrum was written since the last clear()
+	 */
+	public synchronized boolean isEmpty() {
+		return filledBins == 0;
+	}
+
+	/**
+	 * @param frequency	absolute frequency in Hz
+	 * @return level at the frequency or NaN if there is no data
+	 */
+	public float get(double frequency) {
+		int i = indexOf(frequency);
+		return i >= 0 && count[i] > 0 ? data[i] : Float.NaN;
+	}
+
+	/**
+	 * Level at a bin of a hop spectrum (FFT.spectrum() layout: bin 0 is centerFrequency - sampleRate/2)
+	 *
+	 * @param centerFrequency	center frequency of the hop
+	 * @param sampleRate		sample rate of the hop
+	 * @param fftSize			number of bins of the hop spectrum
+	 * @param bin				bin of the hop spectrum
+	 * @return level or NaN if there is no data
+	 */
+	public float get(long centerFrequency, int sampleRate, int fftSize, int bin) {
+		return get(centerFrequency - sampleRate / 2 + (double) bin * sampleRate / fftSize);
+	}
+
+	/**
+	 * Stitches a hop spectrum into the panorama (overwrites the bins)
+	 *
+	 * @param centerFrequency	center frequency of the hop
+	 * @param sampleRate		sample rate of the hop
+	 * @param mag				spectrum of the hop (FFT.spectrum() layout)
+	 * @param usableBandwidth	only bins within +-usableBandwidth/2 of the center are written (overlap trimming)
+	 */
+	public void set(long centerFrequency, int sampleRate, float[] mag, long usableBandwidth) {
+		stitch(centerFrequency, sampleRate, mag, usableBandwidth, false);
+	}
+
+	/**
+	 * Stitches a hop spectrum into the panorama, the bins are the running average of all accumulated spectra
+	 *
+	 * @param centerFrequency	center frequency of the hop
+	 * @param sampleRate		sample rate of the hop
+	 * @param mag				spectrum of the hop (FFT.spectrum() layout)
+	 * @param usableBandwidth	only bins within +-usableBandwidth/2 of the center are written (overlap trimming)
+	 */
+	public void accumulate(long centerFrequency, int sampleRate, float[] mag, long usableBandwidth) {
+		stitch(centerFrequency, sampleRate, mag, usableBandwidth, true);
+	}
+
+	private synchronized void stitch(long centerFrequency, int sampleRate, float[] mag, long usableBandwidth, boolean average) {
+		int n = mag.length;
+		double hopBinWidth = (double) sampleRate / n;
+		double hopStart = centerFrequency - sampleRate / 2;
+		long half = Math.min(usableBandwidth, sampleRate) / 2;
+		int first = Math.max(0, (int) Math.ceil((centerFrequency - half - startFrequency) / binWidth));
+		int last = Math.min(bins - 1, (int) Math.floor((centerFrequency + half - startFrequency) / binWidth));
+		for (int j = first; j <= last; j++) {
+			double f = startFrequency + j * binWidth;
+			// hop bins that fall into panorama bin j (peak hold if the hop spectrum is finer than the panorama):
+			int i0 = (int) Math.round((f - binWidth / 2 - hopStart) / hopBinWidth);
+			int i1 = (int) Math.round((f + binWidth / 2 - hopStart) / hopBinWidth);
+			if (i1 <= i0)
+				i1 = i0 + 1;
+			if (i0 < 0)
+				i0 = 0;
+			if (i1 > n)
+				i1 = n;
+			if (i0 >= i1)
+				continue;
+			float value = mag[i0];
+			for (int i = i0 + 1; i < i1; i++)
+				if (mag[i] > value)
+					value = mag[i];
+			if (count[j] == 0) {
+				filledBins++;
+				data[j] = value;
+				count[j] = 1;
+			} else if (average) {
+				if (count[j] < Short.MAX_VALUE)
+					count[j]++;
+				data[j] += (value - data[j]) / count[j];
+			} else {
+				data[j] = value;
+				count[j] = 1;
+			}
+		}
+	}
+
+	/**
+	 * Copies the levels of a frequency range (range query)
+	 *
+	 * @param fromFrequency	lowest frequency
+	 * @param toFrequency	highest frequency (inclusive)
+	 * @param dest			destination (bins without data are NaN)
+	 * @return number of copied bins (limited by dest.length)
+	 */
+	public synchronized int getRange(long fromFrequency, long toFrequency, float[] dest) {
+		int from = Math.max(0, (int) Math.ceil((fromFrequency - startFrequency) / binWidth));
+		int to = Math.min(bins - 1, (int) Math.floor((toFrequency - startFrequency) / binWidth));
+		int length = Math.min(dest.length, to - from + 1);
+		if (length <= 0)
+			return 0;
+		System.arraycopy(data, from, dest, 0, length);
+		for (int i = 0; i < length; i++)
+			if (count[from + i] == 0)
+				dest[i] = Float.NaN;
+		return length;
+	}
+
+	/**
+	 * @param fromFrequency	lowest frequency
+	 * @param toFrequency	highest frequency (inclusive)
+	 * @return index of the strongest bin (with data) in the range or -1 if there is none
+	 */
+	public synchronized int getMaxIndex(long fromFrequency, long toFrequency) {
+		int from = Math.max(0, (int) Math.ceil((fromFrequency - startFrequency) / binWidth));
+		int to = Math.min(bins - 1, (int) Math.floor((toFrequency - startFrequency) / binWidth));
+		int best = -1;
+		for (int i = from; i <= to; i++)
+			if (count[i] > 0 && (best < 0 || data[i] > data[best]))
+				best = i;
+		return best;
+	}
+
+	/**
+	 * Removes all data
+	 */
+	public synchronized void clear() {
+		Arrays.fill(data, 0);
+		Arrays.fill(count, (short) 0);
+		filledBins = 0;
+	}
+}
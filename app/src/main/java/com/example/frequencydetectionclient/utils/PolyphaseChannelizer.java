@@ -0,0 +1,137 @@
+package com.example.frequencydetectionclient.utils;
+
+import com.orhanobut.logger.Logger;
+
+import java.util.Arrays;
+
+/**
+ * Module:      PolyphaseChannelizer.java
+ * Description: 临界采样的多相滤波器组（PFB）信道化器，作为普通加窗FFT之外的另一种频谱前端。
+ *              原型低通滤波器（长度 M*T，由 FirFilter.createLowPass 设计，截止频率为半个信道）把 M*T 个样本
+ *              加权后按 M 折叠（WOLA），然后用 FFT 类做一个 M 点FFT，得到 M 个信道的功率。
+ *              和普通FFT相比，信道的通带更平坦（扇贝损失更小），相邻信道之间的泄漏也小得多，
+ *              而额外的代价只有每帧 M*T 次乘加。输出的刻度和 FFT.spectrum() 一样。
+ */
+public class PolyphaseChannelizer {
+
+	private static final float ATTENUATION_DB = 60;		// stop band attenuation of the prototype filter
+
+	private final FFT fft;			// M point FFT (M = number of channels)
+	private final int channels;		// M
+	private final int tapsPerBranch;	// T
+	private final float[] prototype;	// prototype filter, length M*T
+	private final float[] foldRe;
+	private final float[] foldIm;
+	private final float[] power;	// accumulated power if more than one frame is available
+
+	/**
+	 * Constructor
+	 *
+	 * @param fft				FFT with size M (number of channels); its window only defines the level reference
+	 * @param tapsPerBranch		taps per polyphase branch T (prototype length = M*T)
+	 */
+	public PolyphaseChannelizer(FFT fft, int tapsPerBranch) {
+		if (tapsPerBranch < 2)
+			throw new IllegalArgumentException("At least 2 taps per branch are required");
+		this.fft = fft;
+		this.channels = fft.n;
+		this.tapsPerBranch = tapsPerBranch;
+		this.prototype = makePrototype(fft, tapsPerBranch);
+		this.foldRe = new float[channels];
+		this.foldIm = new float[channels];
+		this.power = new float[channels];
+	}
+
+	/**
+	 * Number of samples that are needed for one frame
+	 *
+	 * @param channels			number of channels (fft size)
+	 * @param tapsPerBranch		taps per polyphase branch
+	 * @return number of samples
+	 */
+	public static int getRequiredSamples(int channels, int tapsPerBranch) {
+		return channels * tapsPerBranch;
+	}
+
+	/**
+	 * @return taps per polyphase branch
+	 */
+	public int getTapsPerBranch() {
+		return tapsPerBranch;
+	}
+
+	/**
+	 * Designs the prototype filter with FirFilter.createLowPass(): sample rate M (one channel = 1 Hz),
+	 * cut off at half a channel and a transition width that results in (at most) M*T taps.
+	 * The DC gain is the sum of the FFT window, so a sinusoid in the center of a channel has the same
+	 * level as with the windowed FFT.
+	 */
+	private static float[] makePrototype(FFT fft, int tapsPerBranch) {
+		int length = fft.n * tapsPerBranch;
+		float windowSum = 0;
+		for (float w : fft.getWindow())
+			windowSum += w;
+		float transitionWidth = ATTENUATION_DB * fft.n / (22f * (length - 1)) * 1.001f;
+		FirFilter filter = FirFilter.createLowPass(1, windowSum, fft.n, 0.5f + transitionWidth / 2, transitionWidth, ATTENUATION_DB);
+		float[] prototype = new float[length];
+		if (filter == null) {
+			Logger.e("makePrototype: could not design the prototype filter");
+			return prototype;
+		}
+		float[] taps = filter.getTaps();
+		System.arraycopy(taps, 0, prototype, 0, Math.min(taps.length, length));	// odd length: last tap stays 0
+		return prototype;
+	}
+
+	/**
+	 * Computes the channel levels of the given samples. If more than M*T samples are available,
+	 * frames with a stride of M are computed and their power is averaged.
+	 * The input arrays are not modified.
+	 *
+	 * @param re	real parts of the samples
+	 * @param im	imaginary parts of the samples
+	 * @param size	number of valid samples (>= M*T)
+	 * @param mag	output array for the FFT-shifted channel levels in dB (same scale as FFT.spectrum())
+	 * @return number of frames that were averaged (0 if size is smaller than M*T)
+	 */
+	public int spectrum(float[] re, float[] im, int size, float[] mag) {
+		final int length = prototype.length;
+		int frames = size < length ? 0 : (size - length) / channels + 1;
+		if (frames == 0)
+			return 0;
+		if (frames == 1) {
+			fold(re, im, 0);
+			fft.fft(foldRe, foldIm);
+			fft.logMagnitude(foldRe, foldIm, mag);
+			return 1;
+		}
+		Arrays.fill(power, 0);
+		for (int f = 0; f < frames; f++) {
+			fold(re, im, f * channels);
+			fft.fft(foldRe, foldIm);
+			for (int i = 0; i < channels; i++)
+				power[i] += foldRe[i] * foldRe[i] + foldIm[i] * foldIm[i];
+		}
+		fft.logPower(power, 1f / frames, mag);
+		return frames;
+	}
+
+	/**
+	 * Weighted overlap-add: multiplies M*T samples with the prototype filter and folds them into M samples.
+	 * The M point DFT of the result is the output of all M channels of the filter bank.
+	 */
+	private void fold(float[] re, float[] im, int start) {
+		final float[] h = prototype;
+		float sr, si;
+		for (int m = 0; m < channels; m++) {
+			sr = 0;
+			si = 0;
+			for (int n = m; n < h.length; n += channels) {
+				sr += re[start + n] * h[n];
+				si += im[start + n] * h[n];
+			}
+			foldRe[m] = sr;
+			foldIm[m] = si;
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package com.example.frequencydetectionclient.utils;
+
+/**
+ * Module:      Radix2FFTEngine.java
+ * Description: 经典的radix-2 DIT FFT（原 FFT.fft 的实现），位反转改为使用预先计算好的交换表。
+ */
+public class Radix2FFTEngine implements FFTEngine {
+
+	private final int n, m;
+	private final float[] cos;				// cos(-2*PI*k/n), shared with the plan
+	private final float[] sin;				// sin(-2*PI*k/n), shared with the plan
+	private final int[] bitReverse;			// pairs (i, j) with i < j that have to be swapped
+	private final int[] bitReverseTable;	// bitReverseTable[i] = bit reversed i
+
+	public Radix2FFTEngine(int n) {
+		this(FFTPlan.get(n, FFT.WINDOW_BLACKMAN));
+	}
+
+	Radix2FFTEngine(FFTPlan plan) {
+		this.n = plan.n;
+		this.m = plan.m;
+		this.cos = plan.cos;
+		this.sin = plan.sin;
+		this.bitReverse = plan.bitReverseSwaps;
+		this.bitReverseTable = plan.bitReverseTable;
+	}
+
+	@Override
+	public int getSize() {
+		return n;
+	}
+
+	@Override
+	public void fft(float[] x, float[] y) {
+		fft(x, y, null);
+	}
+
+	/***************************************************************
+	 * fft.c
+	 * Douglas L. Jones
+	 * University of Illinois at Urbana-Champaign
+	 * January 19, 1992
+	 * http://cnx.rice.edu/content/m12016/latest/
+	 *
+	 *   fft: in-place radix-2 DIT DFT of a complex input
+	 *
+	 *   input:
+	 * n: length of FFT: must be a power of two
+	 * m: n = 2**m
+	 *   input/output
+	 * x: double array of length n with real part of data
+	 * y: double array of length n with imag part of data
+	 *
+	 *   Permission to copy and use this program is granted
+	 *   as long as this header is included.
+	 ****************************************************************/
+	@Override
+	public void fft(float[] x, float[] y, float[] window) {
+		int i,j,k,n1,n2,a;
+		float c,s,t1,t2;
+
+		// Bit-reverse (precomputed), optionally combined with the window
+		if (window != null) {
+			FFTPlan.windowedBitReverse(bitReverseTable, x, y, window);
+		} else {
+			for (i = 0; i < bitReverse.length; i += 2) {
+				j = bitReverse[i];
+				k = bitReverse[i+1];
+				t1 = x[j];
+				x[j] = x[k];
+				x[k] = t1;
+				t1 = y[j];
+				y[j] = y[k];
+				y[k] = t1;
+			}
+		}
+
+		// FFT
+		n2 = 1;
+		for (i=0; i < m; i++) {
+			n1 = n2;
+			n2 = n2 + n2;
+			a = 0;
+
+			for (j=0; j < n1; j++) {
+				c = cos[a];
+				s = sin[a];
+				a +=  1 << (m-i-1);
+
+				for (k=j; k < n; k=k+n2) {
+					t1 = c*x[k+n1] - s*y[k+n1];
+					t2 = s*x[k+n1] + c*y[k+n1];
+					x[k+n1] = x[k] - t1;
+					y[k+n1] = y[k] - t2;
+					x[k] = x[k] + t1;
+					y[k] = y[k] + t2;
+				}
+			}
+		}
+	}
+}
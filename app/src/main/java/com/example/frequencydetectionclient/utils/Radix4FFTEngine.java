@@ -0,0 +1,108 @@
+package com.example.frequencydetectionclient.utils;
+
+/**
+ * Module:      Radix4FFTEngine.java
+ * Description: radix-4 DIT FFT。每一级把两级radix-2蝶形合并成一个radix-4蝶形（每4个点3次复数乘法），
+ *              当 log2(n) 为奇数时先做一级不需要乘法的radix-2。
+ */
+public class Radix4FFTEngine implements FFTEngine {
+
+	private final int n, m;
+	private final float[] cos;				// cos(-2*PI*k/n), shared with the plan
+	private final float[] sin;				// sin(-2*PI*k/n), shared with the plan
+	private final int[] bitReverse;			// pairs (i, j) with i < j that have to be swapped
+	private final int[] bitReverseTable;	// bitReverseTable[i] = bit reversed i
+
+	public Radix4FFTEngine(int n) {
+		this(FFTPlan.get(n, FFT.WINDOW_BLACKMAN));
+	}
+
+	Radix4FFTEngine(FFTPlan plan) {
+		this.n = plan.n;
+		this.m = plan.m;
+		this.cos = plan.cos;
+		this.sin = plan.sin;
+		this.bitReverse = plan.bitReverseSwaps;
+		this.bitReverseTable = plan.bitReverseTable;
+	}
+
+	@Override
+	public int getSize() {
+		return n;
+	}
+
+	@Override
+	public void fft(float[] x, float[] y) {
+		fft(x, y, null);
+	}
+
+	@Override
+	public void fft(float[] x, float[] y, float[] window) {
+		int i, j, k, a, b, c, d, span, step, group;
+		float t;
+
+		// Bit-reverse (precomputed), optionally combined with the window
+		if (window != null) {
+			FFTPlan.windowedBitReverse(bitReverseTable, x, y, window);
+		} else {
+			for (i = 0; i < bitReverse.length; i += 2) {
+				j = bitReverse[i];
+				k = bitReverse[i+1];
+				t = x[j];
+				x[j] = x[k];
+				x[k] = t;
+				t = y[j];
+				y[j] = y[k];
+				y[k] = t;
+			}
+		}
+
+		span = 1;
+		if ((m & 1) == 1) {
+			// odd order: one radix-2 stage with trivial twiddles
+			for (k = 0; k < n; k += 2) {
+				t = x[k+1];
+				x[k+1] = x[k] - t;
+				x[k] = x[k] + t;
+				t = y[k+1];
+				y[k+1] = y[k] - t;
+				y[k] = y[k] + t;
+			}
+			span = 2;
+		}
+
+		float w1r, w1i, w2r, w2i, w3r, w3i;
+		float br, bi, cr, ci, dr, di, ar, ai, b2r, b2i, sr, si, tr, ti;
+		for (; span < n; span <<= 2) {
+			group = span << 2;
+			step = n / group;
+			for (j = 0; j < span; j++) {
+				w1r = cos[j*step];		w1i = sin[j*step];
+				w2r = cos[2*j*step];	w2i = sin[2*j*step];
+				w3r = cos[3*j*step];	w3i = sin[3*j*step];
+				for (a = j; a < n; a += group) {
+					b = a + span;
+					c = b + span;
+					d = c + span;
+
+					br = w2r*x[b] - w2i*y[b];
+					bi = w2i*x[b] + w2r*y[b];
+					cr = w1r*x[c] - w1i*y[c];
+					ci = w1i*x[c] + w1r*y[c];
+					dr = w3r*x[d] - w3i*y[d];
+					di = w3i*x[d] + w3r*y[d];
+
+					ar = x[a] + br;		ai = y[a] + bi;		// a'
+					b2r = x[a] - br;	b2i = y[a] - bi;	// b'
+					sr = cr + dr;		si = ci + di;		// C + D
+					tr = cr - dr;		ti = ci - di;		// C - D
+
+					x[a] = ar + sr;		y[a] = ai + si;
+					x[c] = ar - sr;		y[c] = ai - si;
+					x[b] = b2r + ti;	y[b] = b2i - tr;	// b' - j(C - D)
+					x[d] = b2r - ti;	y[d] = b2i + tr;	// b' + j(C - D)
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,215 @@
+package com.example.frequencydetectionclient.utils;
+
+import com.example.frequencydetectionclient.bean.SamplePacket;
+import com.orhanobut.logger.Logger;
+
+import java.util.HashMap;
+
+/**
+ * Module:      RationalResampler.java
+ * Description: 多相有理重采样器（L/M），用于实数信号（音频）。原型低通滤波器在 L*输入采样率 下设计，
+ * 拆分为L个相位，每个输出样本只计算一个相位（约 ntaps/L 次乘加）。
+ * 多相系数按（输入采样率，输出采样率）预先计算并缓存，切换解调模式时不需要重新设计滤波器；
+ * 分析停止时用clearCache()释放。L最大为MAX_INTERPOLATION：约分后的L更大时（例如DecimationCascade输出的
+ * 不整齐的采样率）用L <= MAX_INTERPOLATION的近似比例，接受很小的采样率误差（最多MAX_RATE_ERROR时取最小的L）。
+ */
+public class RationalResampler {
+	// Block size for the history buffer (same scheme as FirFilter)
+	private static final int BLOCK_SIZE = 1024;
+	// 通带 / 阻带边缘（相对于输入和输出采样率中较小的那个）:
+	private static final float CUTOFF = 0.425f;
+	private static final float TRANSITION = 0.15f;
+	private static final float ATTENUATION = 60;
+	private static final int MAX_INTERPOLATION = 1024;	// max. L (number of phases)
+	private static final double MAX_RATE_ERROR = 1e-4;	// relative rate error that is accepted for a smaller L
+
+	// polyphase coefficients per (inputRate, outputRate):
+	private static final HashMap<Long, float[][]> coefficientCache = new HashMap<Long, float[][]>();
+
+	private final int inputRate;
+	private final int outputRate;
+	private final int interpolation;		// L
+	private final int decimation;			// M
+	private final float[][] phases;			// phases[p][j] = h[p + (T-1-j)*L]  (reversed, so that they can be applied to the history)
+	private final int tapsPerPhase;			// T
+	private final float[] history;			// [last T-1 input samples | current block]
+	private int phase = 0;					// phase of the next output (0 .. L-1)
+	private int inputIndex = 0;				// index of the newest input sample of the next output (relative to the next input sample)
+
+	private RationalResampler(int inputRate, int outputRate, int interpolation, int decimation, float[][] phases) {
+		this.inputRate = inputRate;
+		this.outputRate = outputRate;
+		this.interpolation = interpolation;
+		this.decimation = decimation;
+		this.phases = phases;
+		this.tapsPerPhase = phases[0].length;
+		this.history = new float[tapsPerPhase - 1 + BLOCK_SIZE];
+	}
+
+	/**
+	 * Creates a resampler from inputRate to outputRate. The coefficients are taken from the cache if they
+	 * were already calculated for this ratio.
+	 *
+	 * @param inputRate		input sample rate
+	 * @param outputRate	output sample rate
+	 * @return resampler or null if the rates are invalid
+	 */
+	public static RationalResampler create(int inputRate, int outputRate) {
+		if (inputRate <= 0 || outputRate <= 0) {
+			Logger.e("create: invalid rates: input=" + inputRate + " output=" + outputRate);
+			return null;
+		}
+		int gcd = gcd(inputRate, outputRate);
+		int interpolation = outputRate / gcd;
+		int decimation = inputRate / gcd;
+		if (interpolation > MAX_INTERPOLATION) {
+			// approximate the ratio: smallest L within MAX_RATE_ERROR, otherwise the best L <= MAX_INTERPOLATION
+			double ratio = (double) outputRate / inputRate;
+			double bestError = Double.MAX_VALUE;
+			for (int l = 1; l <= MAX_INTERPOLATION; l++) {
+				int m = (int) Math.max(1, Math.round(l / ratio));
+				double error = Math.abs((double) l / m / ratio - 1);
+				if (error < bestError) {
+					bestError = error;
+					interpolation = l;
+					decimation = m;
+					if (error <= MAX_RATE_ERROR)
+						break;
+				}
+			}
+			Logger.d("create: " + inputRate + " -> " + outputRate + " approximated by L=" + interpolation
+					+ " M=" + decimation + " (rate error " + (float) (bestError * 1e6) + "ppm)");
+		}
+		float[][] phases = getCoefficients(inputRate, outputRate, interpolation);
+		if (phases == null)
+			return null;
+		return new RationalResampler(inputRate, outputRate, interpolation, decimation, phases);
+	}
+
+	/**
+	 * Returns the polyphase coefficients from the cache or designs them
+	 */
+	private static synchronized float[][] getCoefficients(int inputRate, int outputRate, int interpolation) {
+		long key = ((long) inputRate << 32) | outputRate;
+		float[][] phases = coefficientCache.get(key);
+		if (phases != null)
+			return phases;
+
+		// prototype low pass at the upsampled rate; gain L compensates the zeros inserted by the upsampling:
+		float prototypeRate = (float) inputRate * interpolation;
+		float band = Math.min(inputRate, outputRate);
+		float[] taps = FirFilter.designLowPass(interpolation, prototypeRate, CUTOFF * band, TRANSITION * band, ATTENUATION);
+		if (taps == null)
+			return null;
+
+		int tapsPerPhase = (taps.length + interpolation - 1) / interpolation;
+		phases = new float[interpolation][tapsPerPhase];
+		for (int p = 0; p < interpolation; p++) {
+			for (int j = 0; j < tapsPerPhase; j++) {
+				int k = p + (tapsPerPhase - 1 - j) * interpolation;
+				phases[p][j] = k < taps.length ? taps[k] : 0;
+			}
+		}
+		coefficientCache.put(key, phases);
+		Logger.d("getCoefficients: " + inputRate + " -> " + outputRate + " (L=" + interpolation + ") "
+				+ taps.length + " taps, " + tapsPerPhase + " per phase");
+		return phases;
+	}
+
+	/**
+	 * Drops all cached coefficients (call it when the analyzer is stopped)
+	 */
+	public static synchronized void clearCache() {
+		coefficientCache.clear();
+	}
+
+	private static int gcd(int a, int b) {
+		while (b != 0) {
+			int t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+
+	public int getInputRate() {
+		return inputRate;
+	}
+
+	public int getOutputRate() {
+		return outputRate;
+	}
+
+	public int getInterpolation() {
+		return interpolation;
+	}
+
+	public int getDecimation() {
+		return decimation;
+	}
+
+	/**
+	 * @return number of taps that are calculated per output sample
+	 */
+	public int getTapsPerPhase() {
+		return tapsPerPhase;
+	}
+
+	/**
+	 * @param inputSize		number of input samples
+	 * @return max number of output samples that are produced from inputSize input samples
+	 */
+	public int getMaxOutputSize(int inputSize) {
+		return (int) ((long) inputSize * interpolation / decimation) + 1;
+	}
+
+	/**
+	 * Resamples the real parts of the samples from the input sample packet and appends the output to the output
+	 * sample packet. Stops automatically if output sample packet is full.
+	 *
+	 * @param in		input sample packet
+	 * @param out		output sample packet
+	 * @param offset	offset to use as start index for the input packet
+	 * @param length	max number of samples processed from the input packet
+	 * @return number of samples consumed from the input packet
+	 */
+	public int resampleReal(SamplePacket in, SamplePacket out, int offset, int length) {
+		final int h = tapsPerPhase - 1;
+		final int capacity = out.capacity();
+		int indexOut = out.size();
+		float[] reIn = in.re(), reOut = out.re();
+		float[] x = history;
+
+		int pos = 0;
+		while (pos < length) {
+			int count = Math.min(BLOCK_SIZE, length - pos);
+			System.arraycopy(reIn, offset + pos, x, h, count);
+
+			// every output uses the T input samples x[i-T+1] .. x[i] (= history[i] .. history[i+T-1]):
+			int i = inputIndex;
+			int p = phase;
+			while (i < count && indexOut < capacity) {
+				float[] t = phases[p];
+				float acc = 0;
+				for (int j = 0; j < t.length; j++)
+					acc += t[j] * x[i + j];
+				reOut[indexOut++] = acc;
+				p += decimation;
+				i += p / interpolation;
+				p %= interpolation;
+			}
+			phase = p;
+
+			// consume the block (or only the samples up to the next output, if the output packet is full):
+			int used = i < count ? i : count;
+			System.arraycopy(x, used, x, 0, h);
+			inputIndex = i - used;
+			pos += used;
+			if (used < count)
+				break;
+		}
+		out.setSize(indexOut);	// update size of output sample packet
+		out.setSampleRate(outputRate);	// update the sample rate of the output sample packet
+		return pos;				// We return the number of consumed samples from the input buffers
+	}
+}
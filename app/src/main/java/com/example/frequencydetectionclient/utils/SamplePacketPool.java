@@ -0,0 +1,218 @@
+package com.example.frequencydetectionclient.utils;
+
+import com.example.frequencydetectionclient.bean.SamplePacket;
+import com.orhanobut.logger.Logger;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Module:      SamplePacketPool.java
+ * Description: 整个流水线共用的SamplePacket缓冲池（按容量分组）。各个模块（Scheduler、Decimator、AudioSink）启动时
+ * 用acquire()取出缓冲区，停止后用release()放回，所以重新startAnalyzer()不会重新分配。
+ * 缓冲池记录每个模块的借出/归还次数和未归还的缓冲区；模块从队列中取出数据包时调用hold(packet, 模块名)，
+ * 交给下一个队列时调用hold(packet, null)。hold()不加锁，只把模块名和时间戳写进数据包
+ * （SamplePacket.setHolder()），每CHECK_INTERVAL最多一次扫描所有借出的缓冲区：
+ * 一个模块拿着数据包超过maxHoldTime时输出警告（通常说明某个分支忘了把包还回队列），
+ * 停止后仍未归还的缓冲区在getStatistics()中列出。
+ * 借出的缓冲区只被弱引用，丢失的缓冲区仍然会被回收。空闲的缓冲区总共最多MAX_FREE_BYTES，
+ * stopAnalyzer()之后用trim()全部交给GC，缓冲池不会在进程的整个生命周期里占着内存。
+ */
+public class SamplePacketPool {
+	public static final long DEFAULT_MAX_HOLD_TIME = 2000;	// ms
+	private static final long CHECK_INTERVAL = 1000;		// min. time (ms) between two checks of the held packets
+	private static final int MAX_FREE_PER_CAPACITY = 64;	// more free packets of one capacity are left to the GC
+	private static final long MAX_FREE_BYTES = 32L * 1024 * 1024;	// more free packets (all capacities) are left to the GC
+
+	private static final SamplePacketPool instance = new SamplePacketPool();
+
+	// state of a borrowed packet (the current holder is stored in the packet itself):
+	private static final class Loan {
+		final String owner;		// stage that acquired the packet
+		long warnedSince = -1;	// holdSince of the hold that was already reported
+
+		Loan(String owner) {
+			this.owner = owner;
+		}
+	}
+
+	// counters per stage:
+	private static final class Stats {
+		long acquired;
+		long allocated;
+		long released;
+	}
+
+	private final HashMap<Integer, ArrayDeque<SamplePacket>> free = new HashMap<Integer, ArrayDeque<SamplePacket>>();
+	// SamplePacket does not override equals()/hashCode(), so this is an identity map with weak keys:
+	private final WeakHashMap<SamplePacket, Loan> loans = new WeakHashMap<SamplePacket, Loan>();
+	private final TreeMap<String, Stats> stats = new TreeMap<String, Stats>();
+	private long freeBytes = 0;
+	private volatile long maxHoldTime = DEFAULT_MAX_HOLD_TIME;
+	private final AtomicLong lastCheck = new AtomicLong(0);
+
+	private SamplePacketPool() {
+	}
+
+	public static SamplePacketPool getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Takes an empty packet with the given capacity out of the pool (allocates one if there is none).
+	 *
+	 * @param capacity	capacity of the packet
+	 * @param stage		name of the stage that owns the packet
+	 * @return empty packet (size 0)
+	 */
+	public synchronized SamplePacket acquire(int capacity, String stage) {
+		Stats s = getStats(stage);
+		ArrayDeque<SamplePacket> packets = free.get(capacity);
+		SamplePacket packet = packets != null ? packets.poll() : null;
+		if (packet == null) {
+			packet = new SamplePacket(capacity);
+			s.allocated++;
+		}
+		else
+			freeBytes -= bytesOf(packet);
+		s.acquired++;
+		packet.setSize(0);
+		packet.setWindow(null);
+		packet.setHolder(stage, System.currentTimeMillis());
+		loans.put(packet, new Loan(stage));
+		return packet;
+	}
+
+	/**
+	 * Puts a packet that was returned by acquire() back into the pool.
+	 *
+	 * @param packet	packet (ignored if null)
+	 */
+	public synchronized void release(SamplePacket packet) {
+		if (packet == null)
+			return;
+		Loan loan = loans.remove(packet);
+		if (loan == null) {
+			Logger.w("release: packet (capacity " + packet.capacity() + ") was not acquired from the pool or released twice");
+			return;
+		}
+		getStats(loan.owner).released++;
+		packet.setHolder(null, 0);
+		ArrayDeque<SamplePacket> packets = free.get(packet.capacity());
+		if (packets == null) {
+			packets = new ArrayDeque<SamplePacket>();
+			free.put(packet.capacity(), packets);
+		}
+		long bytes = bytesOf(packet);
+		if (packets.size() < MAX_FREE_PER_CAPACITY && freeBytes + bytes <= MAX_FREE_BYTES) {
+			packets.push(packet);
+			freeBytes += bytes;
+		}
+	}
+
+	/**
+	 * Drops all free packets (they are left to the GC). Call it when the pipeline is stopped.
+	 */
+	public synchronized void trim() {
+		free.clear();
+		freeBytes = 0;
+	}
+
+	private static long bytesOf(SamplePacket packet) {
+		return 2L * 4 * packet.capacity();	// re + im
+	}
+
+	/**
+	 * Records which stage currently works on the packet. Call it when a stage takes the packet from a queue
+	 * (stage name) and when it hands the packet on to a queue (null). Lock-free: only the check of the
+	 * held packets (at most once per CHECK_INTERVAL) takes the lock of the pool.
+	 *
+	 * @param packet	packet from acquire()
+	 * @param stage		stage that holds the packet now or null if the packet is put into a queue
+	 */
+	public void hold(SamplePacket packet, String stage) {
+		if (packet == null)
+			return;
+		long now = System.currentTimeMillis();
+		packet.setHolder(stage, now);
+		long last = lastCheck.get();
+		if (now - last >= CHECK_INTERVAL && lastCheck.compareAndSet(last, now))
+			checkHeldPackets(now);
+	}
+
+	/**
+	 * Logs a warning for every packet that is held by a stage for more than maxHoldTime
+	 */
+	private synchronized void checkHeldPackets(long now) {
+		for (Map.Entry<SamplePacket, Loan> entry : loans.entrySet()) {
+			SamplePacket packet = entry.getKey();
+			Loan loan = entry.getValue();
+			long since = packet.getHoldSince();
+			String holder = packet.getHolder();
+			if (holder != null && loan.warnedSince != since && now - since > maxHoldTime) {
+				loan.warnedSince = since;
+				Logger.w("checkHeldPackets: " + holder + " holds a packet (capacity " + packet.capacity()
+						+ ", owner " + loan.owner + ") for " + (now - since) + "ms. Not returned to its queue?");
+			}
+		}
+	}
+
+	/**
+	 * @param maxHoldTime	time (ms) after which a held packet is reported
+	 */
+	public void setMaxHoldTime(long maxHoldTime) {
+		this.maxHoldTime = maxHoldTime;
+	}
+
+	/**
+	 * @param stage		name of the stage
+	 * @return number of packets that were acquired by the stage and are not released yet
+	 */
+	public synchronized int getOutstanding(String stage) {
+		int count = 0;
+		for (Loan loan : loans.values())
+			if (loan.owner.equals(stage))
+				count++;
+		return count;
+	}
+
+	/**
+	 * @return number of free packets in the pool
+	 */
+	public synchronized int getFreeCount() {
+		int count = 0;
+		for (ArrayDeque<SamplePacket> packets : free.values())
+			count += packets.size();
+		return count;
+	}
+
+	/**
+	 * @return acquire / allocation / release counters and outstanding packets per stage (for logging)
+	 */
+	public synchronized String getStatistics() {
+		StringBuilder sb = new StringBuilder("SamplePacketPool: free=").append(getFreeCount())
+				.append(" (").append(freeBytes / 1024).append("kB)");
+		for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+			Stats s = entry.getValue();
+			sb.append(" | ").append(entry.getKey())
+					.append(": acquired=").append(s.acquired)
+					.append(" allocated=").append(s.allocated)
+					.append(" released=").append(s.released)
+					.append(" outstanding=").append(getOutstanding(entry.getKey()));
+		}
+		return sb.toString();
+	}
+
+	private Stats getStats(String stage) {
+		Stats s = stats.get(stage);
+		if (s == null) {
+			s = new Stats();
+			stats.put(stage, s);
+		}
+		return s;
+	}
+}
@@ -1,6 +1,7 @@
 package com.example.frequencydetectionclient.utils;
 import com.example.frequencydetectionclient.bean.SamplePacket;
 import com.example.frequencydetectionclient.iq.IQConverter;
+import com.example.frequencydetectionclient.iq.Nco;
 /**
  *
  * Module:      Signed8BitIQConverter.java
@@ -31,49 +32,23 @@ public class Signed8BitIQConverter extends IQConverter {
 		lookupTable = new float[256];
 		for (int i = 0; i < 256; i++)
 			lookupTable[i] = (i-128) / 128.0f;
-	}
-
-	@Override
-	protected void generateMixerLookupTable(int mixFrequency) {
-		// If mix frequency is too low, just add the sample rate (sampled spectrum is periodic):
-		if(mixFrequency == 0 || (sampleRate / Math.abs(mixFrequency) > MAX_COSINE_LENGTH))
-			mixFrequency += sampleRate;
-
-		// Only generate lookupTable if null or invalid:
-		if(cosineRealLookupTable == null || mixFrequency != cosineFrequency) {
-			cosineFrequency = mixFrequency;
-			int bestLength = calcOptimalCosineLength();
-			cosineRealLookupTable = new float[bestLength][256];
-			cosineImagLookupTable = new float[bestLength][256];
-			float cosineAtT;
-			float sineAtT;
-			for (int t = 0; t < bestLength; t++) {
-				cosineAtT = (float) Math.cos(2 * Math.PI * cosineFrequency * t / (float) sampleRate);
-				sineAtT = (float) Math.sin(2 * Math.PI * cosineFrequency * t / (float) sampleRate);
-				for (int i = 0; i < 256; i++) {
-					cosineRealLookupTable[t][i] = (i - 128) / 128.0f * cosineAtT;
-					cosineImagLookupTable[t][i] = (i - 128) / 128.0f * sineAtT;
-				}
-			}
-			cosineIndex = 0;
-		}
+		lookupOffset = 128;		// index = packet[i]+128
 	}
 
 	@Override
 	public int fillPacketIntoSamplePacket(byte[] packet, SamplePacket samplePacket) {
-		int capacity = samplePacket.capacity();
-		int count = 0;
+		if (samplePacket.getWindow() != null)
+			return fillPacketIntoSamplePacketWindowed(packet, samplePacket, samplePacket.getWindow());
 		int startIndex = samplePacket.size();
+		int count = Math.max(0, Math.min(packet.length / 2, samplePacket.capacity() - startIndex));	// no capacity check in the loop
 		float[] re = samplePacket.re();
 		float[] im = samplePacket.im();
-		for (int i = 0; i < packet.length; i+=2) {
-			re[startIndex+count] = lookupTable[packet[i]+128];
-			im[startIndex+count] = lookupTable[packet[i+1]+128];
-			count++;
-			if(startIndex+count >= capacity)
-				break;
+		float[] table = lookupTable;
+		for (int j = 0, i = 0; j < count; j++, i += 2) {
+			re[startIndex+j] = table[packet[i]+128];
+			im[startIndex+j] = table[packet[i+1]+128];
 		}
-		samplePacket.setSize(samplePacket.size()+count);	// update the size of the sample packet
+		samplePacket.setSize(startIndex+count);			// update the size of the sample packet
 		samplePacket.setSampleRate(sampleRate);				// update the sample rate
 		samplePacket.setFrequency(frequency);				// update the frequency
 		return count;
@@ -81,24 +56,30 @@ public class Signed8BitIQConverter extends IQConverter {
 
 	@Override
 	public int mixPacketIntoSamplePacket(byte[] packet, SamplePacket samplePacket, long channelFrequency) {
-		int mixFrequency = (int)(frequency - channelFrequency);
-
-		generateMixerLookupTable(mixFrequency);	// will only generate table if really necessary
+		setMixFrequency(frequency - channelFrequency);	// only recalculates the phase increment of the oscillator
 
-		// Mix the samples from packet and store the results in the samplePacket
+		// Mix the samples from packet with the oscillator and store the results in the samplePacket
 		int capacity = samplePacket.capacity();
 		int count = 0;
 		int startIndex = samplePacket.size();
 		float[] re = samplePacket.re();
 		float[] im = samplePacket.im();
+		float[] cos = Nco.getCosineTable();
+		float[] sin = Nco.getSineTable();
+		int phase = mixer.getPhase();
+		int increment = mixer.getPhaseIncrement();
 		for (int i = 0; i < packet.length; i+=2) {
-			re[startIndex+count] = cosineRealLookupTable[cosineIndex][packet[i]+128] - cosineImagLookupTable[cosineIndex][packet[i+1]+128];
-			im[startIndex+count] = cosineRealLookupTable[cosineIndex][packet[i+1]+128] + cosineImagLookupTable[cosineIndex][packet[i]+128];
-			cosineIndex = (cosineIndex + 1) % cosineRealLookupTable.length;
+			float x = lookupTable[packet[i]+128];
+			float y = lookupTable[packet[i+1]+128];
+			int k = phase >>> Nco.INDEX_SHIFT;
+			re[startIndex+count] = x * cos[k] - y * sin[k];
+			im[startIndex+count] = y * cos[k] + x * sin[k];
+			phase += increment;
 			count++;
 			if(startIndex+count >= capacity)
 				break;
 		}
+		mixer.setPhase(phase);
 		samplePacket.setSize(samplePacket.size()+count);	// update the size of the sample packet
 		samplePacket.setSampleRate(sampleRate);				// update the sample rate
 		samplePacket.setFrequency(channelFrequency);		// update the frequency
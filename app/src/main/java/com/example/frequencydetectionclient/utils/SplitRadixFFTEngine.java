@@ -0,0 +1,166 @@
+package com.example.frequencydetectionclient.utils;
+
+/**
+ * Module:      SplitRadixFFTEngine.java
+ * Description: split-radix DIF FFT（Sorensen/Duhamel 的 L 形蝶形），是2的幂长度下乘法次数最少的经典算法。
+ *              旋转因子从FFTPlan共享的表中读取（表中是 e^(-j*2*PI*k/n)，所以sin取反），
+ *              输出顺序由预先计算的位反转表恢复。
+ */
+public class SplitRadixFFTEngine implements FFTEngine {
+
+	private final int n, m;
+	private final float[] cos;			// cos(-2*PI*k/n), shared with the plan
+	private final float[] sin;			// sin(-2*PI*k/n), shared with the plan
+	private final int[] bitReverse;		// pairs (i, j) with i < j that have to be swapped
+
+	public SplitRadixFFTEngine(int n) {
+		this(FFTPlan.get(n, FFT.WINDOW_BLACKMAN));
+	}
+
+	SplitRadixFFTEngine(FFTPlan plan) {
+		this.n = plan.n;
+		this.m = plan.m;
+		this.cos = plan.cos;
+		this.sin = plan.sin;
+		this.bitReverse = plan.bitReverseSwaps;
+	}
+
+	@Override
+	public int getSize() {
+		return n;
+	}
+
+	@Override
+	public void fft(float[] x, float[] y) {
+		fft(x, y, null);
+	}
+
+	@Override
+	public void fft(float[] x, float[] y, float[] window) {
+		int i0, i1, i2, i3, is, id, j, k, n2, n4, step;
+		float r1, r2, s1, s2, s3, cc1, ss1, cc3, ss3, t;
+
+		// L-shaped butterflies. The first stage touches every sample exactly once,
+		// so the window (if any) is applied while loading the samples there.
+		n2 = n << 1;
+		k = 1;
+		if (window != null) {
+			if (m > 1) {
+				windowedFirstStage(x, y, window);
+				n2 = n;
+				k = 2;
+			} else {
+				for (i0 = 0; i0 < n; i0++) {
+					x[i0] *= window[i0];
+					y[i0] *= window[i0];
+				}
+			}
+		}
+		for (; k < m; k++) {
+			n2 >>= 1;
+			n4 = n2 >> 2;
+			step = n / n2;
+			for (j = 0; j < n4; j++) {
+				cc1 = cos[j*step];
+				ss1 = -sin[j*step];
+				cc3 = cos[3*j*step];
+				ss3 = -sin[3*j*step];
+				is = j;
+				id = n2 << 1;
+				do {
+					for (i0 = is; i0 < n - 1; i0 += id) {
+						i1 = i0 + n4;
+						i2 = i1 + n4;
+						i3 = i2 + n4;
+						r1 = x[i0] - x[i2];
+						x[i0] += x[i2];
+						r2 = x[i1] - x[i3];
+						x[i1] += x[i3];
+						s1 = y[i0] - y[i2];
+						y[i0] += y[i2];
+						s2 = y[i1] - y[i3];
+						y[i1] += y[i3];
+						s3 = r1 - s2;
+						r1 += s2;
+						s2 = r2 - s1;
+						r2 += s1;
+						x[i2] = r1*cc1 - s2*ss1;
+						y[i2] = -s2*cc1 - r1*ss1;
+						x[i3] = s3*cc3 + r2*ss3;
+						y[i3] = r2*cc3 - s3*ss3;
+					}
+					is = 2*id - n2 + j;
+					id <<= 2;
+				} while (is < n - 1);
+			}
+		}
+
+		// last stage: length-2 butterflies
+		is = 0;
+		id = 4;
+		do {
+			for (i0 = is; i0 < n; i0 += id) {
+				i1 = i0 + 1;
+				t = x[i0];
+				x[i0] = t + x[i1];
+				x[i1] = t - x[i1];
+				t = y[i0];
+				y[i0] = t + y[i1];
+				y[i1] = t - y[i1];
+			}
+			is = 2*id - 2;
+			id <<= 2;
+		} while (is < n - 1);
+
+		// Bit-reverse the output (precomputed)
+		for (i0 = 0; i0 < bitReverse.length; i0 += 2) {
+			j = bitReverse[i0];
+			k = bitReverse[i0+1];
+			t = x[j];
+			x[j] = x[k];
+			x[k] = t;
+			t = y[j];
+			y[j] = y[k];
+			y[k] = t;
+		}
+	}
+
+	/**
+	 * First L-shaped butterfly stage (n2 = n) with the window applied to the loaded samples
+	 *
+	 * @param x			real parts
+	 * @param y			imaginary parts
+	 * @param window	window coefficients
+	 */
+	private void windowedFirstStage(float[] x, float[] y, float[] window) {
+		int i1, i2, i3;
+		int n4 = n >> 2;
+		float x0, x1, x2, x3, y0, y1, y2, y3;
+		float r1, r2, s1, s2, s3;
+		for (int j = 0; j < n4; j++) {
+			i1 = j + n4;
+			i2 = i1 + n4;
+			i3 = i2 + n4;
+			x0 = x[j] * window[j];		y0 = y[j] * window[j];
+			x1 = x[i1] * window[i1];	y1 = y[i1] * window[i1];
+			x2 = x[i2] * window[i2];	y2 = y[i2] * window[i2];
+			x3 = x[i3] * window[i3];	y3 = y[i3] * window[i3];
+			r1 = x0 - x2;
+			r2 = x1 - x3;
+			s1 = y0 - y2;
+			s2 = y1 - y3;
+			x[j] = x0 + x2;
+			x[i1] = x1 + x3;
+			y[j] = y0 + y2;
+			y[i1] = y1 + y3;
+			s3 = r1 - s2;
+			r1 += s2;
+			s2 = r2 - s1;
+			r2 += s1;
+			x[i2] = r1*cos[j] + s2*sin[j];
+			y[i2] = r1*sin[j] - s2*cos[j];
+			x[i3] = s3*cos[3*j] - r2*sin[3*j];
+			y[i3] = r2*cos[3*j] + s3*sin[3*j];
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package com.example.frequencydetectionclient.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Module:      SpscQueue.java
+ * Description: 无锁的单生产者/单消费者环形队列，用来代替流水线中成对的ArrayBlockingQueue（满包方向和空包/缓冲池方向）。
+ * offer() / poll() 与ArrayBlockingQueue的同名方法语义相同，但只允许一个线程调用offer()、一个线程调用poll()
+ * （线程可以更换，只要旧线程已经结束，例如join()之后）。有多个生产者或消费者的队列必须继续使用ArrayBlockingQueue。
+ * - 读写索引各自填充到单独的缓存行，避免生产者和消费者之间的伪共享
+ * - 消费者释放槽位用lazySet（只需要写屏障）；生产者发布元素用volatile写，与随后读waitingConsumer构成
+ *   StoreLoad顺序（消费者一侧是先写waitingConsumer再读tail），所以offer()的唤醒不会丢失
+ * - poll(timeout)先自旋，再yield，最后park到超时为止；offer()唤醒正在park的消费者，空闲的消费者不会周期性地醒来
+ */
+public class SpscQueue<E> {
+	// busy spins before yielding (spinning on a single core only delays the producer, as in SynchronousQueue):
+	private static final int SPIN_TRIES = Runtime.getRuntime().availableProcessors() > 1 ? 100 : 0;
+	private static final int YIELD_TRIES = 10;				// yields before parking
+
+	// AtomicLong padded to a full cache line (64 bytes), so that head and tail never share a line:
+	private static final class PaddedAtomicLong extends AtomicLong {
+		private static final long serialVersionUID = 1L;
+
+		@SuppressWarnings("unused")
+		long p1, p2, p3, p4, p5, p6, p7;
+
+		PaddedAtomicLong() {
+			super(0);
+		}
+	}
+
+	private final Object[] buffer;				// length is a power of 2
+	private final int mask;
+	private final int capacity;
+	private final PaddedAtomicLong tail = new PaddedAtomicLong();	// next index to write (only written by the producer)
+	private final PaddedAtomicLong head = new PaddedAtomicLong();	// next index to read (only written by the consumer)
+	private long cachedHead = 0;				// producer's last seen head (avoids reading head on every offer)
+	private long cachedTail = 0;				// consumer's last seen tail
+	private volatile Thread waitingConsumer = null;	// consumer that is parked in poll(timeout)
+
+	/**
+	 * @param capacity	max. number of elements in the queue
+	 */
+	public SpscQueue(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity must be > 0");
+		int length = Integer.highestOneBit(capacity);
+		if (length < capacity)
+			length <<= 1;
+		this.buffer = new Object[length];
+		this.mask = length - 1;
+		this.capacity = capacity;
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Inserts the element (producer thread only). Never blocks.
+	 *
+	 * @param e		element (not null)
+	 * @return true if the element was added; false if the queue is full
+	 */
+	public boolean offer(E e) {
+		if (e == null)
+			throw new NullPointerException();
+		final long t = tail.get();
+		if (t - cachedHead >= capacity) {
+			cachedHead = head.get();
+			if (t - cachedHead >= capacity)
+				return false;
+		}
+		buffer[(int) t & mask] = e;
+		tail.set(t + 1);	// publishes the element (volatile write: ordered before the read of waitingConsumer)
+		Thread waiting = waitingConsumer;
+		if (waiting != null)
+			LockSupport.unpark(waiting);
+		return true;
+	}
+
+	/**
+	 * Removes the head of the queue (consumer thread only). Never blocks.
+	 *
+	 * @return the head of the queue or null if the queue is empty
+	 */
+	@SuppressWarnings("unchecked")
+	public E poll() {
+		final long h = head.get();
+		if (h >= cachedTail) {
+			cachedTail = tail.get();
+			if (h >= cachedTail)
+				return null;
+		}
+		final int index = (int) h & mask;
+		E e = (E) buffer[index];
+		buffer[index] = null;
+		head.lazySet(h + 1);	// frees the slot for the producer
+		return e;
+	}
+
+	/**
+	 * Removes the head of the queue and waits up to the given time if the queue is empty (consumer thread only).
+	 *
+	 * @param timeout	max. time to wait
+	 * @param unit		unit of timeout
+	 * @return the head of the queue or null if the timeout elapsed
+	 * @throws InterruptedException if the thread was interrupted while waiting
+	 */
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+		E e = poll();
+		if (e != null)
+			return e;
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		int tries = 0;
+		while (true) {
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			if ((e = poll()) != null)
+				return e;
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0)
+				return null;
+			if (tries < SPIN_TRIES) {
+				tries++;
+			} else if (tries < SPIN_TRIES + YIELD_TRIES) {
+				tries++;
+				Thread.yield();
+			} else {
+				// volatile write of waitingConsumer before reading tail again: either poll() sees the element
+				// or offer() sees waitingConsumer and unparks us
+				waitingConsumer = Thread.currentThread();
+				if ((e = poll()) != null) {
+					waitingConsumer = null;
+					return e;
+				}
+				LockSupport.parkNanos(this, remaining);
+				waitingConsumer = null;
+			}
+		}
+	}
+
+	/**
+	 * @return number of elements in the queue (exact only if called by the producer or the consumer)
+	 */
+	public int size() {
+		long h = head.get();
+		long t = tail.get();
+		return (int) Math.max(0, Math.min(capacity, t - h));
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+}
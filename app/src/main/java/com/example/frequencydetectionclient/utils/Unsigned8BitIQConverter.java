@@ -2,6 +2,7 @@ package com.example.frequencydetectionclient.utils;
 
 import com.example.frequencydetectionclient.bean.SamplePacket;
 import com.example.frequencydetectionclient.iq.IQConverter;
+import com.example.frequencydetectionclient.iq.Nco;
 
 /**
  * <h1>RF Analyzer - unsigned 8-bit IQ Converter</h1>
@@ -51,32 +52,6 @@ public class Unsigned8BitIQConverter extends IQConverter {
             lookupTable[i] = (i - 127.4f) / 128.0f;
     }
 
-    @Override
-    protected void generateMixerLookupTable(int mixFrequency) {
-        // 如果混合频率太低，只需增加采样率(采样频谱是周期性的):
-        if (mixFrequency == 0 || (sampleRate / Math.abs(mixFrequency) > MAX_COSINE_LENGTH))
-            mixFrequency += sampleRate;
-
-        // 仅在null或无效时生成lookupTable:
-        if (cosineRealLookupTable == null || mixFrequency != cosineFrequency) {
-            cosineFrequency = mixFrequency;
-            int bestLength = calcOptimalCosineLength();
-            cosineRealLookupTable = new float[bestLength][256];
-            cosineImagLookupTable = new float[bestLength][256];
-            float cosineAtT;
-            float sineAtT;
-            for (int t = 0; t < bestLength; t++) {
-                cosineAtT = (float) Math.cos(2 * Math.PI * cosineFrequency * t / (float) sampleRate);
-                sineAtT = (float) Math.sin(2 * Math.PI * cosineFrequency * t / (float) sampleRate);
-                for (int i = 0; i < 256; i++) {
-                    cosineRealLookupTable[t][i] = (i - 127.4f) / 128.0f * cosineAtT;
-                    cosineImagLookupTable[t][i] = (i - 127.4f) / 128.0f * sineAtT;
-                }
-            }
-            cosineIndex = 0;
-        }
-    }
-
     /**
      * 将字节数组组装成数据包
      *
@@ -86,19 +61,18 @@ public class Unsigned8BitIQConverter extends IQConverter {
      */
     @Override
     public int fillPacketIntoSamplePacket(byte[] packet, SamplePacket samplePacket) {
-        int capacity = samplePacket.capacity();
-        int count = 0;
+        if (samplePacket.getWindow() != null)
+            return fillPacketIntoSamplePacketWindowed(packet, samplePacket, samplePacket.getWindow());
         int startIndex = samplePacket.size();
+        int count = Math.max(0, Math.min(packet.length / 2, samplePacket.capacity() - startIndex));    // 循环中不再检查容量
         float[] re = samplePacket.re();
         float[] im = samplePacket.im();
-        for (int i = 0; i < packet.length; i += 2) {
-            re[startIndex + count] = lookupTable[packet[i] & 0xff];
-            im[startIndex + count] = lookupTable[packet[i + 1] & 0xff];
-            count++;
-            if (startIndex + count >= capacity)
-                break;
+        float[] table = lookupTable;
+        for (int j = 0, i = 0; j < count; j++, i += 2) {
+            re[startIndex + j] = table[packet[i] & 0xff];
+            im[startIndex + j] = table[packet[i + 1] & 0xff];
         }
-        samplePacket.setSize(samplePacket.size() + count);    // 更新样本包的大小
+        samplePacket.setSize(startIndex + count);    // 更新样本包的大小
         samplePacket.setSampleRate(sampleRate);                // 更新采样率
         samplePacket.setFrequency(frequency);                // 更新频率
         return count;
@@ -114,26 +88,30 @@ public class Unsigned8BitIQConverter extends IQConverter {
      */
     @Override
     public int mixPacketIntoSamplePacket(byte[] packet, SamplePacket samplePacket, long channelFrequency) {
-        int mixFrequency = (int) (frequency - channelFrequency);
+        setMixFrequency(frequency - channelFrequency);    // only recalculates the phase increment of the oscillator
 
-        generateMixerLookupTable(mixFrequency);    // will only generate table if really necessary
-
-        // Mix the samples from packet and store the results in the samplePacket
+        // Mix the samples from packet with the oscillator and store the results in the samplePacket
         int capacity = samplePacket.capacity();
         int count = 0;
-
-
         int startIndex = samplePacket.size();
         float[] re = samplePacket.re();
         float[] im = samplePacket.im();
+        float[] cos = Nco.getCosineTable();
+        float[] sin = Nco.getSineTable();
+        int phase = mixer.getPhase();
+        int increment = mixer.getPhaseIncrement();
         for (int i = 0; i < packet.length; i += 2) {
-            re[startIndex + count] = cosineRealLookupTable[cosineIndex][packet[i] & 0xff] - cosineImagLookupTable[cosineIndex][packet[i + 1] & 0xff];
-            im[startIndex + count] = cosineRealLookupTable[cosineIndex][packet[i + 1] & 0xff] + cosineImagLookupTable[cosineIndex][packet[i] & 0xff];
-            cosineIndex = (cosineIndex + 1) % cosineRealLookupTable.length;
+            float x = lookupTable[packet[i] & 0xff];
+            float y = lookupTable[packet[i + 1] & 0xff];
+            int k = phase >>> Nco.INDEX_SHIFT;
+            re[startIndex + count] = x * cos[k] - y * sin[k];
+            im[startIndex + count] = y * cos[k] + x * sin[k];
+            phase += increment;
             count++;
             if (startIndex + count >= capacity)
                 break;
         }
+        mixer.setPhase(phase);
         samplePacket.setSize(samplePacket.size() + count);    // 更新样本包的大小
         samplePacket.setSampleRate(sampleRate);                // 更新采样率
         samplePacket.setFrequency(channelFrequency);        // 更新频率
@@ -0,0 +1,30 @@
+package com.example.frequencydetectionclient.utils;
+
+import com.example.frequencydetectionclient.bean.SamplePacket;
+
+/**
+ * Module:      Unsigned8BitPairIQConverter.java
+ * Description: 8位无符号IQ转换器（rtl_sdr），fillPacketIntoSamplePacket()用65536项的IQPairTable按IQ字节对查表，
+ * 见Signed8BitPairIQConverter。混频方法与Unsigned8BitIQConverter相同。
+ */
+public class Unsigned8BitPairIQConverter extends Unsigned8BitIQConverter {
+	private static IQPairTable pairTable = null;	// shared by all instances (same lookupTable)
+
+	public Unsigned8BitPairIQConverter() {
+		super();
+		synchronized (Unsigned8BitPairIQConverter.class) {
+			if (pairTable == null)
+				pairTable = new IQPairTable(lookupTable, lookupOffset);
+		}
+	}
+
+	@Override
+	public int fillPacketIntoSamplePacket(byte[] packet, SamplePacket samplePacket) {
+		if (samplePacket.getWindow() != null)
+			return fillPacketIntoSamplePacketWindowed(packet, samplePacket, samplePacket.getWindow());
+		int count = pairTable.fill(packet, samplePacket);
+		samplePacket.setSampleRate(sampleRate);				// update the sample rate
+		samplePacket.setFrequency(frequency);				// update the frequency
+		return count;
+	}
+}
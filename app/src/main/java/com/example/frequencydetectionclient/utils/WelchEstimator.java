@@ -0,0 +1,97 @@
+package com.example.frequencydetectionclient.utils;
+
+import java.util.Arrays;
+
+/**
+ * Module:      WelchEstimator.java
+ * Description: Welch功率谱估计。把一次驻留（hop）内采到的全部样本分成若干个有重叠的分段，
+ *              每段加窗并做FFT，然后对功率取平均，得到一个方差更小的频谱（噪声基底更平滑，突发信号更不容易漏掉）。
+ *              输出和 FFT.spectrum() 的刻度完全一样，所以已有的检测阈值仍然有效。
+ */
+public class WelchEstimator {
+
+	private final FFT fft;				// shares size, window and engine with the normal processing path
+	private final int segments;			// number of segments that are averaged
+	private final int hop;				// distance between the start of two segments in samples
+	private final float[] segRe;		// scratch buffer for one segment (real parts)
+	private final float[] segIm;		// scratch buffer for one segment (imaginary parts)
+	private final float[] power;		// accumulated power spectrum
+
+	/**
+	 * Constructor
+	 *
+	 * @param fft				FFT instance (size and window are taken from it)
+	 * @param segments			number of segments per hop (>= 1)
+	 * @param overlapPercent	overlap between two segments in percent (0..90)
+	 */
+	public WelchEstimator(FFT fft, int segments, int overlapPercent) {
+		if (segments < 1)
+			throw new IllegalArgumentException("Segment count must be at least 1");
+		if (overlapPercent < 0 || overlapPercent > 90)
+			throw new IllegalArgumentException("Overlap must be between 0 and 90 percent");
+		this.fft = fft;
+		this.segments = segments;
+		this.hop = getHop(fft.n, overlapPercent);
+		this.segRe = new float[fft.n];
+		this.segIm = new float[fft.n];
+		this.power = new float[fft.n];
+	}
+
+	/**
+	 * Distance between two segments
+	 *
+	 * @param fftSize			FFT (segment) length
+	 * @param overlapPercent	overlap between two segments in percent
+	 * @return hop size in samples (>= 1)
+	 */
+	public static int getHop(int fftSize, int overlapPercent) {
+		return Math.max(1, fftSize - fftSize * overlapPercent / 100);
+	}
+
+	/**
+	 * Number of samples that have to be collected per hop so that all segments can be computed.
+	 * The Scheduler uses this as capacity of the sample packets for the processing loop.
+	 *
+	 * @param fftSize			FFT (segment) length
+	 * @param segments			number of segments per hop
+	 * @param overlapPercent	overlap between two segments in percent
+	 * @return number of samples
+	 */
+	public static int getRequiredSamples(int fftSize, int segments, int overlapPercent) {
+		return fftSize + (segments - 1) * getHop(fftSize, overlapPercent);
+	}
+
+	/**
+	 * @return number of segments that are averaged (if enough samples are available)
+	 */
+	public int getSegments() {
+		return segments;
+	}
+
+	/**
+	 * Computes the averaged spectrum of the given samples. If less than getRequiredSamples() samples
+	 * are available, only the complete segments are used. The input arrays are not modified.
+	 *
+	 * @param re	real parts of the samples
+	 * @param im	imaginary parts of the samples
+	 * @param size	number of valid samples (>= fft size)
+	 * @param mag	output array for the FFT-shifted magnitudes in dB (same scale as FFT.spectrum())
+	 * @return number of segments that were averaged (0 if size is smaller than the fft size)
+	 */
+	public int spectrum(float[] re, float[] im, int size, float[] mag) {
+		final int n = fft.n;
+		int count = 0;
+		Arrays.fill(power, 0);
+		for (int start = 0; count < segments && start + n <= size; start += hop) {
+			System.arraycopy(re, start, segRe, 0, n);
+			System.arraycopy(im, start, segIm, 0, n);
+			fft.windowedFft(segRe, segIm);
+			for (int i = 0; i < n; i++)
+				power[i] += segRe[i] * segRe[i] + segIm[i] * segIm[i];
+			count++;
+		}
+		if (count > 0)
+			fft.logPower(power, 1f / count, mag);
+		return count;
+	}
+}
@@ -0,0 +1,97 @@
+package com.example.frequencydetectionclient.utils;
+
+import com.example.frequencydetectionclient.bean.SamplePacket;
+import com.example.frequencydetectionclient.iq.IQConverter;
+import com.example.frequencydetectionclient.iq.Nco;
+
+/**
+ * Module:      WideIQConverter.java
+ * Description: 宽于8位的IQ格式（16位、打包12位）转换器的基类。这些格式不能用256项查表，子类在decode()中
+ * 通过ByteBuffer视图成批解码（每个数据包没有逐样本的对象分配），填充、混频和抽取的循环在这里实现。
+ */
+public abstract class WideIQConverter extends IQConverter {
+	// converted samples for mixing (grow with the packet size, allocated only once per size):
+	private float[] decodedRe = new float[0];
+	private float[] decodedIm = new float[0];
+
+	public WideIQConverter() {
+		super();
+	}
+
+	@Override
+	protected void generateLookupTable() {
+		// no lookup table: the samples are decoded by decode()
+	}
+
+	/**
+	 * Decodes the first count samples of the packet to floats in [-1,1).
+	 *
+	 * @param packet	raw bytes of the source (at least count * getBytesPerSample() bytes)
+	 * @param count		number of samples to decode
+	 * @param re		output array for the real parts
+	 * @param im		output array for the imaginary parts
+	 * @param index		index of the first output sample in re / im
+	 * @param window	window that is multiplied to output index i (window[i]) or null
+	 */
+	protected abstract void decode(byte[] packet, int count, float[] re, float[] im, int index, float[] window);
+
+	@Override
+	public int fillPacketIntoSamplePacket(byte[] packet, SamplePacket samplePacket) {
+		int startIndex = samplePacket.size();
+		int count = Math.max(0, Math.min(packet.length / getBytesPerSample(), samplePacket.capacity() - startIndex));
+		decode(packet, count, samplePacket.re(), samplePacket.im(), startIndex, samplePacket.getWindow());
+		samplePacket.setSize(startIndex + count);			// update the size of the sample packet
+		samplePacket.setSampleRate(sampleRate);				// update the sample rate
+		samplePacket.setFrequency(frequency);				// update the frequency
+		return count;
+	}
+
+	@Override
+	public int mixPacketIntoSamplePacket(byte[] packet, SamplePacket samplePacket, long channelFrequency) {
+		setMixFrequency(frequency - channelFrequency);	// only recalculates the phase increment of the oscillator
+
+		int startIndex = samplePacket.size();
+		int count = Math.max(0, Math.min(packet.length / getBytesPerSample(), samplePacket.capacity() - startIndex));
+		int length = decodePacket(packet, count);
+		float[] x = decodedRe, y = decodedIm;
+		float[] re = samplePacket.re();
+		float[] im = samplePacket.im();
+		float[] cos = Nco.getCosineTable();
+		float[] sin = Nco.getSineTable();
+		int phase = mixer.getPhase();
+		int increment = mixer.getPhaseIncrement();
+		for (int j = 0; j < length; j++) {
+			int k = phase >>> Nco.INDEX_SHIFT;
+			re[startIndex+j] = x[j] * cos[k] - y[j] * sin[k];
+			im[startIndex+j] = y[j] * cos[k] + x[j] * sin[k];
+			phase += increment;
+		}
+		mixer.setPhase(phase);
+		samplePacket.setSize(startIndex+length);			// update the size of the sample packet
+		samplePacket.setSampleRate(sampleRate);				// update the sample rate
+		samplePacket.setFrequency(channelFrequency);		// update the frequency
+		return length;
+	}
+
+	@Override
+	public int mixPacketIntoSamplePacketDecimated(byte[] packet, SamplePacket samplePacket, long channelFrequency) {
+		// only whole output samples (2 input samples each) that fit into the sample packet:
+		int count = Math.min(packet.length / getBytesPerSample(), 2 * (samplePacket.capacity() - samplePacket.size())) & ~1;
+		int length = decodePacket(packet, Math.max(0, count));
+		return mixSamplesIntoSamplePacketDecimated(decodedRe, decodedIm, length, samplePacket, channelFrequency);
+	}
+
+	/**
+	 * Decodes count samples into decodedRe / decodedIm
+	 *
+	 * @return number of decoded samples
+	 */
+	private int decodePacket(byte[] packet, int count) {
+		if (decodedRe.length < count) {
+			decodedRe = new float[count];
+			decodedIm = new float[count];
+		}
+		decode(packet, count, decodedRe, decodedIm, 0, null);
+		return count;
+	}
+}
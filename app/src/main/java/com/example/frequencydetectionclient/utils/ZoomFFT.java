@@ -0,0 +1,158 @@
+package com.example.frequencydetectionclient.utils;
+
+import com.example.frequencydetectionclient.bean.SamplePacket;
+import com.example.frequencydetectionclient.hackrf.HalfBandLowPassFilter;
+
+/**
+ * Module:      ZoomFFT.java
+ * Description: Zoom-FFT：把要观察的频率混频到0Hz，用半带滤波器级联（HalfBandLowPassFilter）每级抽取2，
+ *              然后对抽取后的窄带信号做一个小的FFT。这样可以得到某个频率附近的高分辨率局部频谱，
+ *              计算量远小于对整个带宽做一个很大的FFT。
+ *              例如 20MSps，5级，zoomSize=1024：跨度625kHz，分辨率约610Hz（普通4096点FFT约为4.9kHz）。
+ *              输出的刻度和 FFT.spectrum() 一样（已经补偿了半带滤波器每级2倍的增益）。
+ */
+public class ZoomFFT {
+
+	// Number of output samples (at the decimated rate) that are discarded because the filters
+	// still contain samples of the previous (not contiguous) block.
+	private static final int SETTLE_SAMPLES = 32;
+
+	private final int zoomSize;
+	private final int stages;
+	private final FFT fft;
+	private final HalfBandLowPassFilter[] filters;
+	private final SamplePacket mixed;
+	private final SamplePacket tmpA;
+	private final SamplePacket tmpB;
+	private final float[] zoomRe;
+	private final float[] zoomIm;
+	private final float gainCorrection;		// compensates the gain of 2 of every half band stage
+
+	/**
+	 * Constructor
+	 *
+	 * @param zoomSize	size of the zoom FFT (power of 2)
+	 * @param stages	number of half band stages (decimation = 2^stages)
+	 */
+	public ZoomFFT(int zoomSize, int stages) {
+		if (stages < 1)
+			throw new IllegalArgumentException("At least one decimation stage is required");
+		this.zoomSize = zoomSize;
+		this.stages = stages;
+		this.fft = new FFT(zoomSize);
+		// N12 for the first stages (they only have to protect the part of the band that survives
+		// the following stages), N32 for the last stage (flat up to 80% of the output band):
+		this.filters = new HalfBandLowPassFilter[stages];
+		for (int i = 0; i < stages; i++)
+			filters[i] = new HalfBandLowPassFilter(i == stages - 1 ? 32 : 12);
+		int required = getRequiredSamples();
+		this.mixed = new SamplePacket(required);
+		this.tmpA = new SamplePacket(required / 2);
+		this.tmpB = new SamplePacket(required / 2);
+		this.zoomRe = new float[zoomSize];
+		this.zoomIm = new float[zoomSize];
+		this.gainCorrection = (float) (-10 * stages * Math.log10(2));
+	}
+
+	/**
+	 * Number of contiguous input samples that process() needs
+	 *
+	 * @param zoomSize	size of the zoom FFT
+	 * @param stages	number of half band stages
+	 * @return number of samples
+	 */
+	public static int getRequiredSamples(int zoomSize, int stages) {
+		return (zoomSize + SETTLE_SAMPLES) << stages;
+	}
+
+	/**
+	 * @return number of contiguous input samples that process() needs
+	 */
+	public int getRequiredSamples() {
+		return getRequiredSamples(zoomSize, stages);
+	}
+
+	/**
+	 * @return size of the zoom FFT (length of the output of process())
+	 */
+	public int getZoomSize() {
+		return zoomSize;
+	}
+
+	/**
+	 * @param sampleRate	sample rate of the input samples
+	 * @return sample rate after decimation (= span of the zoom spectrum)
+	 */
+	public int getOutputSampleRate(int sampleRate) {
+		return sampleRate >> stages;
+	}
+
+	/**
+	 * Selects the window of the zoom FFT (see FFT.setWindowType())
+	 *
+	 * @param windowType	FFT.WINDOW_BLACKMAN, FFT.WINDOW_HANN, ...
+	 */
+	public void setWindowType(int windowType) {
+		fft.setWindowType(windowType);
+	}
+
+	/**
+	 * Computes the zoom spectrum around (center frequency of the packet + offsetFrequency).
+	 * The input samples are not modified.
+	 *
+	 * @param in				contiguous input samples (at least getRequiredSamples())
+	 * @param offsetFrequency	frequency of the zoom center relative to the center frequency of the packet (Hz)
+	 * @param mag				output array for the FFT-shifted magnitudes in dB (length >= zoomSize)
+	 * @return true if mag was updated; false if the packet does not contain enough samples
+	 */
+	public boolean process(SamplePacket in, long offsetFrequency, float[] mag) {
+		int required = getRequiredSamples();
+		if (in.size() < required || in.getSampleRate() <= 0)
+			return false;
+
+		// Mix down: multiply with e^(-j*2*PI*offset*t) (recursive oscillator, renormalized every block)
+		float[] reIn = in.re(), imIn = in.im(), reMix = mixed.re(), imMix = mixed.im();
+		double w = -2 * Math.PI * offsetFrequency / in.getSampleRate();
+		double dc = Math.cos(w), ds = Math.sin(w);
+		double c = 1, s = 0, tmp;
+		for (int i = 0; i < required; i++) {
+			reMix[i] = (float) (reIn[i] * c - imIn[i] * s);
+			imMix[i] = (float) (reIn[i] * s + imIn[i] * c);
+			tmp = c * dc - s * ds;
+			s = c * ds + s * dc;
+			c = tmp;
+			if ((i & 1023) == 1023) {
+				tmp = 1 / Math.sqrt(c * c + s * s);
+				c *= tmp;
+				s *= tmp;
+			}
+		}
+		mixed.setSize(required);
+		mixed.setSampleRate(in.getSampleRate());
+		mixed.setFrequency(in.getFrequency() + offsetFrequency);
+
+		// Half band cascade:
+		SamplePacket src = mixed;
+		SamplePacket dst = tmpA;
+		for (int i = 0; i < stages; i++) {
+			dst.setSize(0);
+			if (i == stages - 1)
+				filters[i].filter(src, dst, 0, src.size());
+			else
+				filters[i].filterN12(src, dst, 0, src.size());
+			src = dst;
+			dst = (dst == tmpA) ? tmpB : tmpA;
+		}
+		if (src.size() < zoomSize)
+			return false;
+
+		// Zoom FFT over the newest zoomSize samples (the first ones are disturbed by the filter state):
+		int start = src.size() - zoomSize;
+		System.arraycopy(src.re(), start, zoomRe, 0, zoomSize);
+		System.arraycopy(src.im(), start, zoomIm, 0, zoomSize);
+		fft.spectrum(zoomRe, zoomIm, mag);
+		for (int i = 0; i < zoomSize; i++)
+			mag[i] += gainCorrection;
+		return true;
+	}
+}
@@ -35,4 +35,7 @@ class AppViewModel : ViewModel() {
 
     // 是否开启解调器
     var demodulationEnableData=MutableLiveData<Boolean>()
+
+    // 一轮完整扫频的耗时（ms）
+    var sweepTimeData = MutableLiveData<Long>()
 }
\ No newline at end of file